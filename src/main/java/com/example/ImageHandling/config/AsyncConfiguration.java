@@ -1,5 +1,6 @@
 package com.example.ImageHandling.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -7,6 +8,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableAsync
@@ -21,4 +23,81 @@ public class AsyncConfiguration {
         return executor;
     }
 
+    /**
+     * Shared pool used to render and decode PDF pages in parallel while looking for QR codes.
+     * The pool is bounded; when its queue is full the submitting thread runs the page itself.
+     */
+    @Bean(name = "qrCodePageTaskExecutor")
+    public Executor qrCodePageTaskExecutor(@Value("${qrcode.pdf.worker-threads:4}") int workerThreads,
+                                           @Value("${qrcode.pdf.queue-capacity:32}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workerThreads);
+        executor.setMaxPoolSize(workerThreads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("qrcode-page-");
+        return executor;
+    }
+
+    /**
+     * Shared pool used to OCR the field regions of a layout in parallel.
+     * The pool is bounded; when its queue is full the submitting thread runs the region itself.
+     */
+    @Bean(name = "ocrRegionTaskExecutor")
+    public Executor ocrRegionTaskExecutor(@Value("${ocr.region.worker-threads:4}") int workerThreads,
+                                          @Value("${ocr.region.queue-capacity:64}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workerThreads);
+        executor.setMaxPoolSize(workerThreads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("ocr-region-");
+        return executor;
+    }
+
+    /**
+     * Shared pool used to OCR the PDF pages that have no usable text layer.
+     * The pool is bounded; when its queue is full the submitting thread runs the page itself.
+     */
+    @Bean(name = "ocrPageTaskExecutor")
+    public Executor ocrPageTaskExecutor(@Value("${ocr.page.worker-threads:2}") int workerThreads,
+                                        @Value("${ocr.page.queue-capacity:4}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workerThreads);
+        executor.setMaxPoolSize(workerThreads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("ocr-page-");
+        return executor;
+    }
+
+    /**
+     * Dispatcher of the VIES lookups, which the workers pace to the VIES quota.
+     * The queue is bounded; when it is full the lookup is not sent and the company name is taken from earlier invoices.
+     */
+    @Bean(name = "viesLookupTaskExecutor")
+    public Executor viesLookupTaskExecutor(@Value("${vies.dispatcher.worker-threads:2}") int workerThreads,
+                                           @Value("${vies.dispatcher.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workerThreads);
+        executor.setMaxPoolSize(workerThreads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setThreadNamePrefix("vies-lookup-");
+        return executor;
+    }
+
+    /**
+     * Single thread for the startup tasks that read or build large data sets, such as cache warm-ups,
+     * so the application serves requests while they run.
+     */
+    @Bean(name = "startupTaskExecutor")
+    public Executor startupTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("startup-");
+        return executor;
+    }
+
 }
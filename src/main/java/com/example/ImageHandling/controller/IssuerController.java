@@ -1,8 +1,10 @@
 package com.example.ImageHandling.controller;
 
 import com.example.ImageHandling.domains.Issuer;
+import com.example.ImageHandling.domains.IssuerDirectoryEntry;
 import com.example.ImageHandling.domains.RegexPattern;
 import com.example.ImageHandling.domains.dto.ErrorResponse;
+import com.example.ImageHandling.services.IssuerDirectoryService;
 import com.example.ImageHandling.services.IssuerService;
 import com.example.ImageHandling.services.RegexPatternService;
 import lombok.RequiredArgsConstructor;
@@ -31,6 +33,7 @@ public class IssuerController {
 
     private static final Logger logger = LoggerFactory.getLogger(IssuerController.class);
 	private final IssuerService issuerService;
+	private final IssuerDirectoryService issuerDirectoryService;
 
 	@PostMapping( "/create" )
 	public ResponseEntity<?> createIssuer( @RequestBody Issuer issuer ) {
@@ -77,4 +80,17 @@ public class IssuerController {
 			return ResponseEntity.ok().body( count );
 	}
 
+	/**
+	 * Endpoint to autocomplete the issuers of the saved invoices.
+	 *
+	 * @param query The typed VAT number or company name prefix.
+	 * @param limit The maximum number of issuers to return.
+	 * @return the matching issuers, those with the most invoices first
+	 */
+	@GetMapping( "/directory/search" )
+	public ResponseEntity<?> searchIssuerDirectory( @RequestParam String query, @RequestParam( defaultValue = "10" ) Integer limit ) {
+			List<IssuerDirectoryEntry> issuers = issuerDirectoryService.search( query, limit );
+			return ResponseEntity.ok( issuers );
+	}
+
 }
@@ -0,0 +1,26 @@
+package com.example.ImageHandling.domains;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Company name returned by VIES for a VAT number. An empty company name records that VIES knows no name for it.
+ */
+@Document(collection = "CompanyNameCache")
+@Getter
+@Setter
+public class CompanyNameCacheEntry {
+
+	@Id
+	private String vatNumber;
+
+	private String companyName;
+
+	private LocalDateTime createdAt;
+
+	private LocalDateTime expiresAt;
+}
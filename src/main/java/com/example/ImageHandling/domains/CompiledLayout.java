@@ -0,0 +1,127 @@
+package com.example.ImageHandling.domains;
+
+import com.example.ImageHandling.utils.LayoutFieldMatcher;
+import com.example.ImageHandling.utils.LayoutFieldMatcher.FieldObserver;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Layout whose field regexes are compiled and whose field setters are resolved, ready to extract many documents.
+ * <p>
+ * A compiled layout is an immutable snapshot of one version of a {@link RegexPattern}, identified by its id and
+ * {@code updatedAt}, so it can be shared by concurrent extractions.
+ * </p>
+ */
+public final class CompiledLayout {
+
+	private final String layoutId;
+
+	private final LocalDateTime updatedAt;
+
+	private final String language;
+
+	private final String dateFormat;
+
+	private final List<CompiledField> fields;
+
+	private final LayoutFieldMatcher matcher;
+
+	/**
+	 * @param layout       The layout the fields are compiled from.
+	 * @param fields       The compiled fields.
+	 * @param anchorWindow The characters after a field label within which the field regex is tried first.
+	 */
+	public CompiledLayout( RegexPattern layout, List<CompiledField> fields, int anchorWindow ) {
+		this.layoutId = layout.getId();
+		this.updatedAt = layout.getUpdatedAt();
+		this.language = layout.getLanguage();
+		this.dateFormat = layout.getDateFormat();
+		this.fields = List.copyOf( fields );
+		this.matcher = new LayoutFieldMatcher( fields.stream().map( CompiledField::getPattern ).collect( Collectors.toList() ), anchorWindow );
+	}
+
+	public String getLayoutId() {
+		return layoutId;
+	}
+
+	public String getLanguage() {
+		return language;
+	}
+
+	public String getDateFormat() {
+		return dateFormat;
+	}
+
+	public List<CompiledField> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Matches every field regex against a text in a single pass over it.
+	 *
+	 * @param text        The text to extract the fields from.
+	 * @param fieldBudget The time each field regex may run.
+	 * @param observer    Notified of the execution of each field regex, by index in {@link #getFields()}.
+	 * @return The first capturing group of the first match of each field, in the order of {@link #getFields()}, or
+	 * null for the fields that do not match or exceeded their budget.
+	 */
+	public String[] matchFields( CharSequence text, Duration fieldBudget, FieldObserver observer ) {
+		return matcher.findFirstGroups( text, fieldBudget, observer );
+	}
+
+	/**
+	 * Checks whether this compiled layout was built from the same version of the layout.
+	 */
+	public boolean isCompiledFrom( RegexPattern layout ) {
+		return Objects.equals( layoutId, layout.getId() ) && Objects.equals( updatedAt, layout.getUpdatedAt() );
+	}
+
+	/**
+	 * Sets the value extracted for a field on the invoice metadata, or adds it as an item.
+	 */
+	@FunctionalInterface
+	public interface FieldSetter {
+
+		void set( InvoiceMetadata invoiceMetadata, List<Item> items, String value );
+	}
+
+	/**
+	 * Field of a compiled layout.
+	 */
+	public static final class CompiledField {
+
+		private final FieldMapping fieldMapping;
+
+		private final Pattern pattern;
+
+		private final FieldSetter setter;
+
+		/**
+		 * @param fieldMapping The field mapping of the layout.
+		 * @param pattern      The compiled regex of the field, or null if the field has no regex.
+		 * @param setter       The setter of the field value.
+		 */
+		public CompiledField( FieldMapping fieldMapping, Pattern pattern, FieldSetter setter ) {
+			this.fieldMapping = fieldMapping;
+			this.pattern = pattern;
+			this.setter = setter;
+		}
+
+		public FieldMapping getFieldMapping() {
+			return fieldMapping;
+		}
+
+		public Pattern getPattern() {
+			return pattern;
+		}
+
+		public FieldSetter getSetter() {
+			return setter;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.example.ImageHandling.domains;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A QR code text decoded from an uploaded file, with the invoice metadata parsed from it when it is an AT invoice QR code.
+ */
+@Getter
+@Setter
+public class DecodedQRCode {
+
+	private String text;
+
+	private InvoiceMetadata invoiceMetadata;
+
+	public DecodedQRCode() {}
+
+	public DecodedQRCode( String text, InvoiceMetadata invoiceMetadata ) {
+		this.text = text;
+		this.invoiceMetadata = invoiceMetadata;
+	}
+}
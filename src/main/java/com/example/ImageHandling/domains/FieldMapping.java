@@ -16,6 +16,15 @@ public class FieldMapping {
 
     private String example;
 
+    public FieldMapping() {}
+
+    public FieldMapping(FieldMapping other) {
+        this.name = other.name;
+        this.key = other.key;
+        this.regex = other.regex;
+        this.position = other.position;
+        this.example = other.example;
+    }
 
     @Override
     public String toString() {
@@ -5,6 +5,7 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 @Getter
@@ -60,6 +61,35 @@ public class InvoiceMetadata {
 
 	private String costCenter;
 
+	public InvoiceMetadata() {}
+
+	public InvoiceMetadata( InvoiceMetadata other ) {
+		this.issuerVATNumber = other.issuerVATNumber;
+		this.acquirerVATNumber = other.acquirerVATNumber;
+		this.companyName = other.companyName;
+		this.site = other.site;
+		this.phoneNumber = other.phoneNumber;
+		this.email = other.email;
+		this.postalCode = other.postalCode;
+		this.acquirerCountry = other.acquirerCountry;
+		this.invoiceDate = other.invoiceDate;
+		this.invoiceNumber = other.invoiceNumber;
+		this.address = other.address;
+		this.items = other.items != null ? new ArrayList<>( other.items ) : null;
+		this.documentPaidAt = other.documentPaidAt;
+		this.client = other.client;
+		this.currency = other.currency;
+		this.dueDate = other.dueDate;
+		this.valueAddedTax = other.valueAddedTax;
+		this.subtotal = other.subtotal;
+		this.total = other.total;
+		this.paymentStatus = other.paymentStatus;
+		this.atcud = other.atcud;
+		this.originalFileName = other.originalFileName;
+		this.comment = other.comment;
+		this.costCenter = other.costCenter;
+	}
+
 	public boolean isEmpty() {
 		return this.equals( new InvoiceMetadata() );
 	}
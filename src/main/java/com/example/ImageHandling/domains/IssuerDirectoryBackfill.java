@@ -0,0 +1,29 @@
+package com.example.ImageHandling.domains;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marker of the build of the issuer directory from the saved invoices.
+ * <p>
+ * Claimed by the node that builds the directory, so nodes starting together build it once, and completed once built,
+ * so it is not built again on the next starts.
+ * </p>
+ */
+@Document(collection = "IssuerDirectoryBackfill")
+@Getter
+@Setter
+public class IssuerDirectoryBackfill {
+
+	@Id
+	private String id;
+
+	// When a node claimed the build, a claim older than the lease is taken over by the next node that starts
+	private LocalDateTime startedAt;
+
+	private LocalDateTime completedAt;
+}
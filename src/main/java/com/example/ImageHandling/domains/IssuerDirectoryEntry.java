@@ -0,0 +1,34 @@
+package com.example.ImageHandling.domains;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Issuer of the saved invoices, keyed by VAT number without the country prefix.
+ * <p>
+ * Maintained whenever an invoice is saved, edited or deleted, so the company name of an issuer is read without loading
+ * its invoices.
+ * </p>
+ */
+@Document(collection = "IssuerDirectory")
+@Getter
+@Setter
+public class IssuerDirectoryEntry {
+
+	@Id
+	private String vatNumber;
+
+	// The most recent non-empty company name of the issuer invoices
+	private String companyName;
+
+	// Lower-case company name without accents, used for the prefix search
+	private String searchName;
+
+	private LocalDateTime lastSeen;
+
+	private long invoiceCount;
+}
@@ -0,0 +1,25 @@
+package com.example.ImageHandling.domains;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * QR codes decoded from an uploaded file, keyed by the SHA-256 hash of the file content.
+ */
+@Document(collection = "QRCodeDecodeCache")
+@Getter
+@Setter
+public class QRCodeDecodeCacheEntry {
+
+	@Id
+	private String contentHash;
+
+	private List<DecodedQRCode> decodedQRCodes;
+
+	private LocalDateTime createdAt;
+}
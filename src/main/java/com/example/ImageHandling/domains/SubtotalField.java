@@ -8,5 +8,13 @@ public enum SubtotalField {
 	I2,
 	I3,
 	I5,
-	I7
+	I7,
+	J2,
+	J3,
+	J5,
+	J7,
+	K2,
+	K3,
+	K5,
+	K7
 }
@@ -0,0 +1,9 @@
+package com.example.ImageHandling.domains.repository;
+
+import com.example.ImageHandling.domains.CompanyNameCacheEntry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CompanyNameCacheRepository extends MongoRepository<CompanyNameCacheEntry, String> {
+}
@@ -28,13 +28,4 @@ public interface InvoicesRepository extends MongoRepository<Invoices, String> {
 	@Query("{ 'invoiceMetadata.issuerVATNumber': ?0, 'invoiceMetadata.invoiceDate': ?1, 'invoiceMetadata.invoiceNumber': ?2 }")
 	List<Invoices> findDuplicateInvoices(String issuerVATNumber, LocalDate invoiceDate, String invoiceNumber);
 
-	/**
-	 * Finds all invoices with the given issuer VAT number and a non-empty company name.
-	 *
-	 * @param issuerVATNumber The VAT number of the issuer.
-	 * @return List of invoices with a non-empty company name for the given VAT number.
-	 */
-	@Query("{ 'invoiceMetadata.issuerVATNumber': ?0, 'invoiceMetadata.companyName': { $ne: '' } }")
-	List<Invoices> findByIssuerVATNumberAndCompanyNameNotEmpty(String issuerVATNumber);
-
 }
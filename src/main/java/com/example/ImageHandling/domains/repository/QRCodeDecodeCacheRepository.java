@@ -0,0 +1,9 @@
+package com.example.ImageHandling.domains.repository;
+
+import com.example.ImageHandling.domains.QRCodeDecodeCacheEntry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface QRCodeDecodeCacheRepository extends MongoRepository<QRCodeDecodeCacheEntry, String> {
+}
@@ -0,0 +1,47 @@
+package com.example.ImageHandling.domains.types;
+
+/**
+ * Fields of the QR code printed on Portuguese invoices, as defined by the AT (Autoridade Tributária) specification.
+ * <p>
+ * The I, J and K groups hold the tax breakdown of mainland Portugal, Azores and Madeira respectively.
+ * </p>
+ */
+public enum ATQRCodeField {
+	A, B, C, D, E, F, G, H,
+	I1, I2, I3, I4, I5, I6, I7, I8,
+	J1, J2, J3, J4, J5, J6, J7, J8,
+	K1, K2, K3, K4, K5, K6, K7, K8,
+	L, M, N, O, P, Q, R, S;
+
+	private static final ATQRCodeField[] VALUES = values();
+
+	/**
+	 * Resolves the field of a key without creating a string for it.
+	 *
+	 * @param text  The text containing the key.
+	 * @param start The index of the first character of the key.
+	 * @param end   The index after the last character of the key.
+	 * @return The field, or null if the key is not an AT QR code field.
+	 */
+	public static ATQRCodeField fromKey( CharSequence text, int start, int end ) {
+		int length = end - start;
+		if ( length < 1 || length > 2 ) {
+			return null;
+		}
+		char letter = text.charAt( start );
+		if ( length == 1 ) {
+			if ( letter >= 'A' && letter <= 'H' ) {
+				return VALUES[letter - 'A'];
+			}
+			if ( letter >= 'L' && letter <= 'S' ) {
+				return VALUES[L.ordinal() + letter - 'L'];
+			}
+			return null;
+		}
+		char digit = text.charAt( start + 1 );
+		if ( letter < 'I' || letter > 'K' || digit < '1' || digit > '8' ) {
+			return null;
+		}
+		return VALUES[I1.ordinal() + ( letter - 'I' ) * 8 + digit - '1'];
+	}
+}
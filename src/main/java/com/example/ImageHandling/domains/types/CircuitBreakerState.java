@@ -0,0 +1,8 @@
+package com.example.ImageHandling.domains.types;
+
+/**
+ * States of a {@link com.example.ImageHandling.utils.CircuitBreaker}.
+ */
+public enum CircuitBreakerState {
+	CLOSED, OPEN, HALF_OPEN
+}
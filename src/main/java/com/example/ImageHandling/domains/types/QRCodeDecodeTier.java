@@ -0,0 +1,11 @@
+package com.example.ImageHandling.domains.types;
+
+/**
+ * Decoding tiers tried on an image while looking for QR codes, from the cheapest to the most expensive.
+ */
+public enum QRCodeDecodeTier {
+	QR_FAST,
+	QR_TRY_HARDER,
+	MULTI,
+	REPAIR
+}
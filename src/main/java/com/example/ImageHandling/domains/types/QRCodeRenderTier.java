@@ -0,0 +1,11 @@
+package com.example.ImageHandling.domains.types;
+
+/**
+ * Rendering tiers used when looking for QR codes on a PDF page, from the cheapest to the most expensive.
+ */
+public enum QRCodeRenderTier {
+	EMBEDDED_IMAGE,
+	GRAY_LOW_DPI,
+	GRAY_HIGH_DPI,
+	COLOR_REPAIR
+}
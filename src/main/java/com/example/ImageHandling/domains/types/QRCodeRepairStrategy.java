@@ -0,0 +1,15 @@
+package com.example.ImageHandling.domains.types;
+
+/**
+ * Image repair strategies tried on QR codes that could not be decoded, from the cheapest to the most expensive.
+ */
+public enum QRCodeRepairStrategy {
+	/** Grayscale with a global Otsu threshold. */
+	OTSU,
+	/** Grayscale with a local Gaussian adaptive threshold, for unevenly lit scans. */
+	ADAPTIVE,
+	/** Bilateral denoising, then the intersection of the Otsu and adaptive thresholds. */
+	DENOISED,
+	/** The denoised thresholds, plus gray area fill and morphological cleanup of broken modules. */
+	FULL
+}
@@ -0,0 +1,11 @@
+package com.example.ImageHandling.exception;
+
+/**
+ * Thrown when a regex runs longer than its execution budget, e.g. because of catastrophic backtracking.
+ */
+public class RegexBudgetExceededException extends RuntimeException {
+
+	public RegexBudgetExceededException( String message ) {
+		super( message );
+	}
+}
@@ -0,0 +1,16 @@
+package com.example.ImageHandling.exception;
+
+/**
+ * Thrown when the VIES VAT number check could not be answered, e.g. because the service timed out, failed or was not
+ * called while its circuit breaker is open.
+ */
+public class ViesLookupException extends RuntimeException {
+
+	public ViesLookupException( String message ) {
+		super( message );
+	}
+
+	public ViesLookupException( String message, Throwable cause ) {
+		super( message, cause );
+	}
+}
@@ -5,56 +5,180 @@ package com.example.ImageHandling.services;
  * 8/27/2024
  */
 
+import com.example.ImageHandling.domains.types.CircuitBreakerState;
 import com.example.ImageHandling.exception.DecoderApiInternalServerErrorException;
 import com.example.ImageHandling.exception.DecoderApiNotFoundContentException;
+import com.example.ImageHandling.utils.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
-import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
-import java.io.IOException;
+import javax.annotation.PreDestroy;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
 
 import org.springframework.http.HttpStatus;
 
+/**
+ * Asynchronous client of the external barcode decoder API, used when no QR code could be decoded locally.
+ * <p>
+ * Requests share a bounded connection pool. At most {@code decoderApi.max-concurrent-requests} requests are in
+ * flight at a time, and calls are rejected while the circuit breaker is open, so a slow or failing decoder cannot
+ * pile up work. When a request has not answered after {@code decoderApi.hedge-delay}, a second identical request
+ * is sent and the first answer wins.
+ * </p>
+ */
 @Slf4j
 @Service
 public class BarcodeQRCodeDecoderApiCaller {
 
 	private final WebClient webClient;
 
+	private final ConnectionProvider connectionProvider;
+
+	private final MeterRegistry meterRegistry;
+
+	private final Semaphore concurrentRequests;
+
+	private final CircuitBreaker circuitBreaker;
+
+	private final Duration responseTimeout;
+
+	private final Duration hedgeDelay;
+
 	private static final Logger logger = LoggerFactory.getLogger(BarcodeQRCodeDecoderApiCaller.class);
 
-	public BarcodeQRCodeDecoderApiCaller( WebClient.Builder webClientBuilder, @Value( "${decoderApi.address}" ) String baseUrl ) {
-		this.webClient = webClientBuilder.baseUrl( baseUrl ).build();
+	public BarcodeQRCodeDecoderApiCaller( WebClient.Builder webClientBuilder,
+		MeterRegistry meterRegistry,
+		@Value( "${decoderApi.address}" ) String baseUrl,
+		@Value( "${decoderApi.max-connections:16}" ) int maxConnections,
+		@Value( "${decoderApi.max-concurrent-requests:8}" ) int maxConcurrentRequests,
+		@Value( "${decoderApi.connect-timeout:2s}" ) Duration connectTimeout,
+		@Value( "${decoderApi.response-timeout:15s}" ) Duration responseTimeout,
+		@Value( "${decoderApi.hedge-delay:2s}" ) Duration hedgeDelay,
+		@Value( "${decoderApi.circuit-breaker.failure-threshold:5}" ) int failureThreshold,
+		@Value( "${decoderApi.circuit-breaker.open-duration:30s}" ) Duration openDuration ) {
+		this.connectionProvider = ConnectionProvider.builder( "decoder-api" )
+			.maxConnections( maxConnections )
+			.pendingAcquireMaxCount( maxConnections * 2 )
+			.pendingAcquireTimeout( connectTimeout )
+			.maxIdleTime( Duration.ofSeconds( 30 ) )
+			.evictInBackground( Duration.ofSeconds( 60 ) )
+			.build();
+		HttpClient httpClient = HttpClient.create( connectionProvider )
+			.option( ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis() )
+			.responseTimeout( responseTimeout );
+		this.webClient = webClientBuilder.clone()
+			.baseUrl( baseUrl )
+			.clientConnector( new ReactorClientHttpConnector( httpClient ) )
+			.build();
+		this.meterRegistry = meterRegistry;
+		this.concurrentRequests = new Semaphore( Math.max( 1, maxConcurrentRequests ) );
+		this.circuitBreaker = new CircuitBreaker( "decoder-api", failureThreshold, openDuration );
+		this.responseTimeout = responseTimeout;
+		this.hedgeDelay = hedgeDelay;
+		meterRegistry.gauge( "decoder.api.circuit.open", circuitBreaker, breaker -> breaker.getState() == CircuitBreakerState.CLOSED ? 0 : 1 );
 	}
 
-	public Mono<String> callDecodeApi( MultipartFile imageFile ) throws IOException {
+	@PreDestroy
+	public void disposeConnectionPool() {
+		connectionProvider.dispose();
+	}
+
+	/**
+	 * Sends an image to the decoder API and returns its first QR code.
+	 * <p>
+	 * The returned Mono does not block: the request runs on the reactor-netty event loop. It completes empty when
+	 * the decoder found no QR code or the call was rejected by the concurrency limit or the circuit breaker.
+	 * </p>
+	 *
+	 * @param imageBytes The encoded image, e.g. the uploaded file or a rendered PDF page as JPEG.
+	 * @param fileName   The file name sent with the image.
+	 * @return The text of the first QR code found by the decoder API.
+	 */
+	public Mono<String> callDecodeApi( byte[] imageBytes, String fileName ) {
+		logger.info( "*** Calling decode API for image file: {}", fileName );
+
+		Mono<Optional<String>> primary = decodeOnce( imageBytes, fileName, "primary" );
+		Mono<Optional<String>> hedge = Mono.delay( hedgeDelay ).then( decodeOnce( imageBytes, fileName, "hedge" ) );
+		return Mono.firstWithValue( primary, hedge )
+			.flatMap( Mono::justOrEmpty )
+			.onErrorResume( NoSuchElementException.class, e -> Mono.empty() );
+	}
+
+	/**
+	 * Sends a single request. Completes with an empty Optional when the decoder found no QR code, and empty when the
+	 * request was rejected, so only a decoder answer wins a hedged pair.
+	 */
+	private Mono<Optional<String>> decodeOnce( byte[] imageBytes, String fileName, String attempt ) {
+		return Mono.defer( () -> {
+			if ( !concurrentRequests.tryAcquire() ) {
+				meterRegistry.counter( "decoder.api.rejected", "reason", "concurrency-limit" ).increment();
+				return Mono.empty();
+			}
+			if ( !circuitBreaker.tryAcquirePermission() ) {
+				concurrentRequests.release();
+				meterRegistry.counter( "decoder.api.rejected", "reason", "circuit-open" ).increment();
+				return Mono.empty();
+			}
+
+			Timer.Sample sample = Timer.start( meterRegistry );
+			return post( imageBytes, fileName )
+				.map( Optional::of )
+				.defaultIfEmpty( Optional.empty() )
+				.onErrorResume( DecoderApiNotFoundContentException.class, e -> Mono.just( Optional.empty() ) )
+				.doOnSuccess( qrCodeText -> {
+					circuitBreaker.recordSuccess();
+					stop( sample, attempt, qrCodeText.isPresent() ? "decoded" : "not-found" );
+				} )
+				.doOnError( e -> {
+					circuitBreaker.recordFailure();
+					stop( sample, attempt, "error" );
+					logger.warn( "Decoder API {} request failed for image file: {} exception message: {}", attempt, fileName, ExceptionUtils.getRootCauseMessage( e ) );
+				} )
+				.doFinally( signal -> {
+					if ( signal == SignalType.CANCEL ) {
+						circuitBreaker.recordCancel();
+						stop( sample, attempt, "cancelled" );
+					}
+					concurrentRequests.release();
+				} );
+		} );
+	}
 
+	private Mono<String> post( byte[] imageBytes, String fileName ) {
 		MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
 
-		body.add( "image", new ByteArrayResource( imageFile.getBytes() ) {
+		body.add( "image", new ByteArrayResource( imageBytes ) {
 
 			@Override
 			public String getFilename() {
-				return imageFile.getOriginalFilename();
+				return fileName;
 			}
 		} );
 
-		logger.info( "*** Calling decode API for image file: {}", imageFile.getOriginalFilename() );
-
 		return webClient.post()
 			.uri( "/decode" )
 			.contentType( MediaType.MULTIPART_FORM_DATA )
@@ -75,7 +199,14 @@ public class BarcodeQRCodeDecoderApiCaller {
 				.filter( obj -> "QRCODE".equals( obj.get( "type" ) ) )
 				.map( obj -> (String) obj.get( "data" ) )
 				.findFirst() ) )
-			.timeout( Duration.ofSeconds( 15 ) );
+			.timeout( responseTimeout );
+	}
+
+	private void stop( Timer.Sample sample, String attempt, String outcome ) {
+		sample.stop( Timer.builder( "decoder.api.requests" )
+			.tag( "attempt", attempt )
+			.tag( "outcome", outcome )
+			.register( meterRegistry ) );
 	}
 }
 
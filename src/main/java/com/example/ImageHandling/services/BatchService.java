@@ -41,6 +41,9 @@ public class BatchService {
 	@Autowired
 	private InvoicesRepository invoicesRepository;
 
+	@Autowired
+	private IssuerDirectoryService issuerDirectoryService;
+
 
     @Transactional
     public BatchProcess createBatchProcess() {
@@ -206,6 +209,7 @@ public class BatchService {
                 .fileType( batchProcessFile.getFiletype() )
                 .build();
             invoicesRepository.save( invoice );
+            issuerDirectoryService.recordInvoice( invoice.getInvoiceMetadata() );
         }
         logger.info("Saving BatchProcessFile and deleting BatchProcess. id: {}", batchProcessId);
         deleteBatchProcess( batchProcessId );
@@ -0,0 +1,228 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.CompanyNameCacheEntry;
+import com.example.ImageHandling.domains.repository.CompanyNameCacheRepository;
+import com.example.ImageHandling.utils.BoundedCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the company names returned by VIES, keyed by VAT number without the country prefix.
+ * <p>
+ * A bounded in-memory tier sits in front of the {@code CompanyNameCache} collection, which survives restarts and is
+ * shared across nodes. VAT numbers VIES knows no name for are cached as an empty name for the shorter
+ * {@code company-name.cache.negative-ttl}, so a supplier registered later is picked up soon. When the application
+ * starts, the memory tier is loaded in the background with the entries of the issuers with the most invoices. Cache
+ * failures are logged and never fail an upload.
+ * </p>
+ */
+@Slf4j
+@Service
+public class CompanyNameCache {
+
+	private final CompanyNameCacheRepository companyNameCacheRepository;
+
+	private final MongoTemplate mongoTemplate;
+
+	private final IssuerDirectoryService issuerDirectoryService;
+
+	private final MeterRegistry meterRegistry;
+
+	private final BoundedCache<String, String> memoryCache;
+
+	private final boolean enabled;
+
+	private final Duration timeToLive;
+
+	private final Duration negativeTimeToLive;
+
+	private final int warmUpIssuers;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+
+	private final AtomicLong mongoHits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	public CompanyNameCache( CompanyNameCacheRepository companyNameCacheRepository,
+		MongoTemplate mongoTemplate,
+		IssuerDirectoryService issuerDirectoryService,
+		MeterRegistry meterRegistry,
+		@Value( "${company-name.cache.enabled:true}" ) boolean enabled,
+		@Value( "${company-name.cache.max-entries:2000}" ) int maxEntries,
+		@Value( "${company-name.cache.ttl:7d}" ) Duration timeToLive,
+		@Value( "${company-name.cache.negative-ttl:1h}" ) Duration negativeTimeToLive,
+		@Value( "${company-name.cache.warm-up.issuers:500}" ) int warmUpIssuers ) {
+		this.companyNameCacheRepository = companyNameCacheRepository;
+		this.mongoTemplate = mongoTemplate;
+		this.issuerDirectoryService = issuerDirectoryService;
+		this.meterRegistry = meterRegistry;
+		this.enabled = enabled;
+		this.timeToLive = timeToLive;
+		this.negativeTimeToLive = negativeTimeToLive;
+		this.warmUpIssuers = warmUpIssuers;
+		this.memoryCache = new BoundedCache<>( maxEntries, timeToLive );
+		Gauge.builder( "company.name.cache.hit.ratio", this, cache -> cache.hitRatio( cache.memoryHits.get() ) )
+			.tag( "tier", "memory" )
+			.register( meterRegistry );
+		Gauge.builder( "company.name.cache.hit.ratio", this, cache -> cache.hitRatio( cache.memoryHits.get() + cache.mongoHits.get() ) )
+			.tag( "tier", "all" )
+			.register( meterRegistry );
+		Gauge.builder( "company.name.cache.entries", memoryCache, BoundedCache::size ).register( meterRegistry );
+	}
+
+	@PostConstruct
+	public void ensureExpiryIndex() {
+		if ( !enabled ) {
+			return;
+		}
+		try {
+			// Every entry carries its own expiry, so negative entries are removed sooner than found names
+			mongoTemplate.indexOps( CompanyNameCacheEntry.class )
+				.ensureIndex( new Index().on( "expiresAt", Sort.Direction.ASC ).expire( Duration.ZERO ) );
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not ensure the expiry index of the company name cache. exception message: {}", ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Loads the cached company names of the issuers with the most invoices into the memory tier.
+	 * <p>
+	 * The issuers are read from the issuer directory, sorted by its invoice count, and the warm-up runs on the startup
+	 * thread pool so the application serves requests meanwhile.
+	 * </p>
+	 */
+	@Async( "startupTaskExecutor" )
+	@EventListener( ApplicationReadyEvent.class )
+	public void warmUp() {
+		if ( !enabled || warmUpIssuers <= 0 ) {
+			return;
+		}
+		try {
+			List<String> vatNumbers = issuerDirectoryService.findMostFrequentVatNumbers( warmUpIssuers );
+			LocalDateTime now = LocalDateTime.now();
+			int loaded = 0;
+			for ( CompanyNameCacheEntry entry : companyNameCacheRepository.findAllById( vatNumbers ) ) {
+				if ( putInMemory( entry, now ) ) {
+					loaded++;
+				}
+			}
+			log.info( "Company name cache is warmed up with {} of the {} most frequent issuers", loaded, vatNumbers.size() );
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not warm up the company name cache. exception message: {}", ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Looks up the company name VIES returned earlier for a VAT number.
+	 *
+	 * @param vatNumber The VAT number without the country prefix.
+	 * @return The company name, an empty string if VIES knows no name for the VAT number, or empty if it is not cached.
+	 */
+	@Transactional( propagation = Propagation.NOT_SUPPORTED )
+	public Optional<String> get( String vatNumber ) {
+		if ( !enabled ) {
+			return Optional.empty();
+		}
+		Optional<String> companyName = memoryCache.get( vatNumber );
+		if ( companyName.isPresent() ) {
+			memoryHits.incrementAndGet();
+			countLookup( "memory-hit", companyName.get() );
+			return companyName;
+		}
+		try {
+			Optional<CompanyNameCacheEntry> entry = companyNameCacheRepository.findById( vatNumber );
+			if ( entry.isPresent() && putInMemory( entry.get(), LocalDateTime.now() ) ) {
+				mongoHits.incrementAndGet();
+				countLookup( "mongo-hit", entry.get().getCompanyName() );
+				return Optional.of( entry.get().getCompanyName() );
+			}
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not read the company name cache entry {}. exception message: {}", vatNumber, ExceptionUtils.getRootCauseMessage( e ) );
+		}
+		misses.incrementAndGet();
+		meterRegistry.counter( "company.name.cache", "result", "miss" ).increment();
+		return Optional.empty();
+	}
+
+	/**
+	 * Stores the answer of VIES for a VAT number. Lookups that failed must not be stored, so they are retried.
+	 *
+	 * @param vatNumber   The VAT number without the country prefix.
+	 * @param companyName The company name, or null or empty if VIES knows no name for the VAT number.
+	 */
+	@Transactional( propagation = Propagation.NOT_SUPPORTED )
+	public void put( String vatNumber, String companyName ) {
+		if ( !enabled ) {
+			return;
+		}
+		String value = companyName != null ? companyName : "";
+		Duration entryTimeToLive = value.isEmpty() ? negativeTimeToLive : timeToLive;
+		memoryCache.put( vatNumber, value, entryTimeToLive );
+		try {
+			CompanyNameCacheEntry entry = new CompanyNameCacheEntry();
+			entry.setVatNumber( vatNumber );
+			entry.setCompanyName( value );
+			entry.setCreatedAt( LocalDateTime.now() );
+			entry.setExpiresAt( entry.getCreatedAt().plus( entryTimeToLive ) );
+			companyNameCacheRepository.save( entry );
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not store the company name cache entry {}. exception message: {}", vatNumber, ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Removes the VAT number prefix of Portugal, the only country the company names are looked up for.
+	 */
+	public static String normalizeVatNumber( String vatNumber ) {
+		return vatNumber.startsWith( "PT" ) ? vatNumber.substring( 2 ) : vatNumber;
+	}
+
+	/**
+	 * Copies a Mongo entry into the memory tier for the rest of its time to live.
+	 *
+	 * @return false if the entry has expired but was not removed by the expiry index yet.
+	 */
+	private boolean putInMemory( CompanyNameCacheEntry entry, LocalDateTime now ) {
+		if ( entry.getCompanyName() == null || entry.getExpiresAt() == null || !entry.getExpiresAt().isAfter( now ) ) {
+			return false;
+		}
+		memoryCache.put( entry.getVatNumber(), entry.getCompanyName(), Duration.between( now, entry.getExpiresAt() ) );
+		return true;
+	}
+
+	private void countLookup( String result, String companyName ) {
+		meterRegistry.counter( "company.name.cache", "result", result ).increment();
+		if ( companyName.isEmpty() ) {
+			meterRegistry.counter( "company.name.cache.negative.hits" ).increment();
+		}
+	}
+
+	private double hitRatio( long hits ) {
+		long lookups = memoryHits.get() + mongoHits.get() + misses.get();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+}
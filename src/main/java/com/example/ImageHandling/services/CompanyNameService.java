@@ -0,0 +1,193 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.exception.ViesLookupException;
+import com.example.ImageHandling.utils.RateLimiter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the company name of an issuer VAT number.
+ * <p>
+ * Names are read from the offline company registry first, then from the company name cache. On a miss, concurrent
+ * lookups of the same VAT number share a single in-flight VIES request, and the requests for different VAT numbers are
+ * dispatched on the VIES lookup pool, paced to {@code vies.rate-limit.requests-per-second}, so a batch from one
+ * supplier sends one request and a mixed batch stays within the VIES quota. When VIES fails or is too slow, or the
+ * dispatcher queue is full, the name is taken from the issuer directory, which holds the latest company name of the
+ * saved invoices of each issuer.
+ * </p>
+ */
+@Slf4j
+@Service
+public class CompanyNameService {
+
+	private final static String PT_PREFIX = "PT";
+
+	private final ViesClient viesClient;
+
+	private final CompanyRegistryService companyRegistryService;
+
+	private final CompanyNameCache companyNameCache;
+
+	private final IssuerDirectoryService issuerDirectoryService;
+
+	private final Executor viesLookupTaskExecutor;
+
+	private final MeterRegistry meterRegistry;
+
+	private final RateLimiter rateLimiter;
+
+	private final Duration lookupTimeout;
+
+	private final Map<String, CompletableFuture<String>> inFlightLookups = new ConcurrentHashMap<>();
+
+	private static final Logger logger = LoggerFactory.getLogger( CompanyNameService.class );
+
+	public CompanyNameService( ViesClient viesClient,
+		CompanyRegistryService companyRegistryService,
+		CompanyNameCache companyNameCache,
+		IssuerDirectoryService issuerDirectoryService,
+		@Qualifier( "viesLookupTaskExecutor" ) Executor viesLookupTaskExecutor,
+		MeterRegistry meterRegistry,
+		@Value( "${vies.rate-limit.requests-per-second:5}" ) double requestsPerSecond,
+		@Value( "${vies.lookup.timeout:6s}" ) Duration lookupTimeout ) {
+		this.viesClient = viesClient;
+		this.companyRegistryService = companyRegistryService;
+		this.companyNameCache = companyNameCache;
+		this.issuerDirectoryService = issuerDirectoryService;
+		this.viesLookupTaskExecutor = viesLookupTaskExecutor;
+		this.meterRegistry = meterRegistry;
+		this.rateLimiter = new RateLimiter( requestsPerSecond );
+		this.lookupTimeout = lookupTimeout;
+		Gauge.builder( "vies.lookups.in-flight", inFlightLookups, Map::size ).register( meterRegistry );
+	}
+
+	/**
+	 * Fetches the company name of a VAT number without blocking on VIES.
+	 * <p>
+	 * A caller that waits longer than {@code vies.lookup.timeout} for VIES gets the name from the issuer directory. The
+	 * VIES lookup itself goes on and caches its answer for the next invoices.
+	 * </p>
+	 *
+	 * @param issuerNif The VAT number of the issuer, with or without the PT prefix.
+	 * @return The company name, or an empty string if not found. The future never completes exceptionally.
+	 */
+	public CompletableFuture<String> fetchCompanyName( String issuerNif ) {
+		// Remove PT prefix if present
+		String normalizedNif = issuerNif.startsWith( PT_PREFIX ) ? issuerNif.substring( 2 ) : issuerNif;
+
+		Optional<String> registeredCompanyName = companyRegistryService.findCompanyName( normalizedNif );
+		if ( registeredCompanyName.isPresent() ) {
+			return CompletableFuture.completedFuture( registeredCompanyName.get() );
+		}
+
+		Optional<String> cachedCompanyName = companyNameCache.get( normalizedNif );
+		if ( cachedCompanyName.isPresent() ) {
+			return CompletableFuture.completedFuture( cachedCompanyName.get() );
+		}
+
+		CompletableFuture<String> lookup = new CompletableFuture<>();
+		CompletableFuture<String> inFlightLookup = inFlightLookups.putIfAbsent( normalizedNif, lookup );
+		if ( inFlightLookup != null ) {
+			meterRegistry.counter( "vies.lookups", "result", "coalesced" ).increment();
+			return withTimeout( normalizedNif, inFlightLookup );
+		}
+		try {
+			viesLookupTaskExecutor.execute( () -> {
+				try {
+					lookup.complete( lookupCompanyName( normalizedNif ) );
+				}
+				catch ( RuntimeException e ) {
+					logger.error( "Error fetching company name for VAT number: {}. Exception: {}", normalizedNif, ExceptionUtils.getRootCauseMessage( e ) );
+					lookup.complete( "" );
+				}
+				finally {
+					inFlightLookups.remove( normalizedNif, lookup );
+				}
+			} );
+		}
+		catch ( RejectedExecutionException e ) {
+			meterRegistry.counter( "vies.lookups", "result", "rejected" ).increment();
+			logger.warn( "VIES lookup queue is full, company name for VAT number {} is taken from the issuer directory", normalizedNif );
+			inFlightLookups.remove( normalizedNif, lookup );
+			lookup.complete( fetchCompanyNameFromIssuerDirectory( normalizedNif ) );
+			return lookup;
+		}
+		return withTimeout( normalizedNif, lookup );
+	}
+
+	/**
+	 * Bounds the wait of one caller for a lookup. The timeout applies to a copy, so it does not complete the lookup
+	 * shared with the other callers.
+	 */
+	private CompletableFuture<String> withTimeout( String normalizedNif, CompletableFuture<String> lookup ) {
+		return lookup.copy()
+			.orTimeout( lookupTimeout.toMillis(), TimeUnit.MILLISECONDS )
+			.exceptionally( e -> {
+				meterRegistry.counter( "vies.lookups", "result", "timed-out" ).increment();
+				logger.warn( "VIES lookup for VAT number {} did not complete within {}, company name is taken from the issuer directory", normalizedNif, lookupTimeout );
+				return fetchCompanyNameFromIssuerDirectory( normalizedNif );
+			} );
+	}
+
+	/**
+	 * Looks the VAT number up in VIES, once the rate limiter allows it, and caches the answer.
+	 */
+	private String lookupCompanyName( String normalizedNif ) {
+		try {
+			long waitNanos = rateLimiter.acquire();
+			meterRegistry.timer( "vies.lookups.rate-limit.wait" ).record( waitNanos, TimeUnit.NANOSECONDS );
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			return fetchCompanyNameFromIssuerDirectory( normalizedNif );
+		}
+		meterRegistry.counter( "vies.lookups", "result", "sent" ).increment();
+
+		try {
+			Optional<String> companyName = viesClient.lookupCompanyName( PT_PREFIX, normalizedNif );
+			companyNameCache.put( normalizedNif, companyName.orElse( "" ) );
+			if ( companyName.isPresent() ) {
+				logger.info( "Company name found for VAT number: {}", normalizedNif );
+				return companyName.get();
+			}
+			else {
+				logger.error( "Company name not found for VAT number: {}", normalizedNif );
+				return "";
+			}
+		}
+		catch ( ViesLookupException e ) {
+			logger.error( "Error fetching company name for VAT number: {}. Exception: {}", normalizedNif, ExceptionUtils.getRootCauseMessage( e ) );
+			return fetchCompanyNameFromIssuerDirectory( normalizedNif );
+		}
+	}
+
+	private String fetchCompanyNameFromIssuerDirectory( String normalizedNif ) {
+		try {
+			Optional<String> companyName = issuerDirectoryService.findCompanyName( normalizedNif );
+			if ( companyName.isEmpty() ) {
+				logger.error( "No invoices with a company name found for VAT number: {}", normalizedNif );
+			}
+			return companyName.orElse( "" );
+		}
+		catch ( RuntimeException e ) {
+			logger.error( "Error reading the issuer directory for VAT number: {}. Exception: {}", normalizedNif, ExceptionUtils.getRootCauseMessage( e ) );
+			return "";
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.utils.CompanyRegistryIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+/**
+ * Offline registry of Portuguese company names, the first tier of the company name lookups.
+ * <p>
+ * The bulk exports of the company registry are CSV files with a NIF and a name column. The importer converts the file
+ * at {@code company-registry.csv-path} into the memory-mapped {@link CompanyRegistryIndex} at
+ * {@code company-registry.index-path}, in the background once the application is ready with an index older than the
+ * export, and on the {@code company-registry.import-cron} schedule. Meanwhile lookups are served by the previous index.
+ * Lookups read the mapped index, so they need neither VIES nor the database. The registry is disabled while no index
+ * path is configured.
+ * </p>
+ */
+@Slf4j
+@Service
+public class CompanyRegistryService {
+
+	private final Path indexPath;
+
+	private final Path csvPath;
+
+	private final String nifColumn;
+
+	private final String nameColumn;
+
+	private final char delimiter;
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private volatile CompanyRegistryIndex index;
+
+	private static final Logger logger = LoggerFactory.getLogger( CompanyRegistryService.class );
+
+	public CompanyRegistryService( MeterRegistry meterRegistry,
+		@Value( "${company-registry.index-path:}" ) String indexPath,
+		@Value( "${company-registry.csv-path:}" ) String csvPath,
+		@Value( "${company-registry.csv.nif-column:nif}" ) String nifColumn,
+		@Value( "${company-registry.csv.name-column:name}" ) String nameColumn,
+		@Value( "${company-registry.csv.delimiter:,}" ) char delimiter ) {
+		this.indexPath = StringUtils.hasText( indexPath ) ? Paths.get( indexPath.trim() ) : null;
+		this.csvPath = StringUtils.hasText( csvPath ) ? Paths.get( csvPath.trim() ) : null;
+		this.nifColumn = nifColumn;
+		this.nameColumn = nameColumn;
+		this.delimiter = delimiter;
+		this.hits = meterRegistry.counter( "company.registry.lookups", "result", "hit" );
+		this.misses = meterRegistry.counter( "company.registry.lookups", "result", "miss" );
+		Gauge.builder( "company.registry.entries", this, registry -> registry.index != null ? registry.index.size() : 0 )
+			.register( meterRegistry );
+	}
+
+	/**
+	 * Maps the existing index, so lookups are served from it while a newer export is imported.
+	 */
+	@PostConstruct
+	public void loadIndex() {
+		if ( indexPath == null || !Files.exists( indexPath ) ) {
+			return;
+		}
+		try {
+			index = CompanyRegistryIndex.open( indexPath );
+			logger.info( "Company registry index {} is loaded with {} companies", indexPath, index.size() );
+		}
+		catch ( IOException | RuntimeException e ) {
+			logger.warn( "Could not load the company registry index {}. exception message: {}", indexPath, ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Imports the configured registry export in the background once the application is ready, when the index is
+	 * missing, could not be loaded or is older than the export.
+	 */
+	@Async( "startupTaskExecutor" )
+	@EventListener( ApplicationReadyEvent.class )
+	public void importOutdatedIndex() {
+		if ( indexPath == null || csvPath == null || !Files.exists( csvPath ) ) {
+			return;
+		}
+		try {
+			if ( index == null || !Files.exists( indexPath )
+				|| Files.getLastModifiedTime( csvPath ).compareTo( Files.getLastModifiedTime( indexPath ) ) > 0 ) {
+				importCsv( csvPath );
+			}
+		}
+		catch ( IOException | RuntimeException e ) {
+			logger.warn( "Could not import the company registry {}. exception message: {}", csvPath, ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Imports the configured registry export again, e.g. after a new export was dropped in place.
+	 */
+	@Scheduled( cron = "${company-registry.import-cron:-}" )
+	public void importConfiguredCsv() {
+		if ( indexPath == null || csvPath == null || !Files.exists( csvPath ) ) {
+			return;
+		}
+		try {
+			importCsv( csvPath );
+		}
+		catch ( IOException | RuntimeException e ) {
+			logger.warn( "Could not import the company registry {}. exception message: {}", csvPath, ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Builds the index from a registry export and replaces the loaded index with it.
+	 * <p>
+	 * The index is written next to the target file and moved in place, so lookups keep using the previous index until
+	 * the new one is complete. Rows without a 9-digit NIF or with a blank name are skipped.
+	 * </p>
+	 *
+	 * @param csvFile The CSV export, with a header row naming the NIF and name columns.
+	 * @return The number of companies in the new index.
+	 * @throws IOException If the export cannot be read or the index cannot be written.
+	 */
+	public synchronized int importCsv( Path csvFile ) throws IOException {
+		if ( indexPath == null ) {
+			throw new IllegalStateException( "company-registry.index-path is not configured" );
+		}
+		long start = System.nanoTime();
+		CompanyRegistryIndex.Builder builder = new CompanyRegistryIndex.Builder();
+		long skippedRows = 0;
+		CSVFormat format = CSVFormat.DEFAULT.builder()
+			.setDelimiter( delimiter )
+			.setHeader()
+			.setSkipHeaderRecord( true )
+			.setIgnoreSurroundingSpaces( true )
+			.build();
+		try ( Reader reader = Files.newBufferedReader( csvFile, StandardCharsets.UTF_8 );
+			CSVParser parser = CSVParser.parse( reader, format ) ) {
+			if ( !parser.getHeaderMap().containsKey( nifColumn ) || !parser.getHeaderMap().containsKey( nameColumn ) ) {
+				throw new IOException( "Company registry export " + csvFile + " has no " + nifColumn + " or " + nameColumn + " column" );
+			}
+			for ( CSVRecord record : parser ) {
+				if ( !record.isConsistent() || !builder.add( record.get( nifColumn ), record.get( nameColumn ) ) ) {
+					skippedRows++;
+				}
+			}
+		}
+
+		Path parent = indexPath.toAbsolutePath().getParent();
+		Files.createDirectories( parent );
+		Path temporaryFile = Files.createTempFile( parent, indexPath.getFileName().toString(), ".tmp" );
+		try {
+			int companies = builder.write( temporaryFile );
+			Files.move( temporaryFile, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			index = CompanyRegistryIndex.open( indexPath );
+			logger.info( "Company registry {} is imported with {} companies, {} rows skipped, in {} ms", csvFile, companies, skippedRows,
+				( System.nanoTime() - start ) / 1_000_000 );
+			return companies;
+		}
+		finally {
+			Files.deleteIfExists( temporaryFile );
+		}
+	}
+
+	/**
+	 * @param vatNumber The NIF, with or without the PT prefix.
+	 * @return The registered company name, or empty if the registry is not loaded or does not know the NIF.
+	 */
+	public Optional<String> findCompanyName( String vatNumber ) {
+		CompanyRegistryIndex currentIndex = index;
+		if ( currentIndex == null ) {
+			return Optional.empty();
+		}
+		String companyName = currentIndex.find( vatNumber );
+		if ( companyName == null ) {
+			misses.increment();
+			return Optional.empty();
+		}
+		hits.increment();
+		return Optional.of( companyName );
+	}
+}
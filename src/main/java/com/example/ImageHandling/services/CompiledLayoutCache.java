@@ -0,0 +1,71 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.CompiledLayout;
+import com.example.ImageHandling.domains.RegexPattern;
+import com.example.ImageHandling.domains.RegexPatternDeletedEvent;
+import com.example.ImageHandling.utils.BoundedCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * In-memory cache of the compiled layouts, keyed by layout id.
+ * <p>
+ * An entry is only used for the version of the layout it was compiled from, i.e. the same id and {@code updatedAt}.
+ * Every extraction reads the layout from MongoDB, so a layout updated on another node is recompiled on its next use
+ * here. Updated and deleted layouts are also evicted right away on this node.
+ * </p>
+ */
+@Slf4j
+@Service
+public class CompiledLayoutCache {
+
+	private final MeterRegistry meterRegistry;
+
+	private final BoundedCache<String, CompiledLayout> compiledLayouts;
+
+	public CompiledLayoutCache( MeterRegistry meterRegistry,
+		@Value( "${layout.cache.max-entries:200}" ) int maxEntries,
+		@Value( "${layout.cache.ttl:1h}" ) Duration timeToLive ) {
+		this.meterRegistry = meterRegistry;
+		this.compiledLayouts = new BoundedCache<>( maxEntries, timeToLive );
+	}
+
+	/**
+	 * Returns the compiled layout of the given version of a layout, compiling it on a miss.
+	 *
+	 * @param layout   The layout, as read from the repository.
+	 * @param compiler Compiles the layout on a miss.
+	 * @return The compiled layout.
+	 */
+	public CompiledLayout get( RegexPattern layout, Function<RegexPattern, CompiledLayout> compiler ) {
+		if ( layout.getId() == null ) {
+			return compiler.apply( layout );
+		}
+		Optional<CompiledLayout> cached = compiledLayouts.get( layout.getId() )
+			.filter( compiledLayout -> compiledLayout.isCompiledFrom( layout ) );
+		meterRegistry.counter( "layout.cache", "result", cached.isPresent() ? "hit" : "miss" ).increment();
+		if ( cached.isPresent() ) {
+			return cached.get();
+		}
+		CompiledLayout compiledLayout = compiler.apply( layout );
+		compiledLayouts.put( layout.getId(), compiledLayout );
+		log.debug( "Compiled layout {} with {} fields", layout.getId(), compiledLayout.getFields().size() );
+		return compiledLayout;
+	}
+
+	public void invalidate( String layoutId ) {
+		compiledLayouts.invalidate( layoutId );
+	}
+
+	@EventListener
+	public void handlePatternDeletedEvent( RegexPatternDeletedEvent event ) {
+		invalidate( event.getPatternId() );
+	}
+}
@@ -2,37 +2,53 @@ package com.example.ImageHandling.services;
 
 import com.example.ImageHandling.domains.dto.ExtractedDataDTO;
 import com.example.ImageHandling.exception.MetaDataNotFoundException;
-import com.example.ImageHandling.infrastructure.soap.checkvat.CheckVat;
-import com.example.ImageHandling.infrastructure.soap.checkvat.CheckVatPortType;
-import com.example.ImageHandling.infrastructure.soap.checkvat.CheckVatService;
 import com.example.ImageHandling.domains.*;
+import com.example.ImageHandling.domains.CompiledLayout.CompiledField;
+import com.example.ImageHandling.domains.CompiledLayout.FieldSetter;
 import com.example.ImageHandling.exception.IllegalDataException;
-import com.example.ImageHandling.domains.repository.InvoicesRepository;
 import com.example.ImageHandling.domains.repository.RegexPatternRepository;
+import com.example.ImageHandling.exception.RegexBudgetExceededException;
+import com.example.ImageHandling.utils.BudgetedCharSequence;
+import com.example.ImageHandling.utils.MatScope;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.tess4j.TesseractException;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.ws.Holder;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.time.LocalDate;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
-import static com.example.ImageHandling.utils.DateUtils.formatDate;
+import static com.example.ImageHandling.utils.DateUtils.parseDate;
 import static java.util.Objects.isNull;
 
 @Slf4j
@@ -43,20 +59,61 @@ public class ExtractionService {
 
 	private final RegexPatternRepository regexPatternRepository;
 
-	private final PDFTextStripper pdfTextStripper;
+	// A PDFTextStripper keeps the state of the document being stripped, so each thread uses its own
+	private static final ThreadLocal<PDFTextStripper> PDF_TEXT_STRIPPERS = ThreadLocal.withInitial( () -> {
+		try {
+			return new PDFTextStripper();
+		}
+		catch ( IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	} );
 
 	private final static String PT_PREFIX = "PT";
 
-	String test;
+	private final ImageService imageService;
+
+	private final FieldRegionOcrService fieldRegionOcrService;
+
+	private final CompiledLayoutCache compiledLayoutCache;
+
+	private final CompanyNameService companyNameService;
+
+	private final Executor ocrPageTaskExecutor;
+
+	private final MeterRegistry meterRegistry;
 
-	private final InvoicesRepository invoicesRepository; // Add this field
+	private final int minTextLayerCharacters;
+
+	private final float ocrDpi;
+
+	private final int anchorWindow;
+
+	private final Duration regexFieldBudget;
 
 	@Autowired
 	public ExtractionService( RegexPatternRepository regexPatternRepository,
-		InvoicesRepository invoicesRepository ) throws IOException {
+		ImageService imageService,
+		FieldRegionOcrService fieldRegionOcrService,
+		CompiledLayoutCache compiledLayoutCache,
+		CompanyNameService companyNameService,
+		@Qualifier( "ocrPageTaskExecutor" ) Executor ocrPageTaskExecutor,
+		MeterRegistry meterRegistry,
+		@Value( "${pdf.text-layer.min-characters:20}" ) int minTextLayerCharacters,
+		@Value( "${pdf.ocr.dpi:300}" ) float ocrDpi,
+		@Value( "${extraction.anchor-window:512}" ) int anchorWindow,
+		@Value( "${extraction.regex.field-budget:200ms}" ) Duration regexFieldBudget ) {
 		this.regexPatternRepository = regexPatternRepository;
-		this.pdfTextStripper = new PDFTextStripper();
-		this.invoicesRepository = invoicesRepository; // Assign here
+		this.imageService = imageService;
+		this.fieldRegionOcrService = fieldRegionOcrService;
+		this.compiledLayoutCache = compiledLayoutCache;
+		this.companyNameService = companyNameService;
+		this.ocrPageTaskExecutor = ocrPageTaskExecutor;
+		this.meterRegistry = meterRegistry;
+		this.minTextLayerCharacters = minTextLayerCharacters;
+		this.ocrDpi = ocrDpi;
+		this.anchorWindow = anchorWindow;
+		this.regexFieldBudget = regexFieldBudget;
 	}
 
 	/**
@@ -69,22 +126,35 @@ public class ExtractionService {
 	public String extractTextFromPDF( MultipartFile pdfFile ) throws IOException {
 		logger.info( "Extracting text from PDF..." );
 		try ( PDDocument document = PDDocument.load( pdfFile.getInputStream() ) ) {
-			return pdfTextStripper.getText( document );
+			return pdfTextStripper().getText( document );
 		}
 	}
 
 	/**
-	 * Extracts metadata from a PDF file based on provided field mappings.
+	 * @return The text stripper of the current thread, reset to strip every page.
+	 */
+	private static PDFTextStripper pdfTextStripper() {
+		PDFTextStripper pdfTextStripper = PDF_TEXT_STRIPPERS.get();
+		pdfTextStripper.setStartPage( 1 );
+		pdfTextStripper.setEndPage( Integer.MAX_VALUE );
+		return pdfTextStripper;
+	}
+
+	/**
+	 * Extracts metadata from a PDF file based on the fields of a layout.
+	 * <p>
+	 * Pages without a usable text layer, such as scanned pages, are recognized with OCR in the layout language.
+	 * </p>
 	 *
-	 * @param file          The MultipartFile containing the PDF file.
-	 * @param fieldMappings List of FieldMapping objects specifying regex patterns for extraction.
+	 * @param file   The MultipartFile containing the PDF file.
+	 * @param layout The layout whose field mappings specify the regex patterns for extraction.
 	 * @return Extracted InvoiceMetadata object.
 	 * @throws IOException If there's an error reading the PDF file.
 	 */
-	public InvoiceMetadata extractTextFromPDFWithMappings( MultipartFile file, List<FieldMapping> fieldMappings ) throws IOException {
+	public InvoiceMetadata extractTextFromPDFWithLayout( MultipartFile file, RegexPattern layout ) throws IOException {
 		try ( PDDocument document = PDDocument.load( file.getInputStream() ) ) {
-			String text = pdfTextStripper.getText( document );
-			InvoiceMetadata invoiceMetadata = populateInvoiceMetadata( text, fieldMappings );
+			String text = extractPageTexts( document, layout.getLanguage(), file.getOriginalFilename() );
+			InvoiceMetadata invoiceMetadata = populateInvoiceMetadata( text, layout );
 			if ( invoiceMetadata == null || invoiceMetadata.isEmpty() ) {
 				logger.error( "Error on extracting the data from the PDF with Layout fields, No metadata found based on the layout configs in the file: {}", file.getOriginalFilename() );
 				// Return default InvoiceMetadata with empty fields instead of throwing
@@ -95,6 +165,92 @@ public class ExtractionService {
 		}
 	}
 
+	/**
+	 * Extracts the text of every page of a PDF, using the text layer when the page has one and OCR otherwise.
+	 * <p>
+	 * A page whose text layer has fewer than {@code pdf.text-layer.min-characters} visible characters is rendered in
+	 * grayscale and recognized on the OCR page pool, so digital pages keep the cheap path. Pages are rendered one by
+	 * one on the calling thread, since a PDDocument is not thread-safe, and only their OCR runs in parallel. The pool
+	 * runs a page on the calling thread when its queue is full, which bounds the rendered pages held in memory.
+	 * A page that cannot be rendered or recognized keeps its text layer, even if it is not usable, so one bad page
+	 * does not fail the document.
+	 * </p>
+	 *
+	 * @param document The loaded PDF document.
+	 * @param language The language code for Tesseract OCR.
+	 * @param fileName The name of the file, used for logging.
+	 * @return The text of the pages, merged in page order.
+	 * @throws IOException If the text layer of a page could not be read.
+	 */
+	private String extractPageTexts( PDDocument document, String language, String fileName ) throws IOException {
+		PDFTextStripper pageTextStripper = pdfTextStripper();
+		PDFRenderer renderer = new PDFRenderer( document );
+		int numberOfPages = document.getNumberOfPages();
+		List<CompletableFuture<String>> pageTexts = new ArrayList<>( numberOfPages );
+		try {
+			for ( int pageIndex = 0; pageIndex < numberOfPages; pageIndex++ ) {
+				pageTextStripper.setStartPage( pageIndex + 1 );
+				pageTextStripper.setEndPage( pageIndex + 1 );
+				String pageText = pageTextStripper.getText( document );
+				if ( hasUsableTextLayer( pageText ) ) {
+					meterRegistry.counter( "pdf.pages", "source", "text-layer" ).increment();
+					pageTexts.add( CompletableFuture.completedFuture( pageText ) );
+					continue;
+				}
+				logger.debug( "Page {} of PDF file {} has no usable text layer, recognizing it with OCR", pageIndex + 1, fileName );
+				meterRegistry.counter( "pdf.pages", "source", "ocr" ).increment();
+				int page = pageIndex + 1;
+				BufferedImage pageImage;
+				try {
+					pageImage = renderer.renderImageWithDPI( pageIndex, ocrDpi, ImageType.GRAY );
+				}
+				catch ( IOException | RuntimeException e ) {
+					pageTexts.add( CompletableFuture.completedFuture( ocrFailed( page, fileName, pageText, e ) ) );
+					continue;
+				}
+				pageTexts.add( CompletableFuture.supplyAsync( () -> recognizePage( pageImage, language ), ocrPageTaskExecutor )
+					.exceptionally( e -> ocrFailed( page, fileName, pageText, e ) ) );
+			}
+
+			StringBuilder text = new StringBuilder();
+			for ( CompletableFuture<String> pageText : pageTexts ) {
+				text.append( pageText.join() );
+			}
+			return text.toString();
+		}
+		catch ( IOException | RuntimeException e ) {
+			pageTexts.forEach( pageText -> pageText.cancel( true ) );
+			throw e;
+		}
+	}
+
+	private String ocrFailed( int page, String fileName, String pageText, Throwable e ) {
+		meterRegistry.counter( "pdf.pages", "source", "ocr-failed" ).increment();
+		logger.error( "Error on the OCR of page {} of PDF file {}, its text layer is used instead. exception message: {}", page, fileName, ExceptionUtils.getRootCauseMessage( e ) );
+		return pageText;
+	}
+
+	private boolean hasUsableTextLayer( String pageText ) {
+		int visibleCharacters = 0;
+		for ( int i = 0; i < pageText.length() && visibleCharacters < minTextLayerCharacters; i++ ) {
+			if ( !Character.isWhitespace( pageText.charAt( i ) ) ) {
+				visibleCharacters++;
+			}
+		}
+		return visibleCharacters >= minTextLayerCharacters;
+	}
+
+	private String recognizePage( BufferedImage pageImage, String language ) {
+		try ( MatScope scope = MatScope.open() ) {
+			Mat image = scope.track( new Mat( pageImage.getHeight(), pageImage.getWidth(), CvType.CV_8UC1 ) );
+			image.put( 0, 0, ( (DataBufferByte) pageImage.getRaster().getDataBuffer() ).getData() );
+			return imageService.extractText( image, language, Math.round( ocrDpi ) ) + System.lineSeparator();
+		}
+		catch ( TesseractException | IOException e ) {
+			throw new CompletionException( e );
+		}
+	}
+
 	/**
 	 * Extracts and labels metadata from a plain text string using a specified pattern ID.
 	 *
@@ -104,10 +260,8 @@ public class ExtractionService {
 	 */
 	public InvoiceMetadata extractAndLabelText( String text, String patternId ) {
 		Optional<RegexPattern> optionalPattern = regexPatternRepository.findById( patternId );
-		test = patternId;
 		if ( optionalPattern.isPresent() ) {
-			List<FieldMapping> fieldMappings = optionalPattern.get().getFieldMappings();
-			InvoiceMetadata invoiceMetadata = populateInvoiceMetadata( text, fieldMappings );
+			InvoiceMetadata invoiceMetadata = populateInvoiceMetadata( text, optionalPattern.get() );
 			if (invoiceMetadata == null || invoiceMetadata.isEmpty()) {
 				return generateDefaultInvoiceMetadata("");
 			}
@@ -119,128 +273,67 @@ public class ExtractionService {
 	}
 
 	/**
-	 * Populates InvoiceMetadata object based on extracted text and field mappings.
+	 * Populates InvoiceMetadata object based on extracted text and the field mappings of a layout.
 	 *
-	 * @param text          The plain text content to extract metadata from.
-	 * @param fieldMappings List of FieldMapping objects specifying regex patterns for metadata extraction.
+	 * @param text   The plain text content to extract metadata from.
+	 * @param layout The layout whose field mappings specify the regex patterns for metadata extraction.
 	 * @return Populated InvoiceMetadata object.
 	 */
-	public InvoiceMetadata populateInvoiceMetadata( String text, List<FieldMapping> fieldMappings ) {
+	public InvoiceMetadata populateInvoiceMetadata( String text, RegexPattern layout ) {
+		return populateInvoiceMetadata( text, getCompiledLayout( layout ) );
+	}
+
+	/**
+	 * Populates InvoiceMetadata object based on extracted text and a compiled layout.
+	 * <p>
+	 * The extraction only reads the immutable compiled layout, so it can run concurrently for many documents.
+	 * </p>
+	 *
+	 * @param text           The plain text content to extract metadata from.
+	 * @param compiledLayout The compiled layout whose fields are extracted.
+	 * @return Populated InvoiceMetadata object.
+	 */
+	public InvoiceMetadata populateInvoiceMetadata( String text, CompiledLayout compiledLayout ) {
+		return populateInvoiceMetadata( text, compiledLayout, Map.of() );
+	}
+
+	/**
+	 * Returns the immutable snapshot of a layout, with its compiled field regexes, setters and date format.
+	 *
+	 * @param layout The layout, as read from the repository.
+	 * @return The compiled layout, cached per layout version.
+	 */
+	public CompiledLayout getCompiledLayout( RegexPattern layout ) {
+		return compiledLayoutCache.get( layout, this::compileLayout );
+	}
+
+	/**
+	 * Populates InvoiceMetadata object from the page text and from the text recognized in the field regions.
+	 * <p>
+	 * A field with a region text takes its value from that text: the field regex is applied to the short region text
+	 * when it matches, otherwise the whole region text is used. An invoice date that cannot be parsed is left empty.
+	 * Other fields are matched against the page text.
+	 * </p>
+	 *
+	 * @param text           The plain text content to extract metadata from.
+	 * @param compiledLayout The compiled layout whose fields are extracted.
+	 * @param regionTexts    The text recognized in the region of each positioned field mapping.
+	 * @return Populated InvoiceMetadata object.
+	 */
+	private InvoiceMetadata populateInvoiceMetadata( String text, CompiledLayout compiledLayout, Map<FieldMapping, String> regionTexts ) {
 		InvoiceMetadata invoiceMetadata = new InvoiceMetadata();
 		List<Item> items = new ArrayList<>();
-		for ( FieldMapping fieldMapping : fieldMappings ) {
-			// Ensure the regex includes a capturing group for the desired value
-			String regex = fieldMapping.getRegex();
-			Pattern compiledPattern = Pattern.compile( regex );
-			Matcher matcher = compiledPattern.matcher( text );
-			if ( matcher.find() ) {
-				String extractedValue = matcher.group( 1 ); // Use the first capturing group
-
-				switch ( fieldMapping.getName() ) {
-					case "Issuer VAT number":
-						String issVat = extractedValue;
-						if ( issVat.startsWith( "PT" ) ) {
-							issVat = issVat.substring( 2 );
-						}
-						invoiceMetadata.setIssuerVATNumber( issVat );
-						String companyName = fetchCompanyName( issVat );
-						invoiceMetadata.setCompanyName( companyName );
-						break;
-					case "Acquirer VAT number":
-						String acVat = extractedValue;
-						if ( acVat.startsWith( "PT" ) ) {
-							acVat = acVat.substring( 2 );
-						}
-						invoiceMetadata.setAcquirerVATNumber( acVat );
-						break;
-					case "Company Name":
-						invoiceMetadata.setCompanyName( extractedValue );
-						break;
-					case "Site":
-						invoiceMetadata.setSite( extractedValue );
-						break;
-					case "Phone Number":
-						invoiceMetadata.setPhoneNumber( extractedValue );
-						break;
-					case "E-mail":
-						invoiceMetadata.setEmail( extractedValue );
-						break;
-					case "Address":
-						invoiceMetadata.setAddress( extractedValue );
-						break;
-					case "Postal Code":
-						invoiceMetadata.setPostalCode( extractedValue );
-						break;
-					case "Acquirer country":
-						invoiceMetadata.setAcquirerCountry( extractedValue );
-						break;
-					case "Invoice Date":
-						Optional<RegexPattern> optionalPattern = regexPatternRepository.findById( test );
-						if (optionalPattern.isPresent() && "Invoice Date".equals(fieldMapping.getName())) {
-							String formattedDate = formatDate(extractedValue, optionalPattern.get().getDateFormat());
-							DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-							LocalDate localDate = LocalDate.parse(formattedDate, formatter);
-							invoiceMetadata.setInvoiceDate(localDate);
-						}
-						break;
-					case "Invoice Number":
-						invoiceMetadata.setInvoiceNumber( extractedValue );
-						break;
-					case "Document paid at":
-						invoiceMetadata.setDocumentPaidAt( extractedValue );
-						break;
-					case "Client":
-						invoiceMetadata.setClient( extractedValue );
-						break;
-					case "Currency":
-						invoiceMetadata.setCurrency( extractedValue );
-						break;
-					case "Due Date":
-						invoiceMetadata.setDueDate( extractedValue );
-						break;
-					case "Value-Added Tax":
-						invoiceMetadata.setValueAddedTax( extractedValue );
-						break;
-					case "Subtotal":
-						invoiceMetadata.setSubtotal( extractedValue );
-						break;
-					case "Total":
-						invoiceMetadata.setTotal( extractedValue );
-						break;
-					case "Payment Status":
-						invoiceMetadata.setPaymentStatus( extractedValue );
-						break;
-					// Handle items
-					case "Item Quantity":
-					case "Item Value":
-					case "Item Subtotal":
-					case "Total Amount":
-					case "Article Ref":
-					case "Item Name":
-						Item item = new Item();
-						switch ( fieldMapping.getName() ) {
-							case "Item Quantity":
-								item.setItemQuantity( extractedValue );
-								break;
-							case "Item Value":
-								item.setItemValue( extractedValue );
-								break;
-							case "Item Subtotal":
-								item.setItemSubtotal( extractedValue );
-								break;
-							case "Total Amount":
-								item.setTotalAmount( extractedValue );
-								break;
-							case "Article Ref":
-								item.setArticleRef( extractedValue );
-								break;
-							case "Item Name":
-								item.setItemName( extractedValue );
-								break;
-						}
-						items.add( item );
-						break;
-				}
+		List<CompiledField> fields = compiledLayout.getFields();
+		String[] textValues = compiledLayout.matchFields( text, regexFieldBudget,
+			( fieldIndex, elapsedNanos, budgetExceeded ) -> recordFieldExecution( compiledLayout, fields.get( fieldIndex ), elapsedNanos, budgetExceeded ) );
+		for ( int i = 0; i < fields.size(); i++ ) {
+			CompiledField field = fields.get( i );
+			String regionText = regionTexts.get( field.getFieldMapping() );
+			String extractedValue = regionText != null
+				? extractRegionValue( regionText, field.getPattern() )
+				: textValues[i];
+			if ( extractedValue != null ) {
+				field.getSetter().set( invoiceMetadata, items, extractedValue );
 			}
 		}
 
@@ -251,6 +344,186 @@ public class ExtractionService {
 		return invoiceMetadata.isEmpty() ? generateDefaultInvoiceMetadata("") : invoiceMetadata;
 	}
 
+	private void recordFieldExecution( CompiledLayout compiledLayout, CompiledField field, long elapsedNanos, boolean budgetExceeded ) {
+		meterRegistry.timer( "extraction.field",
+				"layout", String.valueOf( compiledLayout.getLayoutId() ),
+				"field", String.valueOf( field.getFieldMapping().getName() ),
+				"outcome", budgetExceeded ? "budget-exceeded" : "completed" )
+			.record( elapsedNanos, TimeUnit.NANOSECONDS );
+		if ( budgetExceeded ) {
+			logger.warn( "Regex of field {} of layout {} exceeded its budget of {} ms and was skipped", field.getFieldMapping().getName(), compiledLayout.getLayoutId(), regexFieldBudget.toMillis() );
+		}
+	}
+
+	private String extractValue( String text, Pattern pattern ) {
+		if ( pattern == null ) {
+			return null;
+		}
+		try {
+			// The regex includes a capturing group for the desired value
+			Matcher matcher = pattern.matcher( BudgetedCharSequence.of( text, regexFieldBudget ) );
+			if ( matcher.find() ) {
+				return matcher.group( 1 ); // Use the first capturing group
+			}
+		}
+		catch ( RegexBudgetExceededException e ) {
+			logger.warn( "Regex {} exceeded its budget of {} ms and was skipped", pattern.pattern(), regexFieldBudget.toMillis() );
+		}
+		return null;
+	}
+
+	private String extractRegionValue( String regionText, Pattern pattern ) {
+		if ( regionText.isEmpty() ) {
+			return null;
+		}
+		String extractedValue = extractValue( regionText, pattern );
+		return extractedValue != null ? extractedValue : regionText;
+	}
+
+	/**
+	 * Compiles the regex and resolves the setter of every field of a layout. Fields with an unknown name are skipped.
+	 */
+	private CompiledLayout compileLayout( RegexPattern layout ) {
+		List<CompiledField> fields = new ArrayList<>();
+		if ( layout.getFieldMappings() != null ) {
+			for ( FieldMapping fieldMapping : layout.getFieldMappings() ) {
+				FieldSetter setter = resolveFieldSetter( fieldMapping.getName(), layout.getDateFormat() );
+				if ( setter == null ) {
+					logger.debug( "Skipping unknown field {} of layout {}", fieldMapping.getName(), layout.getId() );
+					continue;
+				}
+				String regex = fieldMapping.getRegex();
+				Pattern pattern = regex != null && !regex.isBlank() ? Pattern.compile( regex ) : null;
+				// Copied so that changes to the loaded layout never reach the shared snapshot
+				fields.add( new CompiledField( new FieldMapping( fieldMapping ), pattern, setter ) );
+			}
+		}
+		return new CompiledLayout( layout, fields, anchorWindow );
+	}
+
+	/**
+	 * Resolves the setter of a field, or null if the field name is unknown.
+	 *
+	 * @param fieldName  The name of the field.
+	 * @param dateFormat The date format of the layout, used by the invoice date.
+	 */
+	private FieldSetter resolveFieldSetter( String fieldName, String dateFormat ) {
+		if ( fieldName == null ) {
+			return null;
+		}
+		switch ( fieldName ) {
+			case "Issuer VAT number":
+				return ( invoiceMetadata, items, value ) -> {
+					String issVat = value.startsWith( PT_PREFIX ) ? value.substring( 2 ) : value;
+					invoiceMetadata.setIssuerVATNumber( issVat );
+					invoiceMetadata.setCompanyName( fetchCompanyName( issVat ) );
+				};
+			case "Acquirer VAT number":
+				return ( invoiceMetadata, items, value ) ->
+					invoiceMetadata.setAcquirerVATNumber( value.startsWith( PT_PREFIX ) ? value.substring( 2 ) : value );
+			case "Company Name":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setCompanyName( value );
+			case "Site":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setSite( value );
+			case "Phone Number":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setPhoneNumber( value );
+			case "E-mail":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setEmail( value );
+			case "Address":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setAddress( value );
+			case "Postal Code":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setPostalCode( value );
+			case "Acquirer country":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setAcquirerCountry( value );
+			case "Invoice Date":
+				// A date that does not parse, e.g. a region text the field regex did not match, leaves the date empty
+				return ( invoiceMetadata, items, value ) -> {
+					if ( dateFormat == null || dateFormat.isBlank() ) {
+						logger.warn( "Invoice date {} is skipped, the layout has no date format", value );
+						return;
+					}
+					try {
+						parseDate( value, dateFormat ).ifPresent( invoiceMetadata::setInvoiceDate );
+					}
+					catch ( IllegalArgumentException e ) {
+						logger.warn( "Invoice date {} is skipped, invalid date format {}", value, dateFormat );
+					}
+				};
+			case "Invoice Number":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setInvoiceNumber( value );
+			case "Document paid at":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setDocumentPaidAt( value );
+			case "Client":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setClient( value );
+			case "Currency":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setCurrency( value );
+			case "Due Date":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setDueDate( value );
+			case "Value-Added Tax":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setValueAddedTax( value );
+			case "Subtotal":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setSubtotal( value );
+			case "Total":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setTotal( value );
+			case "Payment Status":
+				return ( invoiceMetadata, items, value ) -> invoiceMetadata.setPaymentStatus( value );
+			// Handle items, each extracted value is added as its own item
+			case "Item Quantity":
+				return itemSetter( Item::setItemQuantity );
+			case "Item Value":
+				return itemSetter( Item::setItemValue );
+			case "Item Subtotal":
+				return itemSetter( Item::setItemSubtotal );
+			case "Total Amount":
+				return itemSetter( Item::setTotalAmount );
+			case "Article Ref":
+				return itemSetter( Item::setArticleRef );
+			case "Item Name":
+				return itemSetter( Item::setItemName );
+			default:
+				return null;
+		}
+	}
+
+	private static FieldSetter itemSetter( BiConsumer<Item, String> itemField ) {
+		return ( invoiceMetadata, items, value ) -> {
+			Item item = new Item();
+			itemField.accept( item, value );
+			items.add( item );
+		};
+	}
+
+	/**
+	 * Extracts and labels metadata from an invoice image using a specified pattern ID.
+	 * <p>
+	 * The fields of the layout that have a position are read from their region only. The whole page is recognized
+	 * only when some field of the layout has no position.
+	 * </p>
+	 *
+	 * @param image     The invoice image.
+	 * @param patternId The ID of the pattern to use for text labeling.
+	 * @return The extracted InvoiceMetadata object.
+	 * @throws TesseractException If Tesseract encounters an error during OCR.
+	 * @throws IOException        If there's an error reading the image.
+	 */
+	public InvoiceMetadata extractAndLabelImage( Mat image, String patternId ) throws TesseractException, IOException {
+		RegexPattern pattern = regexPatternRepository.findById( patternId ).orElseThrow();
+		CompiledLayout compiledLayout = getCompiledLayout( pattern );
+		// The region texts are keyed by the field mappings of the compiled layout
+		List<FieldMapping> fieldMappings = compiledLayout.getFields().stream().map( CompiledField::getFieldMapping ).collect( Collectors.toList() );
+
+		Map<FieldMapping, String> regionTexts = fieldRegionOcrService.recognizeFields( image, fieldMappings, pattern.getLanguage(), compiledLayout.getDateFormat() );
+		boolean pageTextNeeded = fieldMappings.stream().anyMatch( fieldMapping -> !regionTexts.containsKey( fieldMapping ) );
+		String text = pageTextNeeded ? imageService.extractText( image, pattern.getLanguage() ) : "";
+		logger.info( "Extracted {} fields from their regions, page OCR {}", regionTexts.size(), pageTextNeeded ? "needed" : "skipped" );
+
+		InvoiceMetadata invoiceMetadata = populateInvoiceMetadata( text, compiledLayout, regionTexts );
+		if ( invoiceMetadata == null || invoiceMetadata.isEmpty() ) {
+			return generateDefaultInvoiceMetadata("");
+		}
+		return invoiceMetadata;
+	}
+
 	/**
 	 * Saves an Invoices entity with the uploaded file details.
 	 *
@@ -282,11 +555,9 @@ public class ExtractionService {
 		}
 
 			Optional<RegexPattern> optionalPattern = regexPatternRepository.findById( patternId );
-			test = patternId;
-			if ( optionalPattern.isPresent() ) {
-				List<FieldMapping> fieldMappings = optionalPattern.get().getFieldMappings();
+				if ( optionalPattern.isPresent() ) {
 				Invoices invoice = createInvoiceFromFile( file );
-				InvoiceMetadata invoiceMetadata = extractTextFromPDFWithMappings( file, fieldMappings );
+				InvoiceMetadata invoiceMetadata = extractTextFromPDFWithLayout( file, optionalPattern.get() );
 				invoice.setInvoiceMetadata( invoiceMetadata );
 				extractedDataDTO.setInvoiceMetadata( invoiceMetadata );
 				extractedDataDTO.setIsExtractedData( true );
@@ -300,67 +571,15 @@ public class ExtractionService {
 	}
 
 	/**
-	 * Fetches company name using VAT number.
-	 * <p>
-	 * First, it checks if any invoice with the given VAT number with the external service
-	 * If not, it attempts to fetch the company name through the database.
-	 * </p>
+	 * Fetches company name using VAT number, waiting at most {@code vies.lookup.timeout} for VIES.
 	 *
 	 * @param issuerNif The VAT number of the issuer.
 	 * @return Company name associated with the VAT number, or an empty string if not found.
+	 * @see CompanyNameService#fetchCompanyName(String)
 	 */
 	public String fetchCompanyName( String issuerNif ) {
-		// Remove PT prefix if present
-		String normalizedNif = issuerNif;
-		if (normalizedNif.startsWith(PT_PREFIX)) {
-			normalizedNif = normalizedNif.substring(2);
-		}
-
-
-
-		CheckVatService service = new CheckVatService();
-		CheckVatPortType port = service.getCheckVatPort();
-		CheckVat request = new CheckVat();
-		request.setCountryCode(PT_PREFIX);
-		request.setVatNumber(normalizedNif);
-
-		Holder<String> countryCodeHolder = new Holder<>(request.getCountryCode());
-		Holder<String> vatNumberHolder = new Holder<>(request.getVatNumber());
-		Holder<XMLGregorianCalendar> requestDateHolder = new Holder<>();
-		Holder<Boolean> validHolder = new Holder<>();
-		Holder<String> nameHolder = new Holder<>();
-		Holder<String> addressHolder = new Holder<>();
-
-		try {
-			port.checkVat(countryCodeHolder, vatNumberHolder, requestDateHolder, validHolder, nameHolder, addressHolder);
-			if (nameHolder.value != null) {
-				logger.info("Company name found for VAT number: {}", normalizedNif);
-				return nameHolder.value;
-			} else {
-				logger.error("Company name not found for VAT number: {}", normalizedNif);
-				return "";
-			}
-		} catch (Exception e) {
-			logger.error("Error fetching company name for VAT number: {}. Exception: {}", normalizedNif, ExceptionUtils.getStackTrace(e));
-			// 2. Fallback to DB
-			List<Invoices> invoices = invoicesRepository.findByIssuerVATNumberAndCompanyNameNotEmpty(normalizedNif);
-			for (Invoices invoice : invoices) {
-				String existingCompanyName = invoice.getInvoiceMetadata().getCompanyName();
-				if (existingCompanyName != null && !existingCompanyName.trim().isEmpty()) {
-					return existingCompanyName;
-				}
-				else {
-					logger.warn("No valid company name found for invoice with VAT number: {}", normalizedNif);
-					return "";
-				}
-			}
-			logger.error("No invoices found for VAT number: {}", normalizedNif);
-			return "";
-		}
-
-
-
-    }
+		return companyNameService.fetchCompanyName( issuerNif ).join();
+	}
 
 	/**
 	 * Generates a default InvoiceMetadata object with all fields set to empty strings,
@@ -0,0 +1,152 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.FieldMapping;
+import com.example.ImageHandling.utils.FieldRegionUtils;
+import com.example.ImageHandling.utils.MatScope;
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.tess4j.TesseractException;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * OCR of the layout fields that have a configured {@code position}.
+ * <p>
+ * Instead of reading the whole page, only the region of each positioned field is recognized, in parallel on the
+ * shared OCR region pool. Fields with a known character set, such as VAT numbers and amounts, are recognized as a
+ * single text line restricted to that character set. The character set of the invoice date follows the date format of
+ * the layout, and dates with textual parts, such as month names, are not restricted.
+ * </p>
+ */
+@Slf4j
+@Service
+public class FieldRegionOcrService {
+
+	// Page segmentation mode for a single text line
+	private static final int SINGLE_LINE_PAGE_SEG_MODE = 7;
+
+	private static final String VAT_NUMBER_CHARACTERS = "0123456789PT";
+
+	private static final String AMOUNT_CHARACTERS = "0123456789.,-";
+
+	private static final String DATE_CHARACTERS = "0123456789/-.";
+
+	private static final String INVOICE_DATE = "Invoice Date";
+
+	// Date pattern letters that are always printed as digits, the month only up to two letters
+	private static final String NUMERIC_DATE_LETTERS = "dMLyu";
+
+	private static final Map<String, String> FIELD_CHAR_WHITELISTS = Map.of(
+		"Issuer VAT number", VAT_NUMBER_CHARACTERS,
+		"Acquirer VAT number", VAT_NUMBER_CHARACTERS,
+		"Postal Code", "0123456789-",
+		"Value-Added Tax", AMOUNT_CHARACTERS,
+		"Subtotal", AMOUNT_CHARACTERS,
+		"Total", AMOUNT_CHARACTERS );
+
+	private final TesseractEnginePool tesseractEnginePool;
+
+	private final Executor ocrRegionTaskExecutor;
+
+	public FieldRegionOcrService( TesseractEnginePool tesseractEnginePool,
+		@Qualifier( "ocrRegionTaskExecutor" ) Executor ocrRegionTaskExecutor ) {
+		this.tesseractEnginePool = tesseractEnginePool;
+		this.ocrRegionTaskExecutor = ocrRegionTaskExecutor;
+	}
+
+	/**
+	 * Recognizes the region of every positioned field mapping.
+	 *
+	 * @param image         The page image.
+	 * @param fieldMappings The field mappings of the layout. Mappings without a usable position are skipped.
+	 * @param language      The language code for Tesseract OCR.
+	 * @param dateFormat    The date format of the layout, or null if it has none.
+	 * @return The recognized text of each positioned field mapping. Fields whose OCR failed are left out.
+	 */
+	public Map<FieldMapping, String> recognizeFields( Mat image, List<FieldMapping> fieldMappings, String language, String dateFormat ) {
+		Map<FieldMapping, String> fieldTexts = new IdentityHashMap<>();
+		Map<FieldMapping, CompletableFuture<String>> fieldFutures = new IdentityHashMap<>();
+		try ( MatScope scope = MatScope.open() ) {
+			for ( FieldMapping fieldMapping : fieldMappings ) {
+				Optional<Rect> region = FieldRegionUtils.toRegion( fieldMapping.getPosition(), image.cols(), image.rows() );
+				if ( region.isEmpty() ) {
+					continue;
+				}
+				Mat regionImage = scope.track( image.submat( region.get() ) );
+				fieldFutures.put( fieldMapping, CompletableFuture.supplyAsync( () -> recognizeRegion( regionImage, fieldMapping, language, dateFormat ), ocrRegionTaskExecutor ) );
+			}
+			// The regions share the pixels of the image, so every OCR must finish before the scope is closed
+			fieldFutures.forEach( ( fieldMapping, fieldFuture ) -> {
+				try {
+					fieldTexts.put( fieldMapping, fieldFuture.join() );
+				}
+				catch ( CompletionException e ) {
+					log.error( "Error on the OCR of the region of field {}. exception message: {}", fieldMapping.getName(), ExceptionUtils.getRootCauseMessage( e ) );
+				}
+			} );
+		}
+		return fieldTexts;
+	}
+
+	private String recognizeRegion( Mat regionImage, FieldMapping fieldMapping, String language, String dateFormat ) {
+		String charWhitelist = INVOICE_DATE.equals( fieldMapping.getName() )
+			? dateCharWhitelist( dateFormat )
+			: FIELD_CHAR_WHITELISTS.get( fieldMapping.getName() );
+		int pageSegMode = charWhitelist != null ? SINGLE_LINE_PAGE_SEG_MODE : TesseractEnginePool.DEFAULT_PAGE_SEG_MODE;
+		try {
+			String text = tesseractEnginePool.withEngine( language, TesseractEnginePool.DEFAULT_OCR_ENGINE_MODE, pageSegMode,
+				engine -> engine.recognize( regionImage, charWhitelist ) );
+			return text.replaceAll( "\\s+", " " ).trim();
+		}
+		catch ( TesseractException e ) {
+			throw new CompletionException( e );
+		}
+	}
+
+	/**
+	 * Builds the characters a date of the given format can be printed with: the digits and the separators of the
+	 * format.
+	 *
+	 * @param dateFormat The date format of the layout, e.g. {@code dd/MM/yyyy}.
+	 * @return The characters, the default date characters if the layout has no date format, or null if the format
+	 * has textual parts such as {@code MMM} or quoted words, which must not be restricted.
+	 */
+	static String dateCharWhitelist( String dateFormat ) {
+		if ( dateFormat == null || dateFormat.isBlank() ) {
+			return DATE_CHARACTERS;
+		}
+		StringBuilder whitelist = new StringBuilder( "0123456789" );
+		boolean quoted = false;
+		for ( int i = 0; i < dateFormat.length(); i++ ) {
+			char c = dateFormat.charAt( i );
+			if ( c == '\'' ) {
+				quoted = !quoted;
+				continue;
+			}
+			if ( Character.isLetter( c ) ) {
+				int run = 1;
+				while ( !quoted && i + run < dateFormat.length() && dateFormat.charAt( i + run ) == c ) {
+					run++;
+				}
+				if ( quoted || NUMERIC_DATE_LETTERS.indexOf( c ) < 0 || ( ( c == 'M' || c == 'L' ) && run > 2 ) ) {
+					return null;
+				}
+				i += run - 1;
+			}
+			else if ( whitelist.indexOf( String.valueOf( c ) ) < 0 ) {
+				whitelist.append( c );
+			}
+		}
+		return whitelist.toString();
+	}
+}
@@ -1,16 +1,11 @@
 package com.example.ImageHandling.services;
 
-import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
+import com.example.ImageHandling.utils.TesseractEngine;
+import lombok.RequiredArgsConstructor;
 import net.sourceforge.tess4j.TesseractException;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 
@@ -18,8 +13,11 @@ import java.io.IOException;
  * Service class for handling Images.
  */
 @Service
+@RequiredArgsConstructor
 public class ImageService {
 
+    private final TesseractEnginePool tesseractEnginePool;
+
     /**
      * Extracts text from an input OpenCV Mat image using Tesseract OCR.
      *
@@ -30,24 +28,24 @@ public class ImageService {
      * @throws IOException        If there's an error reading the image.
      */
     public String extractText(Mat image, String language) throws TesseractException, IOException {
+        return extractText(image, language, TesseractEngine.UNKNOWN_RESOLUTION);
+    }
 
-        // Initialize Tesseract OCR engine
-        ITesseract tesseract = new Tesseract();
-        tesseract.setDatapath("src/main/resources/tessdata"); // Set path to Tesseract trained data
-        tesseract.setOcrEngineMode(3); // Set OCR engine mode (3 for LSTM)
-        tesseract.setPageSegMode(6); // Set page segmentation mode (6 for OCR engine)
-        tesseract.setLanguage(language); // Set language for OCR
-
-        // Convert OpenCV Mat image to byte array
-        MatOfByte matOfByte = new MatOfByte();
-        Imgcodecs.imencode(".jpg", image, matOfByte); // Encode Mat image to JPEG format
-        byte[] byteArray = matOfByte.toArray(); // Convert MatOfByte to byte array
-
-        // Convert byte array back to BufferedImage
-        BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(byteArray));
+    /**
+     * Extracts text from an input OpenCV Mat image of a known resolution using Tesseract OCR.
+     *
+     * @param image            The input OpenCV Mat image, e.g. a rendered PDF page.
+     * @param language         The language code for Tesseract OCR.
+     * @param sourceResolution The resolution of the image in DPI.
+     * @return Extracted text from the image.
+     * @throws TesseractException If Tesseract encounters an error during OCR.
+     * @throws IOException        If there's an error reading the image.
+     */
+    public String extractText(Mat image, String language, int sourceResolution) throws TesseractException, IOException {
 
-        // Perform OCR on the BufferedImage
-        String text = tesseract.doOCR(bufferedImage).replaceAll("\\n", " "); // Extract text and replace newlines with spaces
+        // Hand the Mat pixels to a pooled engine (OCR engine mode 3, page segmentation mode 6) without encoding them
+        String text = tesseractEnginePool.withEngine(language, engine -> engine.recognize(image, sourceResolution))
+                .replaceAll("\\n", " "); // Extract text and replace newlines with spaces
 
         // Normalize whitespace
         text = text.replaceAll("\\s+", " "); // Replace multiple spaces and other whitespace characters with a single space
@@ -46,6 +46,7 @@ public class InvoiceService {
     private final DeletedInvoiceRepository deletedInvoiceRepository;
     private final MongoTemplate mongoTemplate;
     private final AuthService authService;
+    private final IssuerDirectoryService issuerDirectoryService;
 
 
     /**
@@ -160,6 +161,7 @@ public class InvoiceService {
             deletedInvoiceRepository.save(deletedInvoice);
 
             invoicesRepository.deleteById(id);
+            issuerDirectoryService.recordRemoval(invoice.getInvoiceMetadata());
             logger.info("Invoice '{}' ({}) deleted successfully", invoice.getFileName(), id);
         }
         else {
@@ -242,6 +244,7 @@ public class InvoiceService {
                             .build();
 
                     Invoices savedInvoice = invoicesRepository.save(invoice);
+                    issuerDirectoryService.recordInvoice(savedInvoice.getInvoiceMetadata());
                     savedInvoices.add(savedInvoice);
                     batchProcessFileWithOutDuplicateInvoice.add(createdFile);
 
@@ -324,6 +327,7 @@ public class InvoiceService {
                                 .createdBy( authService.getLoggedInUserDetails().getUsername() )
                                 .build();
                             Invoices savedInvoice = invoicesRepository.save( invoice );
+                            issuerDirectoryService.recordInvoice( savedInvoice.getInvoiceMetadata() );
                             savedInvoices.add( savedInvoice );
 
                             auditLogService.logSubmit( authService.getLoggedInUserDetails().getUsername(), batchProcessFile.getFilename() );
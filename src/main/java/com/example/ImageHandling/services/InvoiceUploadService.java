@@ -4,10 +4,10 @@ import com.example.ImageHandling.domains.*;
 import com.example.ImageHandling.domains.dto.ExtractedDataDTO;
 import com.example.ImageHandling.domains.dto.UploadInvoicesDTO;
 import com.example.ImageHandling.domains.dto.UserDetailsDTO;
-import com.example.ImageHandling.domains.repository.RegexPatternRepository;
 import com.example.ImageHandling.domains.types.BatchProcessFileState;
 import com.example.ImageHandling.domains.types.BatchProcessState;
 import com.example.ImageHandling.exception.DuplicateInvoiceException;
+import com.example.ImageHandling.utils.MatScope;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -41,14 +41,10 @@ public class InvoiceUploadService {
 
 	private final QRCodeReader qrCodeReader;
 
-	private final ImageService imageService;
-
 	private final ExtractionService extractionService;
 
 	private final BatchService batchService;
 
-	private final RegexPatternRepository regexPatternRepository;
-
 	private final AuditLogService auditLogService;
 
 	private final AuthService authService;
@@ -222,15 +218,13 @@ public class InvoiceUploadService {
 
 	private ExtractedDataDTO extractImageText( MultipartFile file, String patternId, BatchProcessFile batchProcessFile ) throws Exception {
 		ExtractedDataDTO extractedDataDTO = new ExtractedDataDTO();
-		// Decode the image to the Mat
-		Mat image = Imgcodecs.imdecode( new MatOfByte( file.getBytes() ), Imgcodecs.IMREAD_COLOR );
-		// Retrieve the regex pattern by ID and determine the language
-		RegexPattern regexId = regexPatternRepository.findById( patternId ).orElseThrow();
-		String language = regexId.getLanguage();
-		// Extract text from the image using OCR
-		String extractedText = imageService.extractText( image, language );
-		// Extract metadata from the extracted text based on the regex pattern
-		InvoiceMetadata invoiceMetadata = extractionService.extractAndLabelText( extractedText, patternId );
+		InvoiceMetadata invoiceMetadata;
+		try ( MatScope scope = MatScope.open() ) {
+			// Decode the image to the Mat
+			Mat image = scope.track( Imgcodecs.imdecode( scope.track( new MatOfByte( file.getBytes() ) ), Imgcodecs.IMREAD_COLOR ) );
+			// Extract the metadata of the layout fields, by region when they have a position
+			invoiceMetadata = extractionService.extractAndLabelImage( image, patternId );
+		}
 		invoiceMetadata.setOriginalFileName( file.getOriginalFilename() );
 		batchProcessFile.setMetadata( invoiceMetadata );
 		extractedDataDTO.setIsExtractedData( true );
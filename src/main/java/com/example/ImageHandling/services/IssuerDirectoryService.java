@@ -0,0 +1,378 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.InvoiceMetadata;
+import com.example.ImageHandling.domains.Invoices;
+import com.example.ImageHandling.domains.IssuerDirectoryBackfill;
+import com.example.ImageHandling.domains.IssuerDirectoryEntry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Directory of the issuers of the saved invoices, kept in the {@code IssuerDirectory} collection.
+ * <p>
+ * Every saved, edited or deleted invoice updates the entry of its issuer in place: the latest company name, the date
+ * the issuer was last seen and its invoice count. Reading the company name of an issuer is then a lookup by id, instead
+ * of a scan of its invoices and their file contents. The updates are applied after the invoice transaction commits,
+ * outside of it. The directory is built once from the saved invoices, on the first start after an upgrade. Directory
+ * failures are logged and never fail an invoice save.
+ * </p>
+ */
+@Slf4j
+@Service
+public class IssuerDirectoryService {
+
+	private static final String INVOICE_COUNT = "invoiceCount";
+
+	private static final String COMPANY_NAME = "companyName";
+
+	private static final String SEARCH_NAME = "searchName";
+
+	private static final String LAST_SEEN = "lastSeen";
+
+	private static final String BACKFILL_ID = "issuer-directory";
+
+	private static final String STARTED_AT = "startedAt";
+
+	private static final String COMPLETED_AT = "completedAt";
+
+	// A search for a VAT number, with or without the PT prefix, instead of a company name such as "PT Comunicações"
+	private static final Pattern VAT_NUMBER_SEARCH = Pattern.compile( "^(PT)?\\d+$" );
+
+	private final MongoTemplate mongoTemplate;
+
+	private final boolean backfillEnabled;
+
+	private final Duration backfillLease;
+
+	private final int maxSearchResults;
+
+	private final TransactionTemplate nonTransactionalTemplate;
+
+	public IssuerDirectoryService( MongoTemplate mongoTemplate,
+		PlatformTransactionManager transactionManager,
+		@Value( "${issuer-directory.backfill.enabled:true}" ) boolean backfillEnabled,
+		@Value( "${issuer-directory.backfill.lease:1h}" ) Duration backfillLease,
+		@Value( "${issuer-directory.search.max-results:20}" ) int maxSearchResults ) {
+		this.mongoTemplate = mongoTemplate;
+		this.backfillEnabled = backfillEnabled;
+		this.backfillLease = backfillLease;
+		this.maxSearchResults = maxSearchResults;
+		this.nonTransactionalTemplate = new TransactionTemplate( transactionManager );
+		this.nonTransactionalTemplate.setPropagationBehavior( TransactionDefinition.PROPAGATION_NOT_SUPPORTED );
+	}
+
+	@PostConstruct
+	public void ensureIndexes() {
+		try {
+			mongoTemplate.indexOps( IssuerDirectoryEntry.class ).ensureIndex( new Index().on( SEARCH_NAME, Sort.Direction.ASC ) );
+			mongoTemplate.indexOps( IssuerDirectoryEntry.class ).ensureIndex( new Index().on( INVOICE_COUNT, Sort.Direction.DESC ) );
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not ensure the indexes of the issuer directory. exception message: {}", ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Builds the directory from the saved invoices, once, e.g. on the first start after an upgrade.
+	 * <p>
+	 * The build runs on the startup thread pool and only on the node that claims the {@link IssuerDirectoryBackfill}
+	 * marker. Each entry is set to the aggregated invoice count, so an entry already created by a new invoice is not
+	 * counted twice. An invoice saved between the aggregation and the write of its issuer may be left out of the count.
+	 * </p>
+	 */
+	@Async( "startupTaskExecutor" )
+	@EventListener( ApplicationReadyEvent.class )
+	public void backfill() {
+		if ( !backfillEnabled || !claimBackfill() ) {
+			return;
+		}
+		try {
+			Criteria hasIssuer = Criteria.where( "invoiceMetadata.issuerVATNumber" ).nin( null, "" );
+			List<Document> issuers = mongoTemplate.aggregate( Aggregation.newAggregation(
+					Aggregation.match( hasIssuer ),
+					Aggregation.group( "invoiceMetadata.issuerVATNumber" ).count().as( INVOICE_COUNT ).max( "createdAt" ).as( LAST_SEEN ) )
+				.withOptions( AggregationOptions.builder().allowDiskUse( true ).build() ), Invoices.class, Document.class ).getMappedResults();
+			Map<String, String> companyNames = new HashMap<>();
+			mongoTemplate.aggregate( Aggregation.newAggregation(
+					Aggregation.match( new Criteria().andOperator( hasIssuer, Criteria.where( "invoiceMetadata.companyName" ).nin( null, "" ) ) ),
+					Aggregation.sort( Sort.Direction.ASC, "createdAt" ),
+					Aggregation.group( "invoiceMetadata.issuerVATNumber" ).last( "invoiceMetadata.companyName" ).as( COMPANY_NAME ) )
+				.withOptions( AggregationOptions.builder().allowDiskUse( true ).build() ), Invoices.class, Document.class )
+				.getMappedResults()
+				.forEach( issuer -> companyNames.put( normalizeVatNumber( issuer.getString( "_id" ) ), issuer.getString( COMPANY_NAME ) ) );
+
+			// Invoices saved with and without the PT prefix are merged into one entry
+			Map<String, Long> invoiceCounts = new HashMap<>();
+			Map<String, Date> lastSeenDates = new HashMap<>();
+			for ( Document issuer : issuers ) {
+				String vatNumber = normalizeVatNumber( issuer.getString( "_id" ) );
+				invoiceCounts.merge( vatNumber, ( (Number) issuer.get( INVOICE_COUNT ) ).longValue(), Long::sum );
+				if ( issuer.getDate( LAST_SEEN ) != null ) {
+					lastSeenDates.merge( vatNumber, issuer.getDate( LAST_SEEN ), ( date, otherDate ) -> date.after( otherDate ) ? date : otherDate );
+				}
+			}
+			BulkOperations bulkOperations = mongoTemplate.bulkOps( BulkOperations.BulkMode.UNORDERED, IssuerDirectoryEntry.class );
+			invoiceCounts.forEach( ( vatNumber, invoiceCount ) -> {
+				Update update = new Update().set( INVOICE_COUNT, invoiceCount );
+				if ( lastSeenDates.containsKey( vatNumber ) ) {
+					update.max( LAST_SEEN, lastSeenDates.get( vatNumber ) );
+				}
+				setCompanyName( update, companyNames.get( vatNumber ) );
+				bulkOperations.upsert( byVatNumber( vatNumber ), update );
+			} );
+			if ( !invoiceCounts.isEmpty() ) {
+				bulkOperations.execute();
+			}
+			mongoTemplate.updateFirst( byBackfillId(), new Update().set( COMPLETED_AT, LocalDateTime.now() ), IssuerDirectoryBackfill.class );
+			log.info( "Issuer directory is built with {} issuers", invoiceCounts.size() );
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not build the issuer directory. exception message: {}", ExceptionUtils.getRootCauseMessage( e ) );
+			releaseBackfill();
+		}
+	}
+
+	/**
+	 * Claims the build of the directory for this node. The marker is inserted by the first node, and taken over when the
+	 * claim of a node that stopped while building is older than {@code issuer-directory.backfill.lease}.
+	 *
+	 * @return false if the directory is built, or another node is building it.
+	 */
+	private boolean claimBackfill() {
+		LocalDateTime now = LocalDateTime.now();
+		Query unclaimed = new Query( Criteria.where( "_id" ).is( BACKFILL_ID ).and( COMPLETED_AT ).is( null )
+			.orOperator( Criteria.where( STARTED_AT ).is( null ), Criteria.where( STARTED_AT ).lt( now.minus( backfillLease ) ) ) );
+		try {
+			// Upserting a marker that exists but does not match inserts a second one with the same id
+			mongoTemplate.upsert( unclaimed, new Update().set( STARTED_AT, now ), IssuerDirectoryBackfill.class );
+			return true;
+		}
+		catch ( DuplicateKeyException e ) {
+			log.debug( "Issuer directory is built or being built by another node" );
+			return false;
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not claim the build of the issuer directory. exception message: {}", ExceptionUtils.getRootCauseMessage( e ) );
+			return false;
+		}
+	}
+
+	/**
+	 * Releases the claim after a failed build, so the next start builds the directory again.
+	 */
+	private void releaseBackfill() {
+		try {
+			mongoTemplate.remove( byBackfillId(), IssuerDirectoryBackfill.class );
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not release the build of the issuer directory. exception message: {}", ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Records a new saved invoice.
+	 *
+	 * @param metadata The metadata of the saved invoice.
+	 */
+	public void recordInvoice( InvoiceMetadata metadata ) {
+		if ( metadata == null || !StringUtils.hasText( metadata.getIssuerVATNumber() ) ) {
+			return;
+		}
+		Update update = new Update().inc( INVOICE_COUNT, 1 ).max( LAST_SEEN, LocalDateTime.now() );
+		setCompanyName( update, metadata.getCompanyName() );
+		upsert( metadata.getIssuerVATNumber(), update );
+	}
+
+	/**
+	 * Records the edit of a saved invoice. When the issuer changed, the invoice is moved to the new issuer.
+	 *
+	 * @param oldMetadata The metadata before the edit.
+	 * @param newMetadata The metadata after the edit.
+	 */
+	public void recordEdit( InvoiceMetadata oldMetadata, InvoiceMetadata newMetadata ) {
+		String oldVatNumber = oldMetadata != null ? normalizeVatNumber( oldMetadata.getIssuerVATNumber() ) : null;
+		String newVatNumber = newMetadata != null ? normalizeVatNumber( newMetadata.getIssuerVATNumber() ) : null;
+		if ( !Objects.equals( oldVatNumber, newVatNumber ) ) {
+			recordRemoval( oldMetadata );
+			recordInvoice( newMetadata );
+		}
+		else if ( newVatNumber != null && StringUtils.hasText( newMetadata.getCompanyName() ) ) {
+			Update update = new Update();
+			setCompanyName( update, newMetadata.getCompanyName() );
+			upsert( newVatNumber, update );
+		}
+	}
+
+	/**
+	 * Records a deleted invoice. The issuer stays in the directory, so its company name is still known.
+	 *
+	 * @param metadata The metadata of the deleted invoice.
+	 */
+	public void recordRemoval( InvoiceMetadata metadata ) {
+		if ( metadata == null || !StringUtils.hasText( metadata.getIssuerVATNumber() ) ) {
+			return;
+		}
+		String vatNumber = metadata.getIssuerVATNumber();
+		afterCommit( () -> {
+			try {
+				mongoTemplate.updateFirst( byVatNumber( normalizeVatNumber( vatNumber ) ).addCriteria( Criteria.where( INVOICE_COUNT ).gt( 0 ) ),
+					new Update().inc( INVOICE_COUNT, -1 ), IssuerDirectoryEntry.class );
+			}
+			catch ( RuntimeException e ) {
+				log.warn( "Could not update the issuer directory entry {}. exception message: {}", vatNumber, ExceptionUtils.getRootCauseMessage( e ) );
+			}
+		} );
+	}
+
+	/**
+	 * @param vatNumber The VAT number, with or without the PT prefix.
+	 * @return The latest company name of the issuer, or empty if the issuer has no invoice with a company name.
+	 */
+	public Optional<String> findCompanyName( String vatNumber ) {
+		if ( !StringUtils.hasText( vatNumber ) ) {
+			return Optional.empty();
+		}
+		Query query = byVatNumber( normalizeVatNumber( vatNumber ) );
+		query.fields().include( COMPANY_NAME );
+		IssuerDirectoryEntry entry = mongoTemplate.findOne( query, IssuerDirectoryEntry.class );
+		return Optional.ofNullable( entry )
+			.map( IssuerDirectoryEntry::getCompanyName )
+			.filter( StringUtils::hasText );
+	}
+
+	/**
+	 * @param limit The maximum number of issuers.
+	 * @return The VAT numbers without the PT prefix of the issuers with the most invoices, those with the most invoices
+	 * first.
+	 */
+	public List<String> findMostFrequentVatNumbers( int limit ) {
+		Query query = new Query()
+			.with( Sort.by( Sort.Direction.DESC, INVOICE_COUNT ) )
+			.limit( limit );
+		query.fields().include( "_id" );
+		return mongoTemplate.find( query, IssuerDirectoryEntry.class )
+			.stream()
+			.map( IssuerDirectoryEntry::getVatNumber )
+			.filter( Objects::nonNull )
+			.collect( Collectors.toList() );
+	}
+
+	/**
+	 * Searches the issuers whose VAT number or company name starts with the given text, for autocompletion.
+	 *
+	 * @param text  The typed text. The company name is matched ignoring case and accents.
+	 * @param limit The maximum number of issuers, capped by {@code issuer-directory.search.max-results}.
+	 * @return The matching issuers, those with the most invoices first.
+	 */
+	public List<IssuerDirectoryEntry> search( String text, int limit ) {
+		if ( !StringUtils.hasText( text ) ) {
+			return List.of();
+		}
+		String trimmedText = text.trim();
+		Criteria criteria = VAT_NUMBER_SEARCH.matcher( trimmedText ).matches()
+			? Criteria.where( "_id" ).regex( "^" + escapeRegex( normalizeVatNumber( trimmedText ) ) )
+			: Criteria.where( SEARCH_NAME ).regex( "^" + escapeRegex( toSearchName( trimmedText ) ) );
+		Query query = new Query( criteria )
+			.with( Sort.by( Sort.Direction.DESC, INVOICE_COUNT ) )
+			.limit( Math.max( 1, Math.min( limit, maxSearchResults ) ) );
+		return mongoTemplate.find( query, IssuerDirectoryEntry.class );
+	}
+
+	private void upsert( String vatNumber, Update update ) {
+		afterCommit( () -> {
+			try {
+				mongoTemplate.upsert( byVatNumber( normalizeVatNumber( vatNumber ) ), update, IssuerDirectoryEntry.class );
+			}
+			catch ( RuntimeException e ) {
+				log.warn( "Could not update the issuer directory entry {}. exception message: {}", vatNumber, ExceptionUtils.getRootCauseMessage( e ) );
+			}
+		} );
+	}
+
+	/**
+	 * Runs a directory update once the invoice transaction of the calling thread has committed, or now if there is none.
+	 * <p>
+	 * Every invoice of an issuer increments the same entry, so updating it inside concurrent invoice transactions makes
+	 * them fail with write conflicts. The update runs outside of any transaction and is skipped when the invoice
+	 * transaction rolls back.
+	 * </p>
+	 */
+	private void afterCommit( Runnable update ) {
+		if ( !TransactionSynchronizationManager.isSynchronizationActive() ) {
+			update.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				// The resources of the committed transaction are still bound to the thread, they are suspended meanwhile
+				nonTransactionalTemplate.executeWithoutResult( status -> update.run() );
+			}
+		} );
+	}
+
+	private static void setCompanyName( Update update, String companyName ) {
+		if ( StringUtils.hasText( companyName ) ) {
+			update.set( COMPANY_NAME, companyName.trim() ).set( SEARCH_NAME, toSearchName( companyName ) );
+		}
+	}
+
+	private static Query byVatNumber( String vatNumber ) {
+		return new Query( Criteria.where( "_id" ).is( vatNumber ) );
+	}
+
+	private static Query byBackfillId() {
+		return new Query( Criteria.where( "_id" ).is( BACKFILL_ID ) );
+	}
+
+	private static String normalizeVatNumber( String vatNumber ) {
+		return vatNumber == null ? null : CompanyNameCache.normalizeVatNumber( vatNumber.trim() );
+	}
+
+	private static String toSearchName( String companyName ) {
+		return Normalizer.normalize( companyName.trim(), Normalizer.Form.NFD )
+			.replaceAll( "\\p{M}", "" )
+			.replaceAll( "\\s+", " " )
+			.toLowerCase( Locale.ROOT );
+	}
+
+	private static String escapeRegex( String text ) {
+		return text.replaceAll( "[\\\\^$.|?*+()\\[\\]{}]", "\\\\$0" );
+	}
+}
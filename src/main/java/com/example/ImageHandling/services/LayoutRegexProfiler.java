@@ -0,0 +1,116 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.FieldMapping;
+import com.example.ImageHandling.domains.RegexPattern;
+import com.example.ImageHandling.exception.IllegalDataException;
+import com.example.ImageHandling.exception.RegexBudgetExceededException;
+import com.example.ImageHandling.utils.BudgetedCharSequence;
+import com.example.ImageHandling.utils.LayoutFieldMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Guards against layout regexes that are invalid or too expensive to run on every upload.
+ * <p>
+ * Before a layout is saved, each field regex is run against sample texts: the field example and long runs of
+ * letters, digits, spaces and punctuation, with and without the field label and ending with a character that does not
+ * match. These are the inputs on which nested or overlapping quantifiers backtrack catastrophically. A regex that reads
+ * more than {@code layout.regex.profile-max-steps} characters on any sample, backtracking included, is rejected.
+ * </p>
+ * <p>
+ * The budget is counted in steps rather than time so that a layout is accepted or rejected the same way whatever the
+ * load of the node. With the default of 20 million steps on samples of {@value #SAMPLE_LENGTH} characters, quadratic
+ * regexes such as {@code (.*)Total} pass and cubic or exponential ones are rejected.
+ * </p>
+ */
+@Slf4j
+@Service
+public class LayoutRegexProfiler {
+
+	private static final int SAMPLE_LENGTH = 1000;
+
+	private static final String[] SAMPLE_FILLERS = { "a", "1", " ", "a1", "1.", "a ", "1,", "aA1 .,-/:" };
+
+	private static final String UNMATCHED_END = "!";
+
+	private final long profileMaxSteps;
+
+	public LayoutRegexProfiler( @Value( "${layout.regex.profile-max-steps:20000000}" ) long profileMaxSteps ) {
+		this.profileMaxSteps = profileMaxSteps;
+	}
+
+	/**
+	 * Validates the field regexes of a layout. Fields without a regex are skipped.
+	 *
+	 * @param layout The layout to be saved.
+	 * @throws IllegalDataException If a regex is invalid, has no capturing group or is too expensive.
+	 */
+	public void validate( RegexPattern layout ) {
+		if ( layout.getFieldMappings() == null ) {
+			return;
+		}
+		for ( FieldMapping fieldMapping : layout.getFieldMappings() ) {
+			String regex = fieldMapping.getRegex();
+			if ( regex == null || regex.isBlank() ) {
+				continue;
+			}
+			Pattern pattern;
+			try {
+				pattern = Pattern.compile( regex );
+			}
+			catch ( PatternSyntaxException e ) {
+				throw new IllegalDataException( "Regex of field " + fieldMapping.getName() + " is invalid: " + e.getDescription() );
+			}
+			if ( pattern.matcher( "" ).groupCount() < 1 ) {
+				throw new IllegalDataException( "Regex of field " + fieldMapping.getName() + " must have a capturing group for the value" );
+			}
+			profile( fieldMapping, pattern );
+		}
+	}
+
+	private void profile( FieldMapping fieldMapping, Pattern pattern ) {
+		long slowestNanos = 0;
+		for ( String sample : sampleTexts( fieldMapping, pattern ) ) {
+			long start = System.nanoTime();
+			try {
+				pattern.matcher( BudgetedCharSequence.ofSteps( sample, profileMaxSteps ) ).find();
+			}
+			catch ( RegexBudgetExceededException e ) {
+				log.warn( "Rejecting the regex {} of field {}, it read more than {} characters on a sample text of {} characters",
+					pattern.pattern(), fieldMapping.getName(), profileMaxSteps, sample.length() );
+				throw new IllegalDataException( "Regex of field " + fieldMapping.getName() + " is too expensive: it backtracks excessively on a sample text."
+					+ " Avoid several unbounded quantifiers that can match the same characters, such as (.*)(.*) or (\\w*\\s*)*" );
+			}
+			slowestNanos = Math.max( slowestNanos, System.nanoTime() - start );
+		}
+		log.debug( "Regex of field {} ran in at most {} µs on the sample texts", fieldMapping.getName(), slowestNanos / 1000 );
+	}
+
+	private static List<String> sampleTexts( FieldMapping fieldMapping, Pattern pattern ) {
+		List<String> samples = new ArrayList<>();
+		String example = fieldMapping.getExample();
+		if ( example != null && !example.isEmpty() ) {
+			samples.add( example );
+			samples.add( repeat( example, SAMPLE_LENGTH ) + UNMATCHED_END );
+		}
+		String label = LayoutFieldMatcher.literalPrefix( pattern );
+		for ( String filler : SAMPLE_FILLERS ) {
+			String run = repeat( filler, SAMPLE_LENGTH );
+			samples.add( run + UNMATCHED_END );
+			if ( label != null ) {
+				samples.add( label + run + UNMATCHED_END );
+			}
+		}
+		return samples;
+	}
+
+	private static String repeat( String filler, int length ) {
+		return filler.repeat( Math.max( 1, length / filler.length() ) );
+	}
+}
@@ -24,6 +24,7 @@ public class MetadataService {
 	private final InvoicesRepository invoicesRepository;
 	private final AuditLogService auditLogService;
 	private final AuthService authService;
+	private final IssuerDirectoryService issuerDirectoryService;
 
 	public void editMetadata( String batchProcessFileId, InvoiceMetadata editedMetadata ) {
 		logger.info("Attempting to edit metadata for batch process file id: {}", batchProcessFileId);
@@ -102,6 +103,7 @@ public class MetadataService {
 			invoice.setInvoiceMetadata( updatedMetadata );
 			invoice.setUpdatedAt( LocalDateTime.now() );
 			Invoices updatedInvoice = invoicesRepository.save( invoice );
+			issuerDirectoryService.recordEdit( oldMetadata, updatedMetadata );
 
 			// Log changes
             logger.info("Updated invoice metadata. id: {}", updatedInvoice.getInvoiceid());
@@ -0,0 +1,155 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.DecodedQRCode;
+import com.example.ImageHandling.domains.InvoiceMetadata;
+import com.example.ImageHandling.domains.QRCodeDecodeCacheEntry;
+import com.example.ImageHandling.domains.repository.QRCodeDecodeCacheRepository;
+import com.example.ImageHandling.utils.BoundedCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Content-addressed cache of the QR codes decoded from uploaded files.
+ * <p>
+ * Entries are keyed by the SHA-256 hash of the uploaded bytes, so re-uploading the same file skips rendering and decoding.
+ * A bounded in-memory tier sits in front of the {@code QRCodeDecodeCache} collection, which survives restarts and is
+ * shared across nodes. Cache failures are logged and never fail an upload.
+ * </p>
+ */
+@Slf4j
+@Service
+public class QRCodeDecodeCache {
+
+	private final QRCodeDecodeCacheRepository qrCodeDecodeCacheRepository;
+
+	private final MongoTemplate mongoTemplate;
+
+	private final MeterRegistry meterRegistry;
+
+	private final BoundedCache<String, List<DecodedQRCode>> memoryCache;
+
+	private final boolean enabled;
+
+	private final Duration timeToLive;
+
+	public QRCodeDecodeCache( QRCodeDecodeCacheRepository qrCodeDecodeCacheRepository,
+		MongoTemplate mongoTemplate,
+		MeterRegistry meterRegistry,
+		@Value( "${qrcode.cache.enabled:true}" ) boolean enabled,
+		@Value( "${qrcode.cache.max-entries:1000}" ) int maxEntries,
+		@Value( "${qrcode.cache.ttl-days:30}" ) int timeToLiveDays ) {
+		this.qrCodeDecodeCacheRepository = qrCodeDecodeCacheRepository;
+		this.mongoTemplate = mongoTemplate;
+		this.meterRegistry = meterRegistry;
+		this.enabled = enabled;
+		this.timeToLive = Duration.ofDays( timeToLiveDays );
+		this.memoryCache = new BoundedCache<>( maxEntries, timeToLive );
+	}
+
+	@PostConstruct
+	public void ensureExpiryIndex() {
+		if ( !enabled ) {
+			return;
+		}
+		try {
+			mongoTemplate.indexOps( QRCodeDecodeCacheEntry.class )
+				.ensureIndex( new Index().on( "createdAt", Sort.Direction.ASC ).expire( timeToLive ) );
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not ensure the expiry index of the QR code decode cache. exception message: {}", ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Computes the SHA-256 hash of a file content, used as the cache key.
+	 *
+	 * @param content The uploaded file content.
+	 * @return The hex encoded SHA-256 hash.
+	 */
+	public String contentHash( byte[] content ) {
+		try {
+			return HexFormat.of().formatHex( MessageDigest.getInstance( "SHA-256" ).digest( content ) );
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			throw new IllegalStateException( "SHA-256 is not available", e );
+		}
+	}
+
+	/**
+	 * Looks up the QR codes decoded earlier from a file with the given content hash.
+	 *
+	 * @param contentHash The SHA-256 hash of the file content.
+	 * @return The decoded QR codes, or empty if the file was not decoded before.
+	 */
+	@Transactional( propagation = Propagation.NOT_SUPPORTED )
+	public Optional<List<DecodedQRCode>> get( String contentHash ) {
+		if ( !enabled ) {
+			return Optional.empty();
+		}
+		Optional<List<DecodedQRCode>> decodedQRCodes = memoryCache.get( contentHash );
+		if ( decodedQRCodes.isPresent() ) {
+			meterRegistry.counter( "qrcode.cache", "result", "memory-hit" ).increment();
+			return decodedQRCodes;
+		}
+		try {
+			Optional<QRCodeDecodeCacheEntry> entry = qrCodeDecodeCacheRepository.findById( contentHash );
+			if ( entry.isPresent() && entry.get().getDecodedQRCodes() != null ) {
+				memoryCache.put( contentHash, entry.get().getDecodedQRCodes() );
+				meterRegistry.counter( "qrcode.cache", "result", "mongo-hit" ).increment();
+				return Optional.of( entry.get().getDecodedQRCodes() );
+			}
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not read the QR code decode cache entry {}. exception message: {}", contentHash, ExceptionUtils.getRootCauseMessage( e ) );
+		}
+		meterRegistry.counter( "qrcode.cache", "result", "miss" ).increment();
+		return Optional.empty();
+	}
+
+	/**
+	 * Stores the QR codes decoded from a file. Nothing is stored unless at least one AT invoice QR code was decoded,
+	 * so files that failed to decode are processed again on the next upload.
+	 *
+	 * @param contentHash    The SHA-256 hash of the file content.
+	 * @param decodedQRCodes The decoded QR codes, in the order they were found.
+	 */
+	@Transactional( propagation = Propagation.NOT_SUPPORTED )
+	public void put( String contentHash, List<DecodedQRCode> decodedQRCodes ) {
+		if ( !enabled || decodedQRCodes.stream().noneMatch( decodedQRCode -> decodedQRCode.getInvoiceMetadata() != null ) ) {
+			return;
+		}
+		List<DecodedQRCode> copies = decodedQRCodes.stream()
+			.map( decodedQRCode -> new DecodedQRCode( decodedQRCode.getText(),
+				decodedQRCode.getInvoiceMetadata() != null ? new InvoiceMetadata( decodedQRCode.getInvoiceMetadata() ) : null ) )
+			.collect( Collectors.toList() );
+		memoryCache.put( contentHash, copies );
+		try {
+			QRCodeDecodeCacheEntry entry = new QRCodeDecodeCacheEntry();
+			entry.setContentHash( contentHash );
+			entry.setDecodedQRCodes( copies );
+			entry.setCreatedAt( LocalDateTime.now() );
+			qrCodeDecodeCacheRepository.save( entry );
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not store the QR code decode cache entry {}. exception message: {}", contentHash, ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.types.QRCodeDecodeTier;
+import com.example.ImageHandling.domains.types.QRCodeRepairStrategy;
+import com.example.ImageHandling.utils.QRCodeRepairUtil;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Decodes QR codes from images by trying decoding tiers from the cheapest to the most expensive.
+ * <p>
+ * Readers are reused per thread and the decode hints are shared, so a decode does not allocate readers or hints.
+ * Every tier decodes all the QR codes it finds, so a page with several invoices yields all of them. Decoding stops at
+ * the first tier that yields an accepted QR code text, and every tier attempt is recorded in the
+ * {@code qrcode.decode.tier} timer tagged with its tier and outcome. The repair tier runs the cascade of repair
+ * strategies configured in {@code qrcode.repair.strategies}.
+ * </p>
+ */
+@Slf4j
+@Component
+public class QRCodeDecoderEngine {
+
+	private static final Map<DecodeHintType, Object> QR_FAST_HINTS = Map.of(
+		DecodeHintType.POSSIBLE_FORMATS, List.of( BarcodeFormat.QR_CODE ) );
+
+	private static final Map<DecodeHintType, Object> QR_TRY_HARDER_HINTS = Map.of(
+		DecodeHintType.POSSIBLE_FORMATS, List.of( BarcodeFormat.QR_CODE ),
+		DecodeHintType.TRY_HARDER, Boolean.TRUE );
+
+	private static final ThreadLocal<QRCodeMultiReader> QR_CODE_READER = ThreadLocal.withInitial( QRCodeMultiReader::new );
+
+	private static final ThreadLocal<GenericMultipleBarcodeReader> MULTIPLE_QR_CODE_READER =
+		ThreadLocal.withInitial( () -> new GenericMultipleBarcodeReader( new com.google.zxing.qrcode.QRCodeReader() ) );
+
+	private final MeterRegistry meterRegistry;
+
+	private final List<QRCodeRepairStrategy> repairStrategies;
+
+	public QRCodeDecoderEngine( MeterRegistry meterRegistry,
+		@Value( "${qrcode.repair.strategies:OTSU,ADAPTIVE,DENOISED,FULL}" ) List<QRCodeRepairStrategy> repairStrategies ) {
+		this.meterRegistry = meterRegistry;
+		this.repairStrategies = List.copyOf( repairStrategies );
+	}
+
+	/**
+	 * Decodes the QR codes of an image, stopping at the first tier that yields an accepted QR code text.
+	 *
+	 * @param image  The image to decode.
+	 * @param accept Whether a decoded QR code text is the one being looked for, e.g. an AT invoice QR code.
+	 * @param repair Whether the repair tier may be used.
+	 * @return The QR code texts of the first tier that yielded an accepted text, or otherwise of the last
+	 * tier that decoded anything. Empty if nothing was decoded.
+	 */
+	public List<String> decode( BufferedImage image, Predicate<String> accept, boolean repair ) {
+		BinaryBitmap bitmap = toBinaryBitmap( image );
+		List<String> qrCodeTexts = new ArrayList<>();
+
+		for ( QRCodeDecodeTier tier : QRCodeDecodeTier.values() ) {
+			if ( tier == QRCodeDecodeTier.REPAIR && !repair ) {
+				break;
+			}
+			Timer.Sample sample = Timer.start( meterRegistry );
+			List<String> tierQRCodeTexts = tier == QRCodeDecodeTier.REPAIR
+				? decodeWithRepair( image, accept )
+				: decodeTier( tier, bitmap );
+			boolean accepted = tierQRCodeTexts.stream().anyMatch( accept );
+			sample.stop( Timer.builder( "qrcode.decode.tier" )
+				.tag( "tier", tier.name() )
+				.tag( "outcome", accepted ? "hit" : tierQRCodeTexts.isEmpty() ? "miss" : "decoded" )
+				.publishPercentileHistogram()
+				.register( meterRegistry ) );
+
+			if ( !tierQRCodeTexts.isEmpty() ) {
+				qrCodeTexts = tierQRCodeTexts;
+			}
+			if ( accepted ) {
+				log.debug( "Accepted QR code decoded with tier {}", tier );
+				break;
+			}
+		}
+		return qrCodeTexts;
+	}
+
+	private List<String> decodeTier( QRCodeDecodeTier tier, BinaryBitmap bitmap ) {
+		List<String> qrCodeTexts = new ArrayList<>();
+		try {
+			switch ( tier ) {
+				case QR_FAST:
+					addTexts( qrCodeTexts, QR_CODE_READER.get().decodeMultiple( bitmap, QR_FAST_HINTS ) );
+					break;
+				case QR_TRY_HARDER:
+					addTexts( qrCodeTexts, QR_CODE_READER.get().decodeMultiple( bitmap, QR_TRY_HARDER_HINTS ) );
+					break;
+				case MULTI:
+					addTexts( qrCodeTexts, MULTIPLE_QR_CODE_READER.get().decodeMultiple( bitmap, QR_TRY_HARDER_HINTS ) );
+					break;
+				default:
+					break;
+			}
+		}
+		catch ( ReaderException e ) {
+			// Nothing decoded with this tier
+		}
+		catch ( RuntimeException e ) {
+			log.error( "Exception while decoding QR codes with tier {}. exception message: {}", tier, ExceptionUtils.getRootCauseMessage( e ), e );
+		}
+		finally {
+			QR_CODE_READER.get().reset();
+		}
+		return qrCodeTexts;
+	}
+
+	/**
+	 * Runs the configured repair strategies from the cheapest to the most expensive, each at most once, and decodes
+	 * the repaired image after each one. Every attempt is recorded in the {@code qrcode.repair.strategy} timer, so
+	 * the success rate and the cost of each strategy can be compared.
+	 */
+	private List<String> decodeWithRepair( BufferedImage image, Predicate<String> accept ) {
+		List<String> qrCodeTexts = new ArrayList<>();
+		for ( QRCodeRepairStrategy strategy : repairStrategies ) {
+			Timer.Sample sample = Timer.start( meterRegistry );
+			List<String> strategyQRCodeTexts = new ArrayList<>();
+			try {
+				BinaryBitmap repairedBitmap = toBinaryBitmap( QRCodeRepairUtil.repairQRCode( image, strategy ) );
+				addTexts( strategyQRCodeTexts, MULTIPLE_QR_CODE_READER.get().decodeMultiple( repairedBitmap, QR_TRY_HARDER_HINTS ) );
+			}
+			catch ( ReaderException e ) {
+				// Nothing decoded with this strategy
+			}
+			catch ( RuntimeException e ) {
+				log.error( "Exception while repairing QR codes with strategy {}. exception message: {}", strategy, ExceptionUtils.getRootCauseMessage( e ), e );
+			}
+			boolean accepted = strategyQRCodeTexts.stream().anyMatch( accept );
+			sample.stop( Timer.builder( "qrcode.repair.strategy" )
+				.tag( "strategy", strategy.name() )
+				.tag( "outcome", accepted ? "hit" : strategyQRCodeTexts.isEmpty() ? "miss" : "decoded" )
+				.register( meterRegistry ) );
+
+			if ( !strategyQRCodeTexts.isEmpty() ) {
+				qrCodeTexts = strategyQRCodeTexts;
+			}
+			if ( accepted ) {
+				log.debug( "Accepted QR code decoded after repair strategy {}", strategy );
+				break;
+			}
+		}
+		return qrCodeTexts;
+	}
+
+	private static void addTexts( List<String> qrCodeTexts, Result[] results ) {
+		for ( Result result : results ) {
+			if ( result != null && result.getText() != null && !qrCodeTexts.contains( result.getText() ) ) {
+				qrCodeTexts.add( result.getText() );
+			}
+		}
+	}
+
+	private static BinaryBitmap toBinaryBitmap( BufferedImage image ) {
+		return new BinaryBitmap( new HybridBinarizer( new BufferedImageLuminanceSource( image ) ) );
+	}
+}
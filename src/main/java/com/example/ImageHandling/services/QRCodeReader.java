@@ -2,33 +2,32 @@ package com.example.ImageHandling.services;
 
 import com.example.ImageHandling.domains.BatchProcessFile;
 import com.example.ImageHandling.domains.CostCenter;
+import com.example.ImageHandling.domains.DecodedQRCode;
 import com.example.ImageHandling.domains.InvoiceMetadata;
-import com.example.ImageHandling.domains.SubtotalField;
 import com.example.ImageHandling.domains.dto.ExtractedDataDTO;
-import com.example.ImageHandling.exception.DecoderApiInternalServerErrorException;
-import com.example.ImageHandling.exception.DecoderApiNotFoundContentException;
 import com.example.ImageHandling.exception.IllegalDataException;
 import com.example.ImageHandling.domains.repository.BatchProcessFilesRepository;
+import com.example.ImageHandling.domains.types.ATQRCodeField;
+import com.example.ImageHandling.domains.types.QRCodeRenderTier;
 import com.example.ImageHandling.exception.NoQRCodeDetectedException;
+import com.example.ImageHandling.utils.ATQRCode;
 import com.example.ImageHandling.utils.DateUtils;
-import com.example.ImageHandling.utils.QRCodeRepairUtil;
-import com.google.zxing.*;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.multi.GenericMultipleBarcodeReader;
-import lombok.RequiredArgsConstructor;
+import com.example.ImageHandling.utils.PaintedImageCollector;
+import com.example.ImageHandling.utils.QRCodeRegionLocator;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.fileupload.FileItem;
-import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.multipart.commons.CommonsMultipartFile;
 import reactor.core.publisher.Mono;
 import java.awt.image.DataBufferByte;
 import org.opencv.core.Core;
@@ -38,52 +37,88 @@ import org.opencv.core.CvType;
 import org.opencv.imgproc.Imgproc;
 
 import javax.imageio.ImageIO;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 import static java.util.Objects.isNull;
-import static java.util.Objects.nonNull;
 
 /**
  * Component class for handling QR Codes.
  */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class QRCodeReader {
 
 	private final BatchProcessFilesRepository batchProcessFileRepository;
 	private final BarcodeQRCodeDecoderApiCaller barcodeQRCodeDecoderApiCaller;
-	private final ExtractionService extractionService; // Inject ExtractionService
+	private final QRCodeDecoderEngine qrCodeDecoderEngine;
+	private final CompanyNameService companyNameService;
+	private final QRCodeDecodeCache qrCodeDecodeCache;
+	private final Executor qrCodePageTaskExecutor;
+	private final MeterRegistry meterRegistry;
+
+	private final boolean parallelPagesEnabled;
+	private final int maxPagesInFlight;
+	private final float lowDpi;
+	private final float highDpi;
+	private final boolean locatorEnabled;
+	private final int locatorMaxDimension;
+	private final boolean externalDecoderEnabled;
+	private final Duration externalDecoderWaitTimeout;
 
 	private static final Logger logger = LoggerFactory.getLogger(QRCodeReader.class);
 
+	private static final int MIN_EMBEDDED_IMAGE_SIZE = 200;
+
+	public QRCodeReader( BatchProcessFilesRepository batchProcessFileRepository,
+		BarcodeQRCodeDecoderApiCaller barcodeQRCodeDecoderApiCaller,
+		QRCodeDecoderEngine qrCodeDecoderEngine,
+		CompanyNameService companyNameService,
+		QRCodeDecodeCache qrCodeDecodeCache,
+		@Qualifier( "qrCodePageTaskExecutor" ) Executor qrCodePageTaskExecutor,
+		MeterRegistry meterRegistry,
+		@Value( "${qrcode.pdf.parallel-pages.enabled:true}" ) boolean parallelPagesEnabled,
+		@Value( "${qrcode.pdf.max-pages-in-flight:4}" ) int maxPagesInFlight,
+		@Value( "${qrcode.render.low-dpi:150}" ) float lowDpi,
+		@Value( "${qrcode.render.high-dpi:300}" ) float highDpi,
+		@Value( "${qrcode.locator.enabled:true}" ) boolean locatorEnabled,
+		@Value( "${qrcode.locator.max-dimension:1600}" ) int locatorMaxDimension,
+		@Value( "${decoderApi.fallback.enabled:true}" ) boolean externalDecoderEnabled,
+		@Value( "${decoderApi.wait-timeout:10s}" ) Duration externalDecoderWaitTimeout ) {
+		this.batchProcessFileRepository = batchProcessFileRepository;
+		this.barcodeQRCodeDecoderApiCaller = barcodeQRCodeDecoderApiCaller;
+		this.qrCodeDecoderEngine = qrCodeDecoderEngine;
+		this.companyNameService = companyNameService;
+		this.qrCodeDecodeCache = qrCodeDecodeCache;
+		this.qrCodePageTaskExecutor = qrCodePageTaskExecutor;
+		this.meterRegistry = meterRegistry;
+		this.parallelPagesEnabled = parallelPagesEnabled;
+		this.maxPagesInFlight = Math.max( 1, maxPagesInFlight );
+		this.lowDpi = lowDpi;
+		this.highDpi = highDpi;
+		this.locatorEnabled = locatorEnabled;
+		this.locatorMaxDimension = locatorMaxDimension;
+		this.externalDecoderEnabled = externalDecoderEnabled;
+		this.externalDecoderWaitTimeout = externalDecoderWaitTimeout;
+	}
+
 
 
 	private boolean isATInvoiceQRCode(String qrCodeText) {
-		if (qrCodeText == null || qrCodeText.isEmpty()) {
-			return false;
-		}
 		// AT QR codes contain specific keys like A (IssuerVATNumber) and F (InvoiceDate)
-		String[] pairs = qrCodeText.split("\\*");
-		boolean hasVATNumber = false;
-		boolean hasInvoiceDate = false;
-
-		for (String pair : pairs) {
-			String[] parts = pair.split(":");
-			if (parts.length == 2) {
-				if (parts[0].equals("A")) hasVATNumber = true;
-				if (parts[0].equals("F")) hasInvoiceDate = true;
-			}
-		}
-		return hasVATNumber && hasInvoiceDate;
+		return ATQRCode.parse(qrCodeText).isInvoice();
 	}
 
 	/**
@@ -104,54 +139,71 @@ public class QRCodeReader {
 
 		List<ExtractedDataDTO> extractedDataDTOs = new ArrayList<>();
 		List<ExtractedDataDTO> extractedDataList = new ArrayList<>();
+		List<DecodedQRCode> decodedQRCodes = new ArrayList<>();
+		List<CompletableFuture<InvoiceMetadata>> resolvedMetadata = new ArrayList<>();
 
-		try (PDDocument document = PDDocument.load(pdfFile.getInputStream())) {
-			PDFRenderer renderer = new PDFRenderer(document);
+		try {
+			byte[] content = pdfFile.getBytes();
+			String contentHash = qrCodeDecodeCache.contentHash(content);
+			Optional<List<DecodedQRCode>> cachedQRCodes = qrCodeDecodeCache.get(contentHash);
+			if (cachedQRCodes.isPresent()) {
+				logger.info("Reusing {} QR codes decoded earlier from PDF file: {}", cachedQRCodes.get().size(), pdfFile.getOriginalFilename());
+				return toExtractedData(cachedQRCodes.get(), pdfFile, batchProcessFile);
+			}
 
-			// Iterate through each page of the PDF
-			for (int pageIndex = 0; pageIndex < document.getNumberOfPages(); pageIndex++) {
-				BufferedImage image = renderer.renderImageWithDPI(pageIndex, 300);
-				List<String> qrCodeTexts = detectQRCodeWithRepair(image, pdfFile);
+			try (PDDocument document = PDDocument.load(content)) {
+				List<List<String>> pagesQRCodeTexts = detectQRCodesPerPage(document, pdfFile);
 
-				for (String qrCodeText : qrCodeTexts) {
+				// Iterate through the QR codes of each page, in page order
+				for (List<String> qrCodeTexts : pagesQRCodeTexts) {
 
-					if (isATInvoiceQRCode(qrCodeText)) {
-						InvoiceMetadata invoiceMetadata = processQRCodeText(qrCodeText, batchProcessFile);
-						ExtractedDataDTO extractedDataDTO = new ExtractedDataDTO();
-						extractedDataDTO.setInvoiceMetadata(invoiceMetadata);
-						extractedDataDTO.setIsExtractedData(true);
+					for (String qrCodeText : qrCodeTexts) {
 
-						extractedDataList.add(extractedDataDTO);
-					}
-					else {
-						logger.warn("QR code text does not match AT invoice format: {}", qrCodeText);
-						ExtractedDataDTO extractedDataDTO = new ExtractedDataDTO();
-						extractedDataDTO.setInvoiceMetadata(generateDefaultInvoiceMetadata(pdfFile.getOriginalFilename()));
-						extractedDataDTO.setIsExtractedData(true);
-						extractedDataList.add(extractedDataDTO);
+						if (isATInvoiceQRCode(qrCodeText)) {
+							InvoiceMetadata invoiceMetadata = processQRCodeText(qrCodeText, batchProcessFile, resolvedMetadata);
+							decodedQRCodes.add(new DecodedQRCode(qrCodeText, invoiceMetadata));
+							ExtractedDataDTO extractedDataDTO = new ExtractedDataDTO();
+							extractedDataDTO.setInvoiceMetadata(invoiceMetadata);
+							extractedDataDTO.setIsExtractedData(true);
+
+							extractedDataList.add(extractedDataDTO);
+						}
+						else {
+							logger.warn("QR code text does not match AT invoice format: {}", qrCodeText);
+							decodedQRCodes.add(new DecodedQRCode(qrCodeText, null));
+							ExtractedDataDTO extractedDataDTO = new ExtractedDataDTO();
+							extractedDataDTO.setInvoiceMetadata(generateDefaultInvoiceMetadata(pdfFile.getOriginalFilename()));
+							extractedDataDTO.setIsExtractedData(true);
+							extractedDataList.add(extractedDataDTO);
 
+						}
 					}
+					logger.info("Detected {} QR codes from PDF file: {}", qrCodeTexts.size(), pdfFile.getOriginalFilename());
+
 				}
-				logger.info("Detected {} QR codes from PDF file: {}", qrCodeTexts.size(), pdfFile.getOriginalFilename());
 
-			}
+				if (extractedDataList.isEmpty()) {
 
-			if (extractedDataList.isEmpty()) {
+					logger.warn("No valid AT QR codes found in PDF file: {}", pdfFile.getOriginalFilename());
+					ExtractedDataDTO defaultDTO = new ExtractedDataDTO();
+					defaultDTO.setInvoiceMetadata(generateDefaultInvoiceMetadata(pdfFile.getOriginalFilename()));
+					defaultDTO.setIsExtractedData(false);
+				}
 
-				logger.warn("No valid AT QR codes found in PDF file: {}", pdfFile.getOriginalFilename());
-				ExtractedDataDTO defaultDTO = new ExtractedDataDTO();
-				defaultDTO.setInvoiceMetadata(generateDefaultInvoiceMetadata(pdfFile.getOriginalFilename()));
-				defaultDTO.setIsExtractedData(false);
+				/*
+				if (!extractedDataDTOs.isEmpty()) {
+					//return extractedDataDTOs;
+				} else {
+					logger.error("No QR codes found in PDF file: {}", pdfFile.getOriginalFilename());
+					throw new NoQRCodeDetectedException("No QR codes found in PDF file: " + pdfFile.getOriginalFilename());
+				}*/
 			}
-
-			/*
-			if (!extractedDataDTOs.isEmpty()) {
-				//return extractedDataDTOs;
-			} else {
-				logger.error("No QR codes found in PDF file: {}", pdfFile.getOriginalFilename());
-				throw new NoQRCodeDetectedException("No QR codes found in PDF file: " + pdfFile.getOriginalFilename());
-			}*/
+			attachToBatchProcessFile(resolvedMetadata, batchProcessFile);
+			qrCodeDecodeCache.put(contentHash, decodedQRCodes);
 		} catch (Exception e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
 			logger.warn("No QR codes found in PDF file: {}", pdfFile.getOriginalFilename());
 			ExtractedDataDTO defaultDTO = new ExtractedDataDTO();
 			defaultDTO.setInvoiceMetadata(generateDefaultInvoiceMetadata(pdfFile.getOriginalFilename()));
@@ -161,6 +213,139 @@ public class QRCodeReader {
 		}
 		return extractedDataList;
 	}
+	/**
+	 * Renders every page of the document and detects its QR codes.
+	 * <p>
+	 * When parallel pages are enabled, pages are rendered and decoded on the shared QR code page pool.
+	 * At most {@code maxPagesInFlight} pages of the document are held at a time, so large documents
+	 * cannot fill the heap with page rasters. Results are always returned in page order.
+	 * </p>
+	 *
+	 * @param document The loaded PDF document.
+	 * @param pdfFile  The uploaded PDF file, used for logging.
+	 * @return The detected QR code texts of each page, in page order.
+	 * @throws InterruptedException If the calling thread is interrupted while waiting for the pages.
+	 */
+	private List<List<String>> detectQRCodesPerPage(PDDocument document, MultipartFile pdfFile) throws InterruptedException {
+		PDFRenderer renderer = new PDFRenderer(document);
+		int numberOfPages = document.getNumberOfPages();
+		List<List<String>> pagesQRCodeTexts = new ArrayList<>(numberOfPages);
+
+		if (!parallelPagesEnabled || numberOfPages <= 1) {
+			List<CompletableFuture<List<String>>> pageFutures = new ArrayList<>(numberOfPages);
+			for (int pageIndex = 0; pageIndex < numberOfPages; pageIndex++) {
+				pageFutures.add(renderAndDetectPage(document, renderer, pageIndex, pdfFile));
+			}
+			pageFutures.forEach(pageFuture -> pagesQRCodeTexts.add(pageFuture.join()));
+			return pagesQRCodeTexts;
+		}
+
+		Semaphore pagesInFlight = new Semaphore(maxPagesInFlight);
+		List<CompletableFuture<List<String>>> pageFutures = new ArrayList<>(numberOfPages);
+		try {
+			for (int pageIndex = 0; pageIndex < numberOfPages; pageIndex++) {
+				pagesInFlight.acquire();
+				int page = pageIndex;
+				// The page is released once rendered and decoded locally, before any external decoder call completes
+				pageFutures.add(CompletableFuture
+						.supplyAsync(() -> renderAndDetectPage(document, renderer, page, pdfFile), qrCodePageTaskExecutor)
+						.whenComplete((qrCodeTexts, e) -> pagesInFlight.release())
+						.thenCompose(Function.identity()));
+			}
+			for (CompletableFuture<List<String>> pageFuture : pageFutures) {
+				pagesQRCodeTexts.add(pageFuture.join());
+			}
+		} catch (InterruptedException | RuntimeException e) {
+			pageFutures.forEach(pageFuture -> pageFuture.cancel(true));
+			throw e;
+		}
+		return pagesQRCodeTexts;
+	}
+
+	/**
+	 * Detects the QR codes of a page, escalating through the render tiers until an AT QR code is found.
+	 * <p>
+	 * Images embedded in the page (typically the scan of a scanned PDF) are decoded first at their native
+	 * resolution. Otherwise the page is rendered in grayscale at a low DPI, then in grayscale at a high DPI,
+	 * and only then in color through the repair path. Each tier records whether it was a hit, so the ladder can be tuned.
+	 * </p>
+	 */
+	private CompletableFuture<List<String>> renderAndDetectPage(PDDocument document, PDFRenderer renderer, int pageIndex, MultipartFile pdfFile) {
+		List<String> qrCodeTexts = new ArrayList<>();
+		BufferedImage lastImage = null;
+		for (QRCodeRenderTier tier : QRCodeRenderTier.values()) {
+			List<BufferedImage> images = tier == QRCodeRenderTier.EMBEDDED_IMAGE
+					? extractEmbeddedImages(document, pageIndex)
+					: List.of(renderPage(document, renderer, pageIndex, tier));
+			if (images.isEmpty()) {
+				continue;
+			}
+			qrCodeTexts = new ArrayList<>();
+			for (BufferedImage image : images) {
+				lastImage = image;
+				for (String qrCodeText : detectQRCodesInRegions(image, pdfFile, tier == QRCodeRenderTier.COLOR_REPAIR)) {
+					if (!qrCodeTexts.contains(qrCodeText)) {
+						qrCodeTexts.add(qrCodeText);
+					}
+				}
+			}
+
+			boolean hit = qrCodeTexts.stream().anyMatch(this::isATInvoiceQRCode);
+			meterRegistry.counter("qrcode.render.tier", "tier", tier.name(), "outcome", hit ? "hit" : "miss").increment();
+			if (hit) {
+				logger.debug("Detected AT QR code on page {} of PDF file: {} with render tier {}", pageIndex + 1, pdfFile.getOriginalFilename(), tier);
+				break;
+			}
+		}
+		logger.debug("Detected {} QR codes on page {} of PDF file: {}", qrCodeTexts.size(), pageIndex + 1, pdfFile.getOriginalFilename());
+		if (!qrCodeTexts.isEmpty() || lastImage == null) {
+			return CompletableFuture.completedFuture(qrCodeTexts.isEmpty() ? noQRCodeDetected() : qrCodeTexts);
+		}
+		try {
+			byte[] pageImageBytes = convertBufferedImageToByteArray(lastImage, "jpeg");
+			String baseName = StringUtils.substringBeforeLast(pdfFile.getOriginalFilename(), ".");
+			return detectWithExternalDecoder(pageImageBytes, baseName + "-page-" + (pageIndex + 1) + ".jpeg");
+		} catch (IOException e) {
+			logger.error("Could not encode page {} of PDF file: {} for the external decoder. exception message: {}",
+					pageIndex + 1, pdfFile.getOriginalFilename(), ExceptionUtils.getRootCauseMessage(e));
+			return CompletableFuture.completedFuture(noQRCodeDetected());
+		}
+	}
+
+	/**
+	 * Extracts the images painted on a page at their native resolution, without rendering the page.
+	 * Small images such as logos and stencil masks are skipped.
+	 */
+	private List<BufferedImage> extractEmbeddedImages(PDDocument document, int pageIndex) {
+		// PDFBox parses page resources lazily and is not safe for concurrent access to the same document
+		synchronized (document) {
+			try {
+				return PaintedImageCollector.collect(document.getPage(pageIndex), MIN_EMBEDDED_IMAGE_SIZE);
+			} catch (IOException e) {
+				logger.warn("Could not read the embedded images of PDF page {}. exception message: {}", pageIndex + 1, ExceptionUtils.getRootCauseMessage(e));
+				return List.of();
+			}
+		}
+	}
+
+	private BufferedImage renderPage(PDDocument document, PDFRenderer renderer, int pageIndex, QRCodeRenderTier tier) {
+		// PDFBox does not support rendering pages of the same document concurrently
+		synchronized (document) {
+			try {
+				switch (tier) {
+					case GRAY_LOW_DPI:
+						return renderer.renderImageWithDPI(pageIndex, lowDpi, ImageType.GRAY);
+					case GRAY_HIGH_DPI:
+						return renderer.renderImageWithDPI(pageIndex, highDpi, ImageType.GRAY);
+					default:
+						return renderer.renderImageWithDPI(pageIndex, highDpi, ImageType.RGB);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
 	private InvoiceMetadata generateDefaultInvoiceMetadata(String originalFileName) {
 		InvoiceMetadata invoiceMetadata = new InvoiceMetadata();
 		invoiceMetadata.setIssuerVATNumber("");
@@ -195,14 +380,28 @@ public class QRCodeReader {
 	 * @throws IOException If there's an error reading the image file.
 	 */
 	public List<ExtractedDataDTO> processImage(MultipartFile imageFile, BatchProcessFile batchProcessFile) throws IOException {
-		BufferedImage image = ImageIO.read(imageFile.getInputStream());
-		List<String> qrCodeTexts = detectQRCodeWithRepair(image, imageFile);
+		byte[] content = imageFile.getBytes();
+		String contentHash = qrCodeDecodeCache.contentHash(content);
+		Optional<List<DecodedQRCode>> cachedQRCodes = qrCodeDecodeCache.get(contentHash);
+		if (cachedQRCodes.isPresent()) {
+			logger.info("Reusing {} QR codes decoded earlier from image file: {}", cachedQRCodes.get().size(), imageFile.getOriginalFilename());
+			return toExtractedData(cachedQRCodes.get(), imageFile, batchProcessFile);
+		}
+
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(content));
+		List<String> qrCodeTexts = detectQRCodesInRegions(image, imageFile, true);
+		if (qrCodeTexts.isEmpty()) {
+			qrCodeTexts = detectWithExternalDecoder(content, imageFile.getOriginalFilename()).join();
+		}
 		List<ExtractedDataDTO> extractedDataList = new ArrayList<>();
+		List<DecodedQRCode> decodedQRCodes = new ArrayList<>();
+		List<CompletableFuture<InvoiceMetadata>> resolvedMetadata = new ArrayList<>();
 		logger.info("Detected {} QR codes from image file: {}", qrCodeTexts.size(), imageFile.getOriginalFilename());
 		if (!qrCodeTexts.isEmpty()) {
 			for (String qrCodeText : qrCodeTexts) {
 				if (isATInvoiceQRCode(qrCodeText)) {
-					InvoiceMetadata invoiceMetadata = processQRCodeText(qrCodeText, batchProcessFile);
+					InvoiceMetadata invoiceMetadata = processQRCodeText(qrCodeText, batchProcessFile, resolvedMetadata);
+					decodedQRCodes.add(new DecodedQRCode(qrCodeText, invoiceMetadata));
 					ExtractedDataDTO extractedDataDTO = new ExtractedDataDTO();
 					extractedDataDTO.setInvoiceMetadata(invoiceMetadata);
 					extractedDataDTO.setIsExtractedData(true);
@@ -211,7 +410,8 @@ public class QRCodeReader {
 				else
 				{
 					logger.warn("QR code text does not match AT invoice format: {}", qrCodeText);
-					InvoiceMetadata invoiceMetadata = processQRCodeText(qrCodeText, batchProcessFile);
+					InvoiceMetadata invoiceMetadata = processQRCodeText(qrCodeText, batchProcessFile, resolvedMetadata);
+					decodedQRCodes.add(new DecodedQRCode(qrCodeText, null));
 					ExtractedDataDTO extractedDataDTO = new ExtractedDataDTO();
 					extractedDataDTO.setInvoiceMetadata(generateDefaultInvoiceMetadata(imageFile.getOriginalFilename()));
 					extractedDataDTO.setIsExtractedData(true);
@@ -219,6 +419,8 @@ public class QRCodeReader {
 				}
 			}
 			logger.info("Extracted {} QR codes from image file: {}", extractedDataList.size(), imageFile.getOriginalFilename());
+			attachToBatchProcessFile(resolvedMetadata, batchProcessFile);
+			qrCodeDecodeCache.put(contentHash, decodedQRCodes);
 
 			if (extractedDataList.isEmpty()) {
 				logger.warn("No valid AT QR codes found in image file: {}", imageFile.getOriginalFilename());
@@ -243,138 +445,149 @@ public class QRCodeReader {
 
 	/**
 	 * Processes the detected QR code text.
+	 * <p>
+	 * The company name of the issuer is looked up asynchronously, so the remaining QR codes are processed meanwhile.
+	 * The metadata is attached to the batch process file by {@link #attachToBatchProcessFile(List, BatchProcessFile)}
+	 * once the name is resolved.
+	 * </p>
 	 *
 	 * @param qrCodeText       The QR code text detected.
 	 * @param batchProcessFile The BatchProcessFile object to store metadata.
+	 * @param resolvedMetadata The metadata of the QR codes processed so far, completed when its company name is resolved.
 	 */
-	private InvoiceMetadata processQRCodeText( String qrCodeText, BatchProcessFile batchProcessFile ) {
+	private InvoiceMetadata processQRCodeText( String qrCodeText, BatchProcessFile batchProcessFile, List<CompletableFuture<InvoiceMetadata>> resolvedMetadata ) {
 		InvoiceMetadata metadata = organizeAndLabelQRCodeData( qrCodeText, batchProcessFile.getComment(), batchProcessFile.getCostCenter() );  // Organize QR code data into metadata
 		if ( metadata.getIssuerVATNumber() != null ) {
-			String companyName = extractionService.fetchCompanyName( metadata.getIssuerVATNumber() );  // Use injected instance
+			resolvedMetadata.add( companyNameService.fetchCompanyName( metadata.getIssuerVATNumber() )
+				.thenApply( companyName -> {
+					if ( companyName != null ) {
+						metadata.setCompanyName( companyName );  // Set company name in metadata
+					}
+					return metadata;
+				} ) );
+		}
+		else {
+			resolvedMetadata.add( CompletableFuture.completedFuture( metadata ) );
+		}
+		return metadata;
+	}
 
-			if ( companyName != null ) {
-				metadata.setCompanyName( companyName );  // Set company name in metadata
-			}
+	/**
+	 * Waits for the company names of the processed QR codes, then attaches their metadata in order.
+	 */
+	private void attachToBatchProcessFile( List<CompletableFuture<InvoiceMetadata>> resolvedMetadata, BatchProcessFile batchProcessFile ) {
+		for ( CompletableFuture<InvoiceMetadata> metadata : resolvedMetadata ) {
+			attachToBatchProcessFile( metadata.join(), batchProcessFile );
 		}
+	}
 
+	private void attachToBatchProcessFile( InvoiceMetadata metadata, BatchProcessFile batchProcessFile ) {
 		metadata.setOriginalFileName( batchProcessFile.getFilename() );
 		batchProcessFile.setMetadata( metadata );
 		batchProcessFileRepository.save( batchProcessFile );
 		logger.info("Saving batch process file. id: {}", batchProcessFile.getId());
-		return metadata;
 	}
 
-	private List<String> detectMultipleQRCodes(BufferedImage image, MultipartFile imageFile) {
-		List<String> qrCodeTexts = new ArrayList<>();
-
-		try {
-			logger.info("*** Trying to detect QR codes with internal detector for image file: {}",
-					imageFile.getOriginalFilename());
-
-			LuminanceSource source = new BufferedImageLuminanceSource(image);
-			BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-			Map<DecodeHintType, Object> hints = new HashMap<>();
-			hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
-
-			MultiFormatReader reader = new MultiFormatReader();
-			Result[] results = new GenericMultipleBarcodeReader(reader).decodeMultiple(bitmap, hints);
-
-			logger.info("Detected {} QR codes with internal detector for image file: {}", results != null ? results.length : 0, imageFile.getOriginalFilename());
-			if (results != null) {
-				for (Result result : results) {
-					if (result.getBarcodeFormat().equals(BarcodeFormat.QR_CODE) && result.getText() != null) {
-						qrCodeTexts.add(result.getText());
-					}
-				}
+	/**
+	 * Builds the extracted data of a file from the QR codes decoded on an earlier upload of the same content.
+	 * <p>
+	 * Cached metadata is copied and re-labelled with the comment, cost center and file name of the current batch
+	 * process file, so the result matches what decoding the file again would have produced.
+	 * </p>
+	 *
+	 * @param decodedQRCodes   The cached QR codes of the file, in the order they were found.
+	 * @param file             The uploaded file.
+	 * @param batchProcessFile The BatchProcessFile object to store metadata.
+	 * @return The extracted data of each QR code.
+	 */
+	private List<ExtractedDataDTO> toExtractedData( List<DecodedQRCode> decodedQRCodes, MultipartFile file, BatchProcessFile batchProcessFile ) {
+		List<ExtractedDataDTO> extractedDataList = new ArrayList<>();
+		for ( DecodedQRCode decodedQRCode : decodedQRCodes ) {
+			ExtractedDataDTO extractedDataDTO = new ExtractedDataDTO();
+			if ( decodedQRCode.getInvoiceMetadata() != null ) {
+				InvoiceMetadata metadata = new InvoiceMetadata( decodedQRCode.getInvoiceMetadata() );
+				metadata.setComment( batchProcessFile.getComment() );
+				metadata.setCostCenter( batchProcessFile.getCostCenter() );
+				attachToBatchProcessFile( metadata, batchProcessFile );
+				extractedDataDTO.setInvoiceMetadata( metadata );
 			}
-		} catch (Exception e) {
-			String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
-			logger.error("Exception while detecting QR codes with internal detector for image: {} exception message: {}",
-					imageFile.getOriginalFilename(), rootCauseMessage, e);
-		}
-
-		// If internal detector fails, try with external API
-		if (qrCodeTexts.isEmpty()) {
-			try {
-				String qrCodeResult = "";//tryExternalDetector(image, imageFile);
-				if (qrCodeResult != null) {
-					qrCodeTexts.add(qrCodeResult);
-				}
-			} catch (Exception e) {
-				String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
-				logger.error("Exception while detecting QR codes with external API detector for image: {} exception message: {}",
-						imageFile.getOriginalFilename(), rootCauseMessage, e);
+			else {
+				extractedDataDTO.setInvoiceMetadata( generateDefaultInvoiceMetadata( file.getOriginalFilename() ) );
 			}
+			extractedDataDTO.setIsExtractedData( true );
+			extractedDataList.add( extractedDataDTO );
 		}
-
-		return qrCodeTexts;
+		return extractedDataList;
 	}
 
-
 	/**
-	 * Detects the first QR code in a BufferedImage.
+	 * Detects the QR codes of an image by decoding only the regions where a QR code was located.
+	 * <p>
+	 * Candidate regions are located on a downscaled copy of the image, and the decoder and the repair only run
+	 * on the full-resolution crops of those regions. The whole image is decoded when no region yields an AT QR code.
+	 * </p>
 	 *
-	 * @param image The BufferedImage containing the QR code.
-	 * @return The first detected QR code text, or null if no QR code is found.
+	 * @param image     The image to detect the QR codes in.
+	 * @param imageFile The uploaded file, used for logging.
+	 * @param repair    Whether the repair path should be used when decoding fails.
+	 * @return The detected QR code texts.
 	 */
-	private String detectQRCode( BufferedImage image, MultipartFile imageFile ) {
-
-		try {
-			logger.info( "*** Trying to detect first QR code with internal detector for image file: {}", imageFile.getOriginalFilename() );
-			LuminanceSource source = new BufferedImageLuminanceSource( image );  // Create luminance source from BufferedImage
-			BinaryBitmap bitmap = new BinaryBitmap( new HybridBinarizer( source ) );  // Create binary bitmap from luminance source
-			Map<DecodeHintType, Object> hints = new HashMap<>();  // Create hints for QR code decoding
-			hints.put( DecodeHintType.TRY_HARDER, Boolean.TRUE );  // Use more intensive decoding methods
-			Result result = new MultiFormatReader().decode( bitmap, hints );  // Decode QR code using hints
-
-			if ( result != null && result.getBarcodeFormat().equals( BarcodeFormat.QR_CODE ) ) {
-				if ( result.getText() != null ) {
-					return result.getText();
-				}
-			}
-
-		}
-		catch ( Exception e ) {
-			String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
-			logger.error( "Exception while detecting QR code with internal detector for image: {} exception message: {}", imageFile.getOriginalFilename(), rootCauseMessage, e );
-		}
-
-		try {
-			// Try with Decoder API
-			logger.info( "*** No QR Code detected with internal detector for image file: {}", imageFile.getOriginalFilename() );
-			String fileFormat = imageFile.getOriginalFilename().substring( imageFile.getOriginalFilename().lastIndexOf( '.' ) + 1 );
-
-			Mono<String> qrCodeResult;
-			if ( "pdf".equals( fileFormat ) ) {
-				byte[] imageBytes = convertBufferedImageToByteArray( image, "jpeg" );
-				MultipartFile multipartFile = convertToMultipartFile( imageBytes, imageFile.getOriginalFilename().substring( 0, imageFile.getOriginalFilename().lastIndexOf( '.' ) ), "image/jpeg" );
-				qrCodeResult = barcodeQRCodeDecoderApiCaller.callDecodeApi( multipartFile );
-			}
-			else {
-				qrCodeResult = barcodeQRCodeDecoderApiCaller.callDecodeApi( imageFile );
+	private List<String> detectQRCodesInRegions(BufferedImage image, MultipartFile imageFile, boolean repair) {
+		if (locatorEnabled) {
+			List<String> qrCodeTexts = new ArrayList<>();
+			for (Rectangle region : QRCodeRegionLocator.locateQRCodeRegions(image, locatorMaxDimension)) {
+				BufferedImage regionImage = QRCodeRegionLocator.crop(image, region);
+				List<String> regionQRCodeTexts = qrCodeDecoderEngine.decode(regionImage, this::isATInvoiceQRCode, repair);
+				regionQRCodeTexts.stream()
+						.filter(qrCodeText -> !qrCodeTexts.contains(qrCodeText))
+						.forEach(qrCodeTexts::add);
 			}
-
-			if ( nonNull( qrCodeResult ) ) {
-				return qrCodeResult.block();
+			if (qrCodeTexts.stream().anyMatch(this::isATInvoiceQRCode)) {
+				return qrCodeTexts;
 			}
-		} catch ( DecoderApiNotFoundContentException e ){
-			String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
-			logger.error( "*** Decoder Api did not find any content for file: {} exception message: {}", imageFile.getOriginalFilename(), rootCauseMessage, e );
-			return null;
-		}
-		catch ( DecoderApiInternalServerErrorException e ){
-			String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
-			logger.error( "*** Decoder Api internal server error occurred while detecting QR code with external API detector for file: {} exception message: {}", imageFile.getOriginalFilename(), rootCauseMessage, e );
-			return null;
 		}
+		return detectMultipleQRCodes(image, imageFile, repair);
+	}
 
-		catch ( Exception e ) {
-			String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
-			logger.error( "Exception while detecting QR code with external API detector for file: {} exception message: {}", imageFile.getOriginalFilename(), rootCauseMessage, e );
+	private List<String> detectMultipleQRCodes(BufferedImage image, MultipartFile imageFile, boolean repair) {
+		logger.info("*** Trying to detect QR codes with internal detector for image file: {}", imageFile.getOriginalFilename());
+		List<String> qrCodeTexts = qrCodeDecoderEngine.decode(image, this::isATInvoiceQRCode, repair);
+		logger.info("Detected {} QR codes with internal detector for image file: {}", qrCodeTexts.size(), imageFile.getOriginalFilename());
+		return qrCodeTexts;
+	}
+
+	/**
+	 * Sends an image in which no QR code was decoded locally to the external decoder API.
+	 * <p>
+	 * The call does not hold the calling thread: the returned future completes on the HTTP client event loop.
+	 * When the external decoder is disabled, finds nothing, fails or has not answered within
+	 * {@code decoderApi.wait-timeout}, the future completes with a single empty QR code text, so the file is still
+	 * kept for manual review. An uploaded image waits for the future on the request thread, the timeout bounds that wait
+	 * and cancels the requests still in flight.
+	 * </p>
+	 *
+	 * @param imageBytes The encoded image.
+	 * @param fileName   The file name sent to the decoder API.
+	 * @return The detected QR code texts.
+	 */
+	private CompletableFuture<List<String>> detectWithExternalDecoder(byte[] imageBytes, String fileName) {
+		if (!externalDecoderEnabled) {
+			return CompletableFuture.completedFuture(noQRCodeDetected());
 		}
+		return barcodeQRCodeDecoderApiCaller.callDecodeApi(imageBytes, fileName)
+				.map(List::of)
+				.defaultIfEmpty(noQRCodeDetected())
+				.timeout(externalDecoderWaitTimeout)
+				.onErrorResume(e -> {
+					logger.error("Exception while detecting QR codes with external API detector for image: {} exception message: {}",
+							fileName, ExceptionUtils.getRootCauseMessage(e), e);
+					return Mono.just(noQRCodeDetected());
+				})
+				.toFuture();
+	}
 
-		logger.error( "No QR Code detected for file: {}", imageFile.getOriginalFilename() );
-		return null;
+	private static List<String> noQRCodeDetected() {
+		return List.of("");
 	}
 
 	/**
@@ -384,87 +597,32 @@ public class QRCodeReader {
 	 * @return InvoiceMetadata object containing organized data.
 	 */
 	private InvoiceMetadata organizeAndLabelQRCodeData( String qrCodeText, String comment, String costCenter ) {
-		String[] pairs = qrCodeText.split( "\\*" );  // Split QR code text into key-value pairs
-		Map<String, String> dataMap = new HashMap<>();  // Create map to store key-value pairs
-
-		// Parse key-value pairs from QR code text
-		for ( String pair : pairs ) {
-			String[] parts = pair.split( ":" );  // Split pair into key and value
-			if ( parts.length == 2 ) {
-				dataMap.put( parts[0], parts[1] );  // Store key-value pair in map
-			}
-		}
+		ATQRCode qrCode = ATQRCode.parse( qrCodeText );  // Parse QR code text into its fields
 
 		InvoiceMetadata metadata = new InvoiceMetadata();
 		// Set metadata fields from parsed data
-		metadata.setIssuerVATNumber( dataMap.getOrDefault( "A", null ) );
-		metadata.setAcquirerVATNumber( dataMap.getOrDefault( "B", null ) );
-		metadata.setAcquirerCountry( dataMap.getOrDefault( "C", null ) );
-		String invoiceDate = dataMap.getOrDefault( "F", null );
+		metadata.setIssuerVATNumber( qrCode.get( ATQRCodeField.A ) );
+		metadata.setAcquirerVATNumber( qrCode.get( ATQRCodeField.B ) );
+		metadata.setAcquirerCountry( qrCode.get( ATQRCodeField.C ) );
+		String invoiceDate = qrCode.get( ATQRCodeField.F );
 		if ( invoiceDate != null ) {
 			metadata.setInvoiceDate( DateUtils.formatDate( invoiceDate )  );
 		}
-		metadata.setInvoiceNumber( dataMap.getOrDefault( "G", null ) );
-		metadata.setAtcud( dataMap.getOrDefault( "H", null ) );
-		metadata.setValueAddedTax( dataMap.getOrDefault( "N", null ) );
-		metadata.setSubtotal( String.valueOf( fetchSubtotal(dataMap) ) );
-		metadata.setTotal( dataMap.getOrDefault( "O", null ) );
+		metadata.setInvoiceNumber( qrCode.get( ATQRCodeField.G ) );
+		metadata.setAtcud( qrCode.get( ATQRCodeField.H ) );
+		metadata.setValueAddedTax( qrCode.get( ATQRCodeField.N ) );
+		metadata.setSubtotal( String.valueOf( qrCode.subtotal() ) );
+		metadata.setTotal( qrCode.get( ATQRCodeField.O ) );
 		metadata.setComment( comment );
 		metadata.setCostCenter( costCenter );
 		return metadata;
 	}
 
-	private BigDecimal fetchSubtotal(Map<String, String> dataMap) {
-		BigDecimal sum = BigDecimal.ZERO;
-		for (String key : dataMap.keySet()) {
-			if (key.equals( SubtotalField.I2.name() ) || key.equals(SubtotalField.I3.name()) || key.equals(SubtotalField.I5.name()) || key.equals(SubtotalField.I7.name())) {
-				String value = dataMap.get(key);
-				if (value != null) {
-					try {
-						BigDecimal price = new BigDecimal(value);
-						sum = sum.add(price);
-					} catch (NumberFormatException e) {
-						String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
-						logger.error("Error occurred during parsing value for Subtotal keys, key {} with value {}: {}", key, value, rootCauseMessage, e);
-					}
-				} else {
-					logger.warn("Value for Subtotal key {} is null.", key);
-				}
-			}
-		}
-		return sum;
-	}
-
-
-
-
-
-
-	public byte[] convertBufferedImageToByteArray(BufferedImage image, String format) throws Exception {
+	public byte[] convertBufferedImageToByteArray(BufferedImage image, String format) throws IOException {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		ImageIO.write(image, format, baos);
 		return baos.toByteArray();
 	}
 
-	public MultipartFile convertToMultipartFile( byte[] imageBytes, String fileName, String contentType ) throws IOException {
-		FileItem fileItem = new DiskFileItem( fileName, contentType, false, fileName, imageBytes.length, null );
-		try ( ByteArrayInputStream inputStream = new ByteArrayInputStream( imageBytes ) ) {
-			fileItem.getOutputStream().write( imageBytes );
-		}
-		return new CommonsMultipartFile( fileItem );
-	}
-
-	private List<String> detectQRCodeWithRepair(BufferedImage image, MultipartFile imageFile) {
-	    List<String> qrCodeTexts = detectMultipleQRCodes(image, imageFile);
-		for (String qrCodeText : qrCodeTexts) {
-			if (!isATInvoiceQRCode(qrCodeText)) {
-				logger.info("No QR codes detected. Repairing image with QRCodeRepairUtil.");
-				BufferedImage repairedImage = QRCodeRepairUtil.repairQRCode(image);
-				qrCodeTexts = detectMultipleQRCodes(repairedImage, imageFile);
-			}
-		}
-	    return qrCodeTexts;
-	}
-
 
 }
@@ -5,6 +5,7 @@ import com.example.ImageHandling.domains.repository.InvoicesRepository;
 import com.example.ImageHandling.domains.repository.RegexPatternRepository;
 import com.example.ImageHandling.exception.DuplicateLayoutException;
 import com.example.ImageHandling.utils.DateUtils;
+import com.example.ImageHandling.utils.MatScope;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.sourceforge.tess4j.TesseractException;
@@ -59,6 +60,10 @@ public class RegexPatternService {
 
 	private final MongoTemplate mongoTemplate;
 
+	private final CompiledLayoutCache compiledLayoutCache;
+
+	private final LayoutRegexProfiler layoutRegexProfiler;
+
 	public void deleteLayout( String id ) {
 		logger.info( "Deleting RegexPattern with id: {}", id );
 		Optional<RegexPattern> existingPatternOpt = regexPatternRepository.findById( id );
@@ -87,6 +92,7 @@ public class RegexPatternService {
 		if ( regexPattern.isPresent() ) {
 			throw new DuplicateLayoutException( "Pattern with name " + pattern.getName() + " already exists." );
 		}
+		layoutRegexProfiler.validate( pattern );
 		pattern.setCreatedAt( LocalDateTime.now() );
 		RegexPattern createdPattern = regexPatternRepository.save( pattern );
 		auditLogService.logChanges( PATTERN_CREATED.toString(), authService.getLoggedInUserDetails().getUsername(), null, createdPattern, null, getPatternDetails( createdPattern ) );
@@ -212,6 +218,7 @@ public class RegexPatternService {
 				existingRegexPattern.setName( pattern.getName() );
 			}
 			if ( pattern.getFieldMappings() != null ) {
+				layoutRegexProfiler.validate( pattern );
 				existingRegexPattern.setFieldMappings( pattern.getFieldMappings() );
 			}
 			if ( pattern.getLanguage() != null ) {
@@ -225,8 +232,10 @@ public class RegexPatternService {
 			}
 
 			existingRegexPattern.setUpdatedAt( LocalDateTime.now() );
+			RegexPattern updatedPattern = regexPatternRepository.save( existingRegexPattern );
+			compiledLayoutCache.invalidate( id );
 			logger.info( "Updated layout pattern configuration for the id {}", id );
-			return regexPatternRepository.save( existingRegexPattern );
+			return updatedPattern;
 		}
 		else {
 			logger.error( "Layout pattern not found. for the id {}", id );
@@ -263,8 +272,10 @@ public class RegexPatternService {
 
 	public String extractTextFromImage( MultipartFile imageFile, String language ) throws TesseractException, IOException {
 		logger.info( "Extracting text from image file" );
-		Mat image = Imgcodecs.imdecode( new MatOfByte( imageFile.getBytes() ), Imgcodecs.IMREAD_COLOR );
-		return imageService.extractText( image, language );
+		try ( MatScope scope = MatScope.open() ) {
+			Mat image = scope.track( Imgcodecs.imdecode( scope.track( new MatOfByte( imageFile.getBytes() ) ), Imgcodecs.IMREAD_COLOR ) );
+			return imageService.extractText( image, language );
+		}
 	}
 
 	public long getLayoutsCount() {
@@ -0,0 +1,295 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.RegexPattern;
+import com.example.ImageHandling.utils.TesseractEngine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.tess4j.TesseractException;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Bounded pool of initialized Tesseract engines, keyed by language, OCR engine mode and page segmentation mode.
+ * <p>
+ * Engines are created lazily up to {@code tesseract.pool.max-engines-per-key} per key and reused, so a language model
+ * is loaded once per engine instead of once per image. The engines of the languages used by the layouts are created
+ * when the application starts.
+ * </p>
+ * <p>
+ * The {@code .traineddata} files are read from {@code tesseract.datapath} when it is set. Otherwise they are copied
+ * from the {@code tessdata} classpath folder to a temporary directory on first use, which also works when the
+ * application runs from the packaged jar.
+ * </p>
+ */
+@Slf4j
+@Component
+public class TesseractEnginePool {
+
+	public static final int DEFAULT_OCR_ENGINE_MODE = 3;
+
+	public static final int DEFAULT_PAGE_SEG_MODE = 6;
+
+	private final MongoTemplate mongoTemplate;
+
+	private final MeterRegistry meterRegistry;
+
+	private final String configuredDatapath;
+
+	private final int maxEnginesPerKey;
+
+	private final Duration acquireTimeout;
+
+	private final boolean warmUpEnabled;
+
+	private final EngineFactory engineFactory;
+
+	private final Map<String, EnginePool> pools = new ConcurrentHashMap<>();
+
+	private Path extractedDatapath;
+
+	@Autowired
+	public TesseractEnginePool( MongoTemplate mongoTemplate,
+		MeterRegistry meterRegistry,
+		@Value( "${tesseract.datapath:}" ) String configuredDatapath,
+		@Value( "${tesseract.pool.max-engines-per-key:4}" ) int maxEnginesPerKey,
+		@Value( "${tesseract.pool.acquire-timeout:30s}" ) Duration acquireTimeout,
+		@Value( "${tesseract.warm-up.enabled:true}" ) boolean warmUpEnabled ) {
+		this( mongoTemplate, meterRegistry, configuredDatapath, maxEnginesPerKey, acquireTimeout, warmUpEnabled, TesseractEngine::create );
+	}
+
+	TesseractEnginePool( MongoTemplate mongoTemplate, MeterRegistry meterRegistry, String configuredDatapath, int maxEnginesPerKey,
+		Duration acquireTimeout, boolean warmUpEnabled, EngineFactory engineFactory ) {
+		this.mongoTemplate = mongoTemplate;
+		this.meterRegistry = meterRegistry;
+		this.configuredDatapath = configuredDatapath;
+		this.maxEnginesPerKey = Math.max( 1, maxEnginesPerKey );
+		this.acquireTimeout = acquireTimeout;
+		this.warmUpEnabled = warmUpEnabled;
+		this.engineFactory = engineFactory;
+	}
+
+	/**
+	 * Runs a recognition with a pooled engine of the default engine and page segmentation modes.
+	 */
+	public <T> T withEngine( String language, Function<TesseractEngine, T> recognition ) throws TesseractException {
+		return withEngine( language, DEFAULT_OCR_ENGINE_MODE, DEFAULT_PAGE_SEG_MODE, recognition );
+	}
+
+	/**
+	 * Borrows an engine, runs the recognition with it and returns it to the pool.
+	 *
+	 * @param language      The language code, e.g. {@code por} or {@code por+eng}.
+	 * @param ocrEngineMode The OCR engine mode.
+	 * @param pageSegMode   The page segmentation mode.
+	 * @param recognition   The recognition to run with the engine.
+	 * @return The result of the recognition.
+	 * @throws TesseractException If no engine could be created or none was released within the acquire timeout.
+	 */
+	public <T> T withEngine( String language, int ocrEngineMode, int pageSegMode, Function<TesseractEngine, T> recognition ) throws TesseractException {
+		String normalizedLanguage = normalizeLanguage( language );
+		EnginePool pool = pools.computeIfAbsent( normalizedLanguage + "|" + ocrEngineMode + "|" + pageSegMode,
+			key -> new EnginePool( normalizedLanguage, ocrEngineMode, pageSegMode ) );
+		TesseractEngine engine = pool.acquire();
+		try {
+			return recognition.apply( engine );
+		}
+		finally {
+			pool.release( engine );
+		}
+	}
+
+	@EventListener( ApplicationReadyEvent.class )
+	public void warmUp() {
+		if ( !warmUpEnabled ) {
+			return;
+		}
+		List<String> languages;
+		try {
+			languages = mongoTemplate.findDistinct( new Query(), "language", RegexPattern.class, String.class );
+		}
+		catch ( RuntimeException e ) {
+			log.warn( "Could not read the layout languages to warm up Tesseract. exception message: {}", ExceptionUtils.getRootCauseMessage( e ) );
+			return;
+		}
+		for ( String language : languages ) {
+			if ( !StringUtils.hasText( language ) ) {
+				continue;
+			}
+			try {
+				withEngine( language, engine -> engine );
+				log.info( "Tesseract engine for language {} is warmed up", language );
+			}
+			catch ( TesseractException | RuntimeException | LinkageError e ) {
+				log.warn( "Could not warm up Tesseract for language {}. exception message: {}", language, ExceptionUtils.getRootCauseMessage( e ) );
+			}
+		}
+	}
+
+	@PreDestroy
+	public void closeEngines() {
+		pools.values().forEach( EnginePool::close );
+		pools.clear();
+		if ( extractedDatapath != null ) {
+			try {
+				FileSystemUtils.deleteRecursively( extractedDatapath );
+			}
+			catch ( IOException e ) {
+				log.warn( "Could not delete the extracted tessdata directory {}", extractedDatapath );
+			}
+		}
+	}
+
+	private static String normalizeLanguage( String language ) {
+		return StringUtils.hasText( language ) ? language.trim() : "eng";
+	}
+
+	/**
+	 * Resolves the tessdata directory holding the models of the language, copying them from the classpath if needed.
+	 */
+	private synchronized String resolveDatapath( String language ) throws TesseractException {
+		if ( StringUtils.hasText( configuredDatapath ) ) {
+			return configuredDatapath;
+		}
+		try {
+			if ( extractedDatapath == null ) {
+				extractedDatapath = Files.createTempDirectory( "tessdata" );
+			}
+			for ( String languageCode : language.split( "\\+" ) ) {
+				Path model = extractedDatapath.resolve( languageCode + ".traineddata" );
+				if ( Files.exists( model ) ) {
+					continue;
+				}
+				ClassPathResource resource = new ClassPathResource( "tessdata/" + languageCode + ".traineddata" );
+				if ( !resource.exists() ) {
+					throw new TesseractException( "No Tesseract model found for language " + languageCode );
+				}
+				try ( InputStream inputStream = resource.getInputStream() ) {
+					Files.copy( inputStream, model, StandardCopyOption.REPLACE_EXISTING );
+				}
+			}
+			return extractedDatapath.toString();
+		}
+		catch ( IOException e ) {
+			throw new TesseractException( "Could not extract the Tesseract model of language " + language, e );
+		}
+	}
+
+	/**
+	 * Creates the engines of the pool, see {@link TesseractEngine#create(String, String, int, int)}.
+	 */
+	@FunctionalInterface
+	interface EngineFactory {
+
+		TesseractEngine create( String datapath, String language, int ocrEngineMode, int pageSegMode ) throws TesseractException;
+	}
+
+	private final class EnginePool {
+
+		private final String language;
+
+		private final int ocrEngineMode;
+
+		private final int pageSegMode;
+
+		private final BlockingQueue<TesseractEngine> idleEngines = new LinkedBlockingQueue<>();
+
+		private final Semaphore capacity = new Semaphore( maxEnginesPerKey );
+
+		private final AtomicInteger enginesInUse = new AtomicInteger();
+
+		private final Timer waitTimer;
+
+		private EnginePool( String language, int ocrEngineMode, int pageSegMode ) {
+			this.language = language;
+			this.ocrEngineMode = ocrEngineMode;
+			this.pageSegMode = pageSegMode;
+			this.waitTimer = Timer.builder( "tesseract.pool.wait" )
+				.tag( "language", language )
+				.tag( "psm", String.valueOf( pageSegMode ) )
+				.register( meterRegistry );
+			Gauge.builder( "tesseract.pool.engines", idleEngines, BlockingQueue::size )
+				.tags( "language", language, "psm", String.valueOf( pageSegMode ), "state", "idle" )
+				.register( meterRegistry );
+			Gauge.builder( "tesseract.pool.engines", enginesInUse, AtomicInteger::get )
+				.tags( "language", language, "psm", String.valueOf( pageSegMode ), "state", "in-use" )
+				.register( meterRegistry );
+		}
+
+		private TesseractEngine acquire() throws TesseractException {
+			long start = System.nanoTime();
+			try {
+				TesseractEngine engine = idleEngines.poll();
+				if ( engine == null && capacity.tryAcquire() ) {
+					engine = createEngine();
+				}
+				if ( engine == null ) {
+					engine = idleEngines.poll( acquireTimeout.toMillis(), TimeUnit.MILLISECONDS );
+				}
+				if ( engine == null ) {
+					throw new TesseractException( "Timed out waiting for a Tesseract engine for language " + language );
+				}
+				enginesInUse.incrementAndGet();
+				return engine;
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new TesseractException( "Interrupted while waiting for a Tesseract engine for language " + language, e );
+			}
+			finally {
+				waitTimer.record( System.nanoTime() - start, TimeUnit.NANOSECONDS );
+			}
+		}
+
+		private TesseractEngine createEngine() throws TesseractException {
+			try {
+				TesseractEngine engine = engineFactory.create( resolveDatapath( language ), language, ocrEngineMode, pageSegMode );
+				meterRegistry.counter( "tesseract.pool.created", "language", language ).increment();
+				return engine;
+			}
+			catch ( TesseractException | RuntimeException | LinkageError e ) {
+				capacity.release();
+				throw e;
+			}
+		}
+
+		private void release( TesseractEngine engine ) {
+			enginesInUse.decrementAndGet();
+			idleEngines.offer( engine );
+		}
+
+		private void close() {
+			TesseractEngine engine;
+			while ( ( engine = idleEngines.poll() ) != null ) {
+				engine.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.types.CircuitBreakerState;
+import com.example.ImageHandling.exception.ViesLookupException;
+import com.example.ImageHandling.infrastructure.soap.checkvat.CheckVatPortType;
+import com.example.ImageHandling.infrastructure.soap.checkvat.CheckVatService;
+import com.example.ImageHandling.utils.CircuitBreaker;
+import com.sun.xml.ws.developer.JAXWSProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Holder;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe client of the VIES VAT number check.
+ * <p>
+ * The JAX-WS service is bound once to the WSDL bundled in the application, so no lookup downloads and parses the
+ * remote WSDL. JAX-WS ports are not thread-safe, so up to {@code vies.pool.max-ports} ports are created lazily and
+ * each lookup borrows one. Every port has the {@code vies.connect-timeout} and {@code vies.read-timeout} timeouts,
+ * and lookups are rejected while the circuit breaker is open, so a slow VIES cannot hold the upload threads.
+ * </p>
+ */
+@Slf4j
+@Service
+public class ViesClient {
+
+	private final MeterRegistry meterRegistry;
+
+	private final Resource wsdlLocation;
+
+	private final String endpointAddress;
+
+	private final Duration connectTimeout;
+
+	private final Duration readTimeout;
+
+	private final Duration acquireTimeout;
+
+	private final boolean warmUpEnabled;
+
+	private final CircuitBreaker circuitBreaker;
+
+	private final BlockingQueue<CheckVatPortType> idlePorts = new LinkedBlockingQueue<>();
+
+	private final Semaphore capacity;
+
+	private volatile CheckVatService checkVatService;
+
+	private static final Logger logger = LoggerFactory.getLogger( ViesClient.class );
+
+	public ViesClient( MeterRegistry meterRegistry,
+		@Value( "${vies.wsdl-location:classpath:wsdl/checkVatService.wsdl}" ) Resource wsdlLocation,
+		@Value( "${vies.endpoint-address:}" ) String endpointAddress,
+		@Value( "${vies.connect-timeout:2s}" ) Duration connectTimeout,
+		@Value( "${vies.read-timeout:5s}" ) Duration readTimeout,
+		@Value( "${vies.pool.max-ports:4}" ) int maxPorts,
+		@Value( "${vies.pool.acquire-timeout:5s}" ) Duration acquireTimeout,
+		@Value( "${vies.warm-up.enabled:true}" ) boolean warmUpEnabled,
+		@Value( "${vies.circuit-breaker.failure-threshold:5}" ) int failureThreshold,
+		@Value( "${vies.circuit-breaker.open-duration:30s}" ) Duration openDuration ) {
+		this.meterRegistry = meterRegistry;
+		this.wsdlLocation = wsdlLocation;
+		this.endpointAddress = endpointAddress;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.acquireTimeout = acquireTimeout;
+		this.warmUpEnabled = warmUpEnabled;
+		this.capacity = new Semaphore( Math.max( 1, maxPorts ) );
+		this.circuitBreaker = new CircuitBreaker( "vies", failureThreshold, openDuration );
+		Gauge.builder( "vies.client.ports.idle", idlePorts, BlockingQueue::size ).register( meterRegistry );
+		meterRegistry.gauge( "vies.client.circuit.open", circuitBreaker, breaker -> breaker.getState() == CircuitBreakerState.CLOSED ? 0 : 1 );
+	}
+
+	/**
+	 * Binds the service and creates a first port when the application starts, so the first lookup does not pay for it.
+	 */
+	@EventListener( ApplicationReadyEvent.class )
+	public void warmUp() {
+		if ( !warmUpEnabled ) {
+			return;
+		}
+		if ( !capacity.tryAcquire() ) {
+			return;
+		}
+		try {
+			idlePorts.offer( createPort() );
+			logger.info( "VIES client is bound to {}", wsdlLocation );
+		}
+		catch ( RuntimeException e ) {
+			capacity.release();
+			logger.warn( "Could not warm up the VIES client. exception message: {}", ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+
+	/**
+	 * Checks a VAT number with VIES.
+	 *
+	 * @param countryCode The country code of the VAT number, e.g. {@code PT}.
+	 * @param vatNumber   The VAT number without the country code.
+	 * @return The registered name of the company, or empty if VIES answered without a name.
+	 * @throws ViesLookupException If VIES did not answer, answered with a fault, or was not called because the
+	 *                             circuit breaker is open or no port was released within the acquire timeout.
+	 */
+	public Optional<String> lookupCompanyName( String countryCode, String vatNumber ) {
+		if ( !circuitBreaker.tryAcquirePermission() ) {
+			meterRegistry.counter( "vies.client.rejected", "reason", "circuit-open" ).increment();
+			throw new ViesLookupException( "VIES circuit breaker is open, VAT number " + vatNumber + " was not checked" );
+		}
+		long start = System.nanoTime();
+		String outcome = "error";
+		CheckVatPortType port = null;
+		try {
+			port = acquirePort();
+			Holder<String> countryCodeHolder = new Holder<>( countryCode );
+			Holder<String> vatNumberHolder = new Holder<>( vatNumber );
+			Holder<XMLGregorianCalendar> requestDateHolder = new Holder<>();
+			Holder<Boolean> validHolder = new Holder<>();
+			Holder<String> nameHolder = new Holder<>();
+			Holder<String> addressHolder = new Holder<>();
+			port.checkVat( countryCodeHolder, vatNumberHolder, requestDateHolder, validHolder, nameHolder, addressHolder );
+			circuitBreaker.recordSuccess();
+			outcome = nameHolder.value != null ? "found" : "not-found";
+			return Optional.ofNullable( nameHolder.value );
+		}
+		catch ( SOAPFaultException e ) {
+			// VIES answered, e.g. INVALID_INPUT or MS_UNAVAILABLE, so the service itself is reachable
+			circuitBreaker.recordSuccess();
+			outcome = "fault";
+			throw new ViesLookupException( "VIES fault for VAT number " + vatNumber + ": " + e.getMessage(), e );
+		}
+		catch ( ViesLookupException e ) {
+			circuitBreaker.recordCancel();
+			outcome = "rejected";
+			throw e;
+		}
+		catch ( RuntimeException e ) {
+			circuitBreaker.recordFailure();
+			throw new ViesLookupException( "VIES lookup failed for VAT number " + vatNumber, e );
+		}
+		finally {
+			if ( port != null ) {
+				idlePorts.offer( port );
+			}
+			Timer.builder( "vies.client.lookup" )
+				.tag( "outcome", outcome )
+				.register( meterRegistry )
+				.record( System.nanoTime() - start, TimeUnit.NANOSECONDS );
+		}
+	}
+
+	private CheckVatPortType acquirePort() {
+		CheckVatPortType port = idlePorts.poll();
+		if ( port != null ) {
+			return port;
+		}
+		if ( capacity.tryAcquire() ) {
+			try {
+				return createPort();
+			}
+			catch ( RuntimeException e ) {
+				capacity.release();
+				throw e;
+			}
+		}
+		try {
+			port = idlePorts.poll( acquireTimeout.toMillis(), TimeUnit.MILLISECONDS );
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new ViesLookupException( "Interrupted while waiting for a VIES port", e );
+		}
+		if ( port == null ) {
+			meterRegistry.counter( "vies.client.rejected", "reason", "pool-exhausted" ).increment();
+			throw new ViesLookupException( "Timed out waiting for a VIES port" );
+		}
+		return port;
+	}
+
+	private CheckVatPortType createPort() {
+		long start = System.nanoTime();
+		CheckVatPortType port = bind().getCheckVatPort();
+		Map<String, Object> requestContext = ( (BindingProvider) port ).getRequestContext();
+		if ( StringUtils.hasText( endpointAddress ) ) {
+			requestContext.put( BindingProvider.ENDPOINT_ADDRESS_PROPERTY, endpointAddress.trim() );
+		}
+		requestContext.put( JAXWSProperties.CONNECT_TIMEOUT, (int) connectTimeout.toMillis() );
+		requestContext.put( JAXWSProperties.REQUEST_TIMEOUT, (int) readTimeout.toMillis() );
+		meterRegistry.timer( "vies.client.port.created" ).record( System.nanoTime() - start, TimeUnit.NANOSECONDS );
+		return port;
+	}
+
+	/**
+	 * Creates the JAX-WS service from the bundled WSDL on first use. Only the WSDL parsing is measured here, the
+	 * creation of the ports is measured by {@code vies.client.port.created}.
+	 */
+	private CheckVatService bind() {
+		CheckVatService service = checkVatService;
+		if ( service != null ) {
+			return service;
+		}
+		synchronized ( this ) {
+			if ( checkVatService == null ) {
+				long start = System.nanoTime();
+				try {
+					checkVatService = new CheckVatService( wsdlLocation.getURL() );
+				}
+				catch ( IOException | WebServiceException e ) {
+					throw new ViesLookupException( "Could not bind the VIES client to the WSDL " + wsdlLocation, e );
+				}
+				finally {
+					meterRegistry.timer( "vies.client.startup" ).record( System.nanoTime() - start, TimeUnit.NANOSECONDS );
+				}
+			}
+			return checkVatService;
+		}
+	}
+}
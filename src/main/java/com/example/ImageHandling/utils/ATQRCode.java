@@ -0,0 +1,174 @@
+package com.example.ImageHandling.utils;
+
+import com.example.ImageHandling.domains.SubtotalField;
+import com.example.ImageHandling.domains.types.ATQRCodeField;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Parsed payload of an AT invoice QR code, e.g. {@code A:123456789*B:999999990*C:PT*...*O:12.30}.
+ * <p>
+ * The payload is parsed in a single pass over its characters. Only the start and end offset of each field value
+ * are recorded, indexed by {@link ATQRCodeField}, so no strings are created until a field value is read.
+ * When a field appears more than once, the last occurrence wins.
+ * </p>
+ */
+@Slf4j
+public final class ATQRCode {
+
+	private static final char PAIR_SEPARATOR = '*';
+
+	private static final char KEY_SEPARATOR = ':';
+
+	// Decimal values with more digits than this do not fit in a long and are parsed by BigDecimal
+	private static final int MAX_LONG_DIGITS = 18;
+
+	// Bound on the integer digits and decimal places of a taxable base, adding a value such as 1E+999999999 would expand it
+	private static final int MAX_AMOUNT_DIGITS = 100;
+
+	private static final ATQRCodeField[] SUBTOTAL_FIELDS = Arrays.stream( SubtotalField.values() )
+		.map( subtotalField -> ATQRCodeField.valueOf( subtotalField.name() ) )
+		.toArray( ATQRCodeField[]::new );
+
+	private final String text;
+
+	private final int[] valueStarts = new int[ATQRCodeField.values().length];
+
+	private final int[] valueEnds = new int[ATQRCodeField.values().length];
+
+	private ATQRCode( String text ) {
+		this.text = text;
+		Arrays.fill( valueStarts, -1 );
+	}
+
+	/**
+	 * Parses the text of a QR code. Pairs without a value, with an unknown key or with a ':' in their value are ignored,
+	 * and trailing ':' of a value are dropped, as with splitting each pair on ':'.
+	 *
+	 * @param text The decoded QR code text.
+	 * @return The parsed payload, which is empty if the text is null or empty.
+	 */
+	public static ATQRCode parse( String text ) {
+		ATQRCode qrCode = new ATQRCode( text == null ? "" : text );
+		String payload = qrCode.text;
+		int length = payload.length();
+		int pairStart = 0;
+		int keyEnd = -1;
+		for ( int i = 0; i <= length; i++ ) {
+			char c = i < length ? payload.charAt( i ) : PAIR_SEPARATOR;
+			if ( c == KEY_SEPARATOR && keyEnd < 0 ) {
+				keyEnd = i;
+			}
+			else if ( c == PAIR_SEPARATOR ) {
+				int valueEnd = i;
+				while ( valueEnd > keyEnd + 1 && payload.charAt( valueEnd - 1 ) == KEY_SEPARATOR ) {
+					valueEnd--;
+				}
+				if ( keyEnd > pairStart && keyEnd + 1 < valueEnd && !contains( payload, KEY_SEPARATOR, keyEnd + 1, valueEnd ) ) {
+					ATQRCodeField field = ATQRCodeField.fromKey( payload, pairStart, keyEnd );
+					if ( field != null ) {
+						qrCode.valueStarts[field.ordinal()] = keyEnd + 1;
+						qrCode.valueEnds[field.ordinal()] = valueEnd;
+					}
+				}
+				pairStart = i + 1;
+				keyEnd = -1;
+			}
+		}
+		return qrCode;
+	}
+
+	private static boolean contains( String text, char c, int start, int end ) {
+		int index = text.indexOf( c, start );
+		return index >= 0 && index < end;
+	}
+
+	/**
+	 * Checks whether the payload is an AT invoice QR code, i.e. it holds the issuer VAT number (A) and the invoice date (F).
+	 */
+	public boolean isInvoice() {
+		return has( ATQRCodeField.A ) && has( ATQRCodeField.F );
+	}
+
+	public boolean has( ATQRCodeField field ) {
+		return valueStarts[field.ordinal()] >= 0;
+	}
+
+	/**
+	 * @return The value of the field, or null if the payload does not contain it.
+	 */
+	public String get( ATQRCodeField field ) {
+		int start = valueStarts[field.ordinal()];
+		return start < 0 ? null : text.substring( start, valueEnds[field.ordinal()] );
+	}
+
+	/**
+	 * Sums the taxable bases listed in {@link SubtotalField}. Values that are not decimal numbers are logged and skipped.
+	 *
+	 * @return The subtotal of the invoice, zero if the payload contains no taxable base.
+	 */
+	public BigDecimal subtotal() {
+		BigDecimal sum = BigDecimal.ZERO;
+		for ( ATQRCodeField field : SUBTOTAL_FIELDS ) {
+			int start = valueStarts[field.ordinal()];
+			if ( start >= 0 ) {
+				BigDecimal value = parseDecimal( start, valueEnds[field.ordinal()] );
+				if ( value != null ) {
+					sum = sum.add( value );
+				}
+				else {
+					log.error( "Error occurred during parsing value for Subtotal keys, key {} with value {}", field, get( field ) );
+				}
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Parses plain decimals such as {@code -12.30} without intermediate strings. Any other notation, e.g. a sign, an
+	 * exponent or more than {@value #MAX_LONG_DIGITS} digits, is left to {@link BigDecimal#BigDecimal(String)}.
+	 *
+	 * @return The value, or null if it is not a decimal number or has more than {@value #MAX_AMOUNT_DIGITS} integer
+	 * digits or decimal places.
+	 */
+	private BigDecimal parseDecimal( int start, int end ) {
+		boolean negative = text.charAt( start ) == '-';
+		int i = negative ? start + 1 : start;
+		long unscaled = 0;
+		int digits = 0;
+		int scale = -1;
+		for ( ; i < end; i++ ) {
+			char c = text.charAt( i );
+			if ( c >= '0' && c <= '9' ) {
+				unscaled = unscaled * 10 + ( c - '0' );
+				digits++;
+				if ( scale >= 0 ) {
+					scale++;
+				}
+			}
+			else if ( c == '.' && scale < 0 ) {
+				scale = 0;
+			}
+			else {
+				return parseBigDecimal( start, end );
+			}
+		}
+		if ( digits == 0 || digits > MAX_LONG_DIGITS ) {
+			return parseBigDecimal( start, end );
+		}
+		return BigDecimal.valueOf( negative ? -unscaled : unscaled, Math.max( scale, 0 ) );
+	}
+
+	private BigDecimal parseBigDecimal( int start, int end ) {
+		try {
+			BigDecimal value = new BigDecimal( text.substring( start, end ) );
+			boolean amount = value.scale() <= MAX_AMOUNT_DIGITS && (long) value.precision() - value.scale() <= MAX_AMOUNT_DIGITS;
+			return amount ? value : null;
+		}
+		catch ( NumberFormatException e ) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.example.ImageHandling.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Aho–Corasick automaton that finds every occurrence of a set of literal keywords in a single pass over a text.
+ * <p>
+ * The automaton is built once as a dense transition table over the characters of the keywords, so scanning costs one
+ * table lookup per text character whatever the number of keywords. An automaton is immutable and thread-safe.
+ * </p>
+ */
+public final class AhoCorasick {
+
+	private static final int ASCII_SIZE = 128;
+
+	private static final int NO_SYMBOL = -1;
+
+	private final int[] keywordLengths;
+
+	// Symbol of each ASCII character, NO_SYMBOL when no keyword contains it
+	private final int[] asciiSymbols = new int[ASCII_SIZE];
+
+	// Sorted non-ASCII characters of the keywords, their symbol follows the ASCII symbols
+	private final char[] otherCharacters;
+
+	private final int asciiSymbolCount;
+
+	private final int[][] transitions;
+
+	// Keywords ending at each state, including the keywords of its suffixes
+	private final int[][] outputs;
+
+	/**
+	 * @param keywords The non-empty keywords to find. Duplicates are reported once per index.
+	 */
+	public AhoCorasick( List<String> keywords ) {
+		this.keywordLengths = keywords.stream().mapToInt( String::length ).toArray();
+
+		TreeSet<Character> alphabet = new TreeSet<>();
+		for ( String keyword : keywords ) {
+			if ( keyword.isEmpty() ) {
+				throw new IllegalArgumentException( "Keywords must not be empty" );
+			}
+			for ( int i = 0; i < keyword.length(); i++ ) {
+				alphabet.add( keyword.charAt( i ) );
+			}
+		}
+		Arrays.fill( asciiSymbols, NO_SYMBOL );
+		int symbolCount = 0;
+		List<Character> others = new ArrayList<>();
+		for ( char c : alphabet ) {
+			if ( c < ASCII_SIZE ) {
+				asciiSymbols[c] = symbolCount++;
+			}
+			else {
+				others.add( c );
+			}
+		}
+		this.asciiSymbolCount = symbolCount;
+		this.otherCharacters = new char[others.size()];
+		for ( int i = 0; i < others.size(); i++ ) {
+			otherCharacters[i] = others.get( i );
+		}
+		int alphabetSize = asciiSymbolCount + otherCharacters.length;
+
+		// Trie of the keywords
+		List<int[]> trie = new ArrayList<>();
+		List<List<Integer>> trieOutputs = new ArrayList<>();
+		trie.add( newState( alphabetSize ) );
+		trieOutputs.add( new ArrayList<>() );
+		for ( int keywordIndex = 0; keywordIndex < keywords.size(); keywordIndex++ ) {
+			String keyword = keywords.get( keywordIndex );
+			int state = 0;
+			for ( int i = 0; i < keyword.length(); i++ ) {
+				int symbol = symbolOf( keyword.charAt( i ) );
+				if ( trie.get( state )[symbol] < 0 ) {
+					trie.get( state )[symbol] = trie.size();
+					trie.add( newState( alphabetSize ) );
+					trieOutputs.add( new ArrayList<>() );
+				}
+				state = trie.get( state )[symbol];
+			}
+			trieOutputs.get( state ).add( keywordIndex );
+		}
+
+		// Breadth-first completion of the transitions with the failure links
+		int stateCount = trie.size();
+		this.transitions = trie.toArray( new int[stateCount][] );
+		this.outputs = new int[stateCount][];
+		int[] failures = new int[stateCount];
+		Deque<Integer> queue = new ArrayDeque<>();
+		outputs[0] = new int[0];
+		for ( int symbol = 0; symbol < alphabetSize; symbol++ ) {
+			int next = transitions[0][symbol];
+			if ( next < 0 ) {
+				transitions[0][symbol] = 0;
+			}
+			else {
+				failures[next] = 0;
+				queue.add( next );
+			}
+		}
+		while ( !queue.isEmpty() ) {
+			int state = queue.poll();
+			int[] inherited = outputs[failures[state]];
+			List<Integer> own = trieOutputs.get( state );
+			int[] stateOutputs = Arrays.copyOf( inherited, inherited.length + own.size() );
+			for ( int i = 0; i < own.size(); i++ ) {
+				stateOutputs[inherited.length + i] = own.get( i );
+			}
+			outputs[state] = stateOutputs;
+			for ( int symbol = 0; symbol < alphabetSize; symbol++ ) {
+				int next = transitions[state][symbol];
+				if ( next < 0 ) {
+					transitions[state][symbol] = transitions[failures[state]][symbol];
+				}
+				else {
+					failures[next] = transitions[failures[state]][symbol];
+					queue.add( next );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the start offset of every occurrence of every keyword, overlapping occurrences included.
+	 *
+	 * @param text The text to scan.
+	 * @return For each keyword, in the order of the constructor, the ascending start offsets of its occurrences.
+	 */
+	public int[][] findAll( CharSequence text ) {
+		int[][] occurrences = new int[keywordLengths.length][];
+		int[] counts = new int[keywordLengths.length];
+		for ( int i = 0; i < occurrences.length; i++ ) {
+			occurrences[i] = new int[4];
+		}
+		int state = 0;
+		for ( int i = 0; i < text.length(); i++ ) {
+			int symbol = symbolOf( text.charAt( i ) );
+			state = symbol == NO_SYMBOL ? 0 : transitions[state][symbol];
+			for ( int keywordIndex : outputs[state] ) {
+				if ( counts[keywordIndex] == occurrences[keywordIndex].length ) {
+					occurrences[keywordIndex] = Arrays.copyOf( occurrences[keywordIndex], counts[keywordIndex] * 2 );
+				}
+				occurrences[keywordIndex][counts[keywordIndex]++] = i - keywordLengths[keywordIndex] + 1;
+			}
+		}
+		for ( int i = 0; i < occurrences.length; i++ ) {
+			occurrences[i] = Arrays.copyOf( occurrences[i], counts[i] );
+		}
+		return occurrences;
+	}
+
+	private int symbolOf( char c ) {
+		if ( c < ASCII_SIZE ) {
+			return asciiSymbols[c];
+		}
+		int index = Arrays.binarySearch( otherCharacters, c );
+		return index < 0 ? NO_SYMBOL : asciiSymbolCount + index;
+	}
+
+	private static int[] newState( int alphabetSize ) {
+		int[] state = new int[alphabetSize];
+		Arrays.fill( state, -1 );
+		return state;
+	}
+}
@@ -0,0 +1,80 @@
+package com.example.ImageHandling.utils;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Thread-safe in-memory cache bounded by size and entry time to live.
+ * <p>
+ * When the cache is full the least recently used entry is evicted. Expired entries are dropped when they are read.
+ * </p>
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public class BoundedCache<K, V> {
+
+	private final Duration timeToLive;
+
+	private final Map<K, CacheEntry<V>> entries;
+
+	public BoundedCache( int maxEntries, Duration timeToLive ) {
+		this.timeToLive = timeToLive;
+		this.entries = new LinkedHashMap<>( 16, 0.75f, true ) {
+
+			@Override
+			protected boolean removeEldestEntry( Map.Entry<K, CacheEntry<V>> eldest ) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public synchronized Optional<V> get( K key ) {
+		CacheEntry<V> entry = entries.get( key );
+		if ( entry == null ) {
+			return Optional.empty();
+		}
+		// Compared as a difference, so an expiry past the overflow of nanoTime is still in the future
+		if ( System.nanoTime() - entry.expiresAt > 0 ) {
+			entries.remove( key );
+			return Optional.empty();
+		}
+		return Optional.of( entry.value );
+	}
+
+	public void put( K key, V value ) {
+		put( key, value, timeToLive );
+	}
+
+	public synchronized void put( K key, V value, Duration entryTimeToLive ) {
+		Objects.requireNonNull( value, "Cached value must not be null" );
+		entries.put( key, new CacheEntry<>( value, System.nanoTime() + entryTimeToLive.toNanos() ) );
+	}
+
+	public synchronized void invalidate( K key ) {
+		entries.remove( key );
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private static final class CacheEntry<V> {
+
+		private final V value;
+
+		private final long expiresAt;
+
+		private CacheEntry( V value, long expiresAt ) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
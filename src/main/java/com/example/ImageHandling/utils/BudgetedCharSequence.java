@@ -0,0 +1,83 @@
+package com.example.ImageHandling.utils;
+
+import com.example.ImageHandling.exception.RegexBudgetExceededException;
+
+import java.time.Duration;
+
+/**
+ * Text that stops a regex running on it once its budget is spent.
+ * <p>
+ * {@link java.util.regex.Matcher} reads the text through {@link #charAt(int)} at every step, including backtracking
+ * steps, so the budget is checked there. A budget is either a time, for production runs, or a number of steps, which
+ * does not depend on the load or the JIT and suits profiling. The clock is only read every {@value #CHECK_INTERVAL}
+ * steps. A sequence counts the steps of one thread and must not be shared.
+ * </p>
+ */
+public final class BudgetedCharSequence implements CharSequence {
+
+	private static final int CHECK_INTERVAL = 1024;
+
+	private final CharSequence text;
+
+	private final long deadline;
+
+	private final long maxSteps;
+
+	private final String budget;
+
+	private long steps;
+
+	private BudgetedCharSequence( CharSequence text, long deadline, long maxSteps, String budget ) {
+		this.text = text;
+		this.deadline = deadline;
+		this.maxSteps = maxSteps;
+		this.budget = budget;
+	}
+
+	/**
+	 * @param text   The text to read.
+	 * @param budget The time the regex may run, starting now.
+	 * @return The budgeted text.
+	 */
+	public static BudgetedCharSequence of( CharSequence text, Duration budget ) {
+		return new BudgetedCharSequence( text, System.nanoTime() + budget.toNanos(), Long.MAX_VALUE, budget.toMillis() + " ms" );
+	}
+
+	/**
+	 * @param text     The text to read.
+	 * @param maxSteps The characters the regex may read, counting every backtracking step.
+	 * @return The budgeted text.
+	 */
+	public static BudgetedCharSequence ofSteps( CharSequence text, long maxSteps ) {
+		return new BudgetedCharSequence( text, Long.MAX_VALUE, maxSteps, maxSteps + " steps" );
+	}
+
+	@Override
+	public int length() {
+		return text.length();
+	}
+
+	/**
+	 * @throws RegexBudgetExceededException If the budget is spent.
+	 */
+	@Override
+	public char charAt( int index ) {
+		if ( ++steps > maxSteps || ( steps % CHECK_INTERVAL == 0 && deadline != Long.MAX_VALUE && System.nanoTime() > deadline ) ) {
+			throw new RegexBudgetExceededException( "Regex exceeded its budget of " + budget + " after " + steps + " steps" );
+		}
+		return text.charAt( index );
+	}
+
+	/**
+	 * Returns the plain sub sequence, used by the matcher to read the groups once a match is found.
+	 */
+	@Override
+	public CharSequence subSequence( int start, int end ) {
+		return text.subSequence( start, end );
+	}
+
+	@Override
+	public String toString() {
+		return text.toString();
+	}
+}
@@ -0,0 +1,88 @@
+package com.example.ImageHandling.utils;
+
+import com.example.ImageHandling.domains.types.CircuitBreakerState;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Consecutive-failure circuit breaker for calls to a remote service.
+ * <p>
+ * The circuit opens after {@code failureThreshold} consecutive failures and rejects calls for {@code openDuration}.
+ * It then lets a single probe call through: a success closes the circuit, a failure opens it again.
+ * </p>
+ */
+@Slf4j
+public class CircuitBreaker {
+
+	private final String name;
+
+	private final int failureThreshold;
+
+	private final long openDurationNanos;
+
+	private CircuitBreakerState state = CircuitBreakerState.CLOSED;
+
+	private int consecutiveFailures;
+
+	private long openedAt;
+
+	private boolean probeInFlight;
+
+	public CircuitBreaker( String name, int failureThreshold, Duration openDuration ) {
+		this.name = name;
+		this.failureThreshold = Math.max( 1, failureThreshold );
+		this.openDurationNanos = openDuration.toNanos();
+	}
+
+	/**
+	 * @return true if a call may be made now. Every permitted call must end with {@link #recordSuccess()},
+	 * {@link #recordFailure()} or {@link #recordCancel()}.
+	 */
+	public synchronized boolean tryAcquirePermission() {
+		if ( state == CircuitBreakerState.OPEN ) {
+			if ( System.nanoTime() - openedAt < openDurationNanos ) {
+				return false;
+			}
+			state = CircuitBreakerState.HALF_OPEN;
+			probeInFlight = false;
+		}
+		if ( state == CircuitBreakerState.HALF_OPEN ) {
+			if ( probeInFlight ) {
+				return false;
+			}
+			probeInFlight = true;
+		}
+		return true;
+	}
+
+	public synchronized void recordSuccess() {
+		if ( state != CircuitBreakerState.CLOSED ) {
+			log.info( "Circuit breaker {} closed", name );
+		}
+		state = CircuitBreakerState.CLOSED;
+		consecutiveFailures = 0;
+		probeInFlight = false;
+	}
+
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		if ( state == CircuitBreakerState.HALF_OPEN || ( state == CircuitBreakerState.CLOSED && consecutiveFailures >= failureThreshold ) ) {
+			log.warn( "Circuit breaker {} opened after {} consecutive failures", name, consecutiveFailures );
+			state = CircuitBreakerState.OPEN;
+			openedAt = System.nanoTime();
+			probeInFlight = false;
+		}
+	}
+
+	/**
+	 * Records a permitted call that was cancelled before it completed, e.g. the losing request of a hedged pair.
+	 */
+	public synchronized void recordCancel() {
+		probeInFlight = false;
+	}
+
+	public synchronized CircuitBreakerState getState() {
+		return state;
+	}
+}
@@ -0,0 +1,248 @@
+package com.example.ImageHandling.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only index of company names by Portuguese VAT number (NIF), memory-mapped from a file.
+ * <p>
+ * The file holds a header, the NIFs as sorted 4-byte keys, an offset table and a blob of UTF-8 names:
+ * </p>
+ * <pre>
+ * int magic, int version, int count, int reserved
+ * int[count]     keys, ascending
+ * int[count + 1] start of each name in the blob, the last one is the blob size
+ * byte[]         names
+ * </pre>
+ * <p>
+ * A lookup binary-searches the mapped keys with absolute reads, so it allocates nothing unless a name is found, is
+ * served by the OS page cache instead of the heap, and can run on many threads at once. Indexes are written by
+ * {@link Builder}.
+ * </p>
+ */
+public final class CompanyRegistryIndex {
+
+	private static final int MAGIC = 0x43524958; // CRIX
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 16;
+
+	private static final int NIF_DIGITS = 9;
+
+	private final MappedByteBuffer buffer;
+
+	private final int count;
+
+	private final int offsetsStart;
+
+	private final int namesStart;
+
+	private CompanyRegistryIndex( MappedByteBuffer buffer, int count ) {
+		this.buffer = buffer;
+		this.count = count;
+		this.offsetsStart = HEADER_BYTES + count * 4;
+		this.namesStart = offsetsStart + ( count + 1 ) * 4;
+	}
+
+	/**
+	 * Maps an index file into memory.
+	 *
+	 * @param file The index file written by {@link Builder#write(Path)}.
+	 * @return The index.
+	 * @throws IOException If the file cannot be read or is not a valid index.
+	 */
+	public static CompanyRegistryIndex open( Path file ) throws IOException {
+		try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+			long size = channel.size();
+			if ( size < HEADER_BYTES || size > Integer.MAX_VALUE ) {
+				throw new IOException( "Invalid company registry index size " + size + ": " + file );
+			}
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+			if ( buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION ) {
+				throw new IOException( "Not a company registry index: " + file );
+			}
+			int count = buffer.getInt( 8 );
+			long namesStart = HEADER_BYTES + 8L * count + 4;
+			if ( count < 0 || namesStart > size || namesStart + buffer.getInt( (int) namesStart - 4 ) != size ) {
+				throw new IOException( "Truncated company registry index: " + file );
+			}
+			return new CompanyRegistryIndex( buffer, count );
+		}
+	}
+
+	/**
+	 * Parses a NIF, with or without the PT prefix, without allocating.
+	 *
+	 * @param nif The NIF.
+	 * @return The NIF as a number, or -1 if it is not 9 digits.
+	 */
+	public static int parseNif( CharSequence nif ) {
+		if ( nif == null ) {
+			return -1;
+		}
+		int start = nif.length() == NIF_DIGITS + 2 && nif.charAt( 0 ) == 'P' && nif.charAt( 1 ) == 'T' ? 2 : 0;
+		if ( nif.length() - start != NIF_DIGITS ) {
+			return -1;
+		}
+		int value = 0;
+		for ( int i = start; i < nif.length(); i++ ) {
+			char c = nif.charAt( i );
+			if ( c < '0' || c > '9' ) {
+				return -1;
+			}
+			value = value * 10 + ( c - '0' );
+		}
+		return value;
+	}
+
+	/**
+	 * @param nif The NIF, with or without the PT prefix.
+	 * @return The company name, or null if the NIF is not in the index.
+	 */
+	public String find( CharSequence nif ) {
+		int key = parseNif( nif );
+		if ( key < 0 ) {
+			return null;
+		}
+		int low = 0;
+		int high = count - 1;
+		while ( low <= high ) {
+			int middle = ( low + high ) >>> 1;
+			int middleKey = buffer.getInt( HEADER_BYTES + middle * 4 );
+			if ( middleKey < key ) {
+				low = middle + 1;
+			}
+			else if ( middleKey > key ) {
+				high = middle - 1;
+			}
+			else {
+				return name( middle );
+			}
+		}
+		return null;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	private String name( int position ) {
+		int start = buffer.getInt( offsetsStart + position * 4 );
+		int end = buffer.getInt( offsetsStart + position * 4 + 4 );
+		byte[] bytes = new byte[end - start];
+		buffer.get( namesStart + start, bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Collects NIFs and names in any order and writes them as a sorted index. When a NIF is added more than once, the
+	 * last name wins.
+	 */
+	public static final class Builder {
+
+		private int[] keys = new int[1024];
+
+		private int[] nameStarts = new int[1025];
+
+		private byte[] names = new byte[64 * 1024];
+
+		private int count;
+
+		private int namesSize;
+
+		/**
+		 * @param nif  The NIF, with or without the PT prefix.
+		 * @param name The company name.
+		 * @return false if the NIF is not 9 digits or the name is blank, in which case the row is skipped.
+		 */
+		public boolean add( CharSequence nif, String name ) {
+			int key = parseNif( nif );
+			if ( key < 0 || name == null || name.isBlank() ) {
+				return false;
+			}
+			byte[] nameBytes = name.trim().getBytes( StandardCharsets.UTF_8 );
+			if ( count == keys.length ) {
+				keys = Arrays.copyOf( keys, count * 2 );
+				nameStarts = Arrays.copyOf( nameStarts, count * 2 + 1 );
+			}
+			if ( (long) namesSize + nameBytes.length > Integer.MAX_VALUE - 8 ) {
+				throw new IllegalStateException( "Company registry names exceed the index size limit" );
+			}
+			if ( namesSize + nameBytes.length > names.length ) {
+				names = Arrays.copyOf( names, (int) Math.min( Integer.MAX_VALUE - 8, Math.max( (long) names.length * 2, namesSize + nameBytes.length ) ) );
+			}
+			System.arraycopy( nameBytes, 0, names, namesSize, nameBytes.length );
+			keys[count] = key;
+			nameStarts[count] = namesSize;
+			namesSize += nameBytes.length;
+			nameStarts[count + 1] = namesSize;
+			count++;
+			return true;
+		}
+
+		/**
+		 * Writes the index file.
+		 *
+		 * @param file The index file to write, replaced if it exists.
+		 * @return The number of distinct NIFs written.
+		 * @throws IOException If the file cannot be written.
+		 */
+		public int write( Path file ) throws IOException {
+			// Sorts by NIF, then by insertion order, as key and row packed in one long
+			long[] rows = new long[count];
+			for ( int i = 0; i < count; i++ ) {
+				rows[i] = ( (long) keys[i] << 32 ) | i;
+			}
+			Arrays.sort( rows );
+			int distinct = 0;
+			for ( int i = 0; i < count; i++ ) {
+				if ( i + 1 == count || ( rows[i + 1] >>> 32 ) != ( rows[i] >>> 32 ) ) {
+					rows[distinct++] = rows[i];
+				}
+			}
+			if ( HEADER_BYTES + 8L * distinct + 4 + namesSize > Integer.MAX_VALUE ) {
+				throw new IOException( "Company registry index exceeds the size limit" );
+			}
+			try ( OutputStream fileOutput = Files.newOutputStream( file );
+				DataOutputStream output = new DataOutputStream( new BufferedOutputStream( fileOutput, 1 << 16 ) ) ) {
+				output.writeInt( MAGIC );
+				output.writeInt( VERSION );
+				output.writeInt( distinct );
+				output.writeInt( 0 );
+				for ( int i = 0; i < distinct; i++ ) {
+					output.writeInt( (int) ( rows[i] >>> 32 ) );
+				}
+				int nameStart = 0;
+				for ( int i = 0; i < distinct; i++ ) {
+					output.writeInt( nameStart );
+					nameStart += nameLength( (int) rows[i] );
+				}
+				output.writeInt( nameStart );
+				for ( int i = 0; i < distinct; i++ ) {
+					int row = (int) rows[i];
+					output.write( names, nameStarts[row], nameLength( row ) );
+				}
+			}
+			return distinct;
+		}
+
+		public int size() {
+			return count;
+		}
+
+		private int nameLength( int row ) {
+			return nameStarts[row + 1] - nameStarts[row];
+		}
+	}
+}
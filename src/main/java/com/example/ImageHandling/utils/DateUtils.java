@@ -1,18 +1,29 @@
 package com.example.ImageHandling.utils;
 
-import com.example.ImageHandling.domains.Invoices;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.text.ParsePosition;
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
+/**
+ * Parses the dates read from invoices.
+ * <p>
+ * A date is tried with the layout date format in each supported locale, so month names in English, Spanish,
+ * Portuguese and Italian are understood. The formatters are built once per date format and cached. Each locale is
+ * tried with a {@link ParsePosition}, so a locale that does not match costs no exception.
+ * </p>
+ */
 @Slf4j
 public class DateUtils {
 
@@ -25,53 +36,97 @@ public class DateUtils {
         Locale.ITALIAN
     );
 
-    public static LocalDate formatDate2(String dateStr, String formatDate) {
+    private static final DateTimeFormatter OUTPUT_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
+    private static final DateTimeFormatter QR_CODE_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
 
-        for (Locale locale : LOCALES) {
-            try {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(formatDate, locale);
-                LocalDate date = LocalDate.parse(dateStr, formatter);
-                return LocalDate.parse(date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-            } catch (DateTimeParseException e) {
-                log.error( e.getMessage() );
-                // Continua para o próximo locale se a data não puder ser analisada
-            }
-        }
-        throw new IllegalArgumentException("Unsupported date format: " + dateStr);
+    // Date formats are set per layout, the bound only protects against formats sent by clients
+    static final int MAX_CACHED_DATE_FORMATS = 256;
+
+    static final Map<String, List<DateTimeFormatter>> FORMATTERS = new ConcurrentHashMap<>();
+
+    public static LocalDate formatDate2(String dateStr, String formatDate) {
+        return toLocalDate(dateStr, formatDate);
     }
 
     public static String formatDate(String dateStr, String formatDate) {
-        for (Locale locale : LOCALES) {
-            try {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(formatDate, locale);
-                LocalDate date = LocalDate.parse(dateStr, formatter);
-                logger.info("Date '{}' with the date format '{}' formatted into '{}'", dateStr, formatDate, date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
-                return date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
-            } catch (DateTimeParseException e) {
-                String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
-                logger.error("Date not formatted. {}", rootCauseMessage, e);
+        String formattedDate = toLocalDate(dateStr, formatDate).format(OUTPUT_FORMATTER);
+        logger.debug("Date '{}' with the date format '{}' formatted into '{}'", dateStr, formatDate, formattedDate);
+        return formattedDate;
+    }
 
+    /**
+     * Parses a date with a date format, trying each supported locale in turn.
+     *
+     * @param dateStr    The date to parse. The whole text must match the date format.
+     * @param formatDate The date format, e.g. {@code dd-MM-yyyy} or {@code d 'de' MMMM 'de' yyyy}.
+     * @return The date.
+     * @throws IllegalArgumentException If the date cannot be parsed in any locale, or the date format is invalid.
+     */
+    public static LocalDate toLocalDate(String dateStr, String formatDate) {
+        return parseDate(dateStr, formatDate)
+            .orElseThrow(() -> new IllegalArgumentException("Cannot convert the date " + dateStr + " using the date format " + formatDate));
+    }
+
+    /**
+     * Parses a date with a date format, trying each supported locale in turn.
+     *
+     * @param dateStr    The date to parse. The whole text must match the date format.
+     * @param formatDate The date format, e.g. {@code dd-MM-yyyy} or {@code d 'de' MMMM 'de' yyyy}.
+     * @return The date, or empty if it cannot be parsed in any locale.
+     * @throws IllegalArgumentException If the date format is invalid.
+     */
+    public static Optional<LocalDate> parseDate(String dateStr, String formatDate) {
+        if (dateStr == null) {
+            return Optional.empty();
+        }
+        for (DateTimeFormatter formatter : formattersOf(formatDate)) {
+            Optional<LocalDate> date = parse(dateStr, formatter);
+            if (date.isPresent()) {
+                return date;
             }
         }
-        throw new IllegalArgumentException("Cannot convert the date " + dateStr + " using the date format " + formatDate);
+        logger.warn("Date '{}' does not match the date format '{}' in any supported locale", dateStr, formatDate);
+        return Optional.empty();
     }
 
     // To modify the locale date based on the locale
     public static LocalDate formatDate( String dateStr ) {
-        LocalDate date = null;
-        try {
-            DateTimeFormatter inputFormatter = DateTimeFormatter.ofPattern( "yyyyMMdd" );
-            date = LocalDate.parse( dateStr, inputFormatter );
-            logger.info("Formatted date {} to {}", dateStr, date);
-            return date ;
+        LocalDate date = dateStr == null ? null : parse( dateStr, QR_CODE_DATE_FORMATTER ).orElse( null );
+        if ( date == null ) {
+            logger.error( "Error on converting the dates {}, expected the format yyyyMMdd", dateStr );
         }
-        catch ( DateTimeParseException e ) {
-            String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
-            logger.error( "Error on converting the dates {}, Error message: {}", dateStr, rootCauseMessage, e );
-            return date;  // Return the original date string if parsing fails
+        else {
+            logger.debug( "Formatted date {} to {}", dateStr, date );
         }
+        return date;
     }
 
+    private static List<DateTimeFormatter> formattersOf(String formatDate) {
+        List<DateTimeFormatter> formatters = FORMATTERS.get(formatDate);
+        if (formatters == null) {
+            formatters = LOCALES.stream()
+                .map(locale -> DateTimeFormatter.ofPattern(formatDate, locale))
+                .collect(Collectors.toUnmodifiableList());
+            if (FORMATTERS.size() < MAX_CACHED_DATE_FORMATS) {
+                FORMATTERS.putIfAbsent(formatDate, formatters);
+            }
+        }
+        return formatters;
+    }
 
+    private static Optional<LocalDate> parse(String dateStr, DateTimeFormatter formatter) {
+        // parseUnresolved reports a text that does not match through the position instead of an exception
+        ParsePosition position = new ParsePosition(0);
+        if (formatter.parseUnresolved(dateStr, position) == null || position.getErrorIndex() >= 0 || position.getIndex() != dateStr.length()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(formatter.parse(dateStr, LocalDate::from));
+        }
+        catch (DateTimeException e) {
+            // The text matches the format but does not resolve to a date, e.g. a format without a year
+            return Optional.empty();
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package com.example.ImageHandling.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.opencv.core.Rect;
+
+import java.util.Optional;
+
+/**
+ * Parses the {@code position} of a layout field mapping into a region of an image.
+ * <p>
+ * A position is written {@code x,y,width,height}. When every value is between 0 and 1 the position is a fraction of
+ * the image size, which works for any scan resolution. Otherwise the values are pixels.
+ * </p>
+ */
+@Slf4j
+public final class FieldRegionUtils {
+
+	private FieldRegionUtils() {
+	}
+
+	/**
+	 * @param position    The position of the field, e.g. {@code 0.55,0.08,0.4,0.05} or {@code 1200,180,800,90}.
+	 * @param imageWidth  The width of the image in pixels.
+	 * @param imageHeight The height of the image in pixels.
+	 * @return The region clamped to the image, or empty if the position is blank, malformed or outside the image.
+	 */
+	public static Optional<Rect> toRegion( String position, int imageWidth, int imageHeight ) {
+		if ( position == null || position.isBlank() ) {
+			return Optional.empty();
+		}
+		String[] values = position.split( "," );
+		if ( values.length != 4 ) {
+			log.warn( "Ignoring field position {}, expected x,y,width,height", position );
+			return Optional.empty();
+		}
+		double[] numbers = new double[4];
+		try {
+			for ( int i = 0; i < 4; i++ ) {
+				numbers[i] = Double.parseDouble( values[i].trim() );
+			}
+		}
+		catch ( NumberFormatException e ) {
+			log.warn( "Ignoring field position {}, expected numbers", position );
+			return Optional.empty();
+		}
+
+		boolean fractions = numbers[0] <= 1 && numbers[1] <= 1 && numbers[2] <= 1 && numbers[3] <= 1;
+		double scaleX = fractions ? imageWidth : 1;
+		double scaleY = fractions ? imageHeight : 1;
+		int x = Math.max( 0, (int) Math.round( numbers[0] * scaleX ) );
+		int y = Math.max( 0, (int) Math.round( numbers[1] * scaleY ) );
+		int right = Math.min( imageWidth, (int) Math.round( ( numbers[0] + numbers[2] ) * scaleX ) );
+		int bottom = Math.min( imageHeight, (int) Math.round( ( numbers[1] + numbers[3] ) * scaleY ) );
+		if ( right <= x || bottom <= y ) {
+			return Optional.empty();
+		}
+		return Optional.of( new Rect( x, y, right - x, bottom - y ) );
+	}
+}
@@ -0,0 +1,197 @@
+package com.example.ImageHandling.utils;
+
+import com.example.ImageHandling.exception.RegexBudgetExceededException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the first match of every field regex of a layout with one pass over the text for all fields.
+ * <p>
+ * Most field regexes start with a literal label, e.g. {@code NIF:\s*(\d{9})}, so every match starts at an
+ * occurrence of that label. The labels of all fields are located in a single {@link AhoCorasick} pass, then each regex
+ * is only tried at the occurrences of its label, within a window of {@code anchorWindow} characters. A regex whose
+ * match may need more than the window is retried up to the end of the text, and regexes without a literal label
+ * fall back to {@link Matcher#find()}, so the result is always the one of {@link Matcher#find()}.
+ * </p>
+ * <p>
+ * Every regex runs on a {@link BudgetedCharSequence}, so a layout regex with catastrophic backtracking gives up after
+ * its budget instead of pinning a core.
+ * </p>
+ */
+public final class LayoutFieldMatcher {
+
+	// Shorter labels occur too often in a document to narrow the search
+	private static final int MIN_ANCHOR_LENGTH = 2;
+
+	private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+	private static final String QUANTIFIERS = "?*+{";
+
+	private static final String WORD_BOUNDARY = "\\b";
+
+	private final Pattern[] patterns;
+
+	// Keyword of the anchor of each pattern in the automaton, -1 when the pattern has no anchor
+	private final int[] anchorKeywords;
+
+	private final AhoCorasick anchors;
+
+	private final int anchorWindow;
+
+	/**
+	 * @param patterns     The field regexes. Null entries are allowed and never match.
+	 * @param anchorWindow The characters after the start of an anchor within which a match is looked for first.
+	 */
+	public LayoutFieldMatcher( List<Pattern> patterns, int anchorWindow ) {
+		this.patterns = patterns.toArray( new Pattern[0] );
+		this.anchorKeywords = new int[this.patterns.length];
+		this.anchorWindow = Math.max( 1, anchorWindow );
+
+		Map<String, Integer> keywordIndexes = new HashMap<>();
+		List<String> keywords = new ArrayList<>();
+		for ( int i = 0; i < this.patterns.length; i++ ) {
+			String anchor = this.patterns[i] == null ? null : literalPrefix( this.patterns[i] );
+			if ( anchor == null ) {
+				anchorKeywords[i] = -1;
+				continue;
+			}
+			anchorKeywords[i] = keywordIndexes.computeIfAbsent( anchor, keyword -> {
+				keywords.add( keyword );
+				return keywords.size() - 1;
+			} );
+		}
+		this.anchors = keywords.isEmpty() ? null : new AhoCorasick( keywords );
+	}
+
+	/**
+	 * Finds the first match of every regex in the text.
+	 *
+	 * @param text        The text to search.
+	 * @param fieldBudget The time each regex may run. A regex that exceeds it is reported and treated as not matching.
+	 * @param observer    Notified of the execution of each regex.
+	 * @return For each regex, in the order of the constructor, the first capturing group of its first match, or null
+	 * if it does not match.
+	 */
+	public String[] findFirstGroups( CharSequence text, Duration fieldBudget, FieldObserver observer ) {
+		String[] groups = new String[patterns.length];
+		int[][] occurrences = anchors != null ? anchors.findAll( text ) : null;
+		for ( int i = 0; i < patterns.length; i++ ) {
+			if ( patterns[i] == null ) {
+				continue;
+			}
+			long start = System.nanoTime();
+			boolean budgetExceeded = false;
+			try {
+				CharSequence budgetedText = BudgetedCharSequence.of( text, fieldBudget );
+				groups[i] = anchorKeywords[i] < 0
+					? findFirstGroup( patterns[i], budgetedText )
+					: findFirstGroupAtAnchors( patterns[i], budgetedText, occurrences[anchorKeywords[i]] );
+			}
+			catch ( RegexBudgetExceededException e ) {
+				budgetExceeded = true;
+			}
+			observer.onField( i, System.nanoTime() - start, budgetExceeded );
+		}
+		return groups;
+	}
+
+	/**
+	 * @return The number of regexes that are only tried at the occurrences of their anchor.
+	 */
+	public int getAnchoredCount() {
+		int anchoredCount = 0;
+		for ( int anchorKeyword : anchorKeywords ) {
+			if ( anchorKeyword >= 0 ) {
+				anchoredCount++;
+			}
+		}
+		return anchoredCount;
+	}
+
+	private static String findFirstGroup( Pattern pattern, CharSequence text ) {
+		Matcher matcher = pattern.matcher( text );
+		return matcher.find() ? matcher.group( 1 ) : null;
+	}
+
+	private String findFirstGroupAtAnchors( Pattern pattern, CharSequence text, int[] anchorStarts ) {
+		Matcher matcher = pattern.matcher( text );
+		// Lookarounds, boundaries and line anchors see the whole text, as with find()
+		matcher.useTransparentBounds( true );
+		matcher.useAnchoringBounds( false );
+		for ( int start : anchorStarts ) {
+			int windowEnd = (int) Math.min( text.length(), (long) start + anchorWindow );
+			matcher.region( start, windowEnd );
+			boolean matched = matcher.lookingAt();
+			if ( matcher.hitEnd() && windowEnd < text.length() ) {
+				// The window cut the match short or hid a longer one
+				matcher.region( start, text.length() );
+				matched = matcher.lookingAt();
+			}
+			if ( matched ) {
+				return matcher.group( 1 );
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Notified after each regex has run.
+	 */
+	@FunctionalInterface
+	public interface FieldObserver {
+
+		/**
+		 * @param fieldIndex     The index of the regex, in the order of the constructor.
+		 * @param elapsedNanos   The time the regex ran.
+		 * @param budgetExceeded Whether the regex was stopped because it exceeded its budget.
+		 */
+		void onField( int fieldIndex, long elapsedNanos, boolean budgetExceeded );
+	}
+
+	/**
+	 * Extracts the literal text every match of a regex starts with, e.g. {@code NIF:} for {@code NIF:\s*(\d{9})}.
+	 *
+	 * @return The literal prefix, or null if the regex has none long enough or may match without it.
+	 */
+	public static String literalPrefix( Pattern pattern ) {
+		String regex = pattern.pattern();
+		if ( pattern.flags() != 0 || regex.indexOf( '|' ) >= 0 ) {
+			return null;
+		}
+		int i = 0;
+		// Word boundaries are zero-width, the match still starts at the literal
+		while ( regex.startsWith( WORD_BOUNDARY, i ) ) {
+			i += WORD_BOUNDARY.length();
+		}
+		StringBuilder literal = new StringBuilder();
+		while ( i < regex.length() ) {
+			char c = regex.charAt( i );
+			if ( c == '\\' ) {
+				// Escaped letters and digits are classes, boundaries or back references
+				if ( i + 1 >= regex.length() || Character.isLetterOrDigit( regex.charAt( i + 1 ) ) ) {
+					break;
+				}
+				literal.append( regex.charAt( i + 1 ) );
+				i += 2;
+			}
+			else if ( METACHARACTERS.indexOf( c ) >= 0 ) {
+				break;
+			}
+			else {
+				literal.append( c );
+				i++;
+			}
+		}
+		// A quantifier applies to the last literal character only, which may then be absent
+		if ( i < regex.length() && QUANTIFIERS.indexOf( regex.charAt( i ) ) >= 0 && literal.length() > 0 ) {
+			literal.setLength( literal.length() - 1 );
+		}
+		return literal.length() >= MIN_ANCHOR_LENGTH ? literal.toString() : null;
+	}
+}
@@ -0,0 +1,114 @@
+package com.example.ImageHandling.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Arena of OpenCV {@link Mat}s whose native buffers are released together when the scope is closed.
+ * <p>
+ * The Java wrapper of a Mat is tiny, so the GC has no reason to finalize it while its native buffer keeps the process
+ * RSS growing. Every Mat created inside a repair or OCR call is tracked by a scope and released deterministically:
+ * </p>
+ * <pre>
+ * try ( MatScope scope = MatScope.open() ) {
+ *     Mat gray = scope.newMat();
+ *     Mat image = scope.track( Imgcodecs.imdecode( scope.track( new MatOfByte( bytes ) ), Imgcodecs.IMREAD_COLOR ) );
+ * }
+ * </pre>
+ * <p>
+ * The native bytes held by the open scopes are exposed in the {@code opencv.mat.live.bytes} gauge, and the tracked
+ * Mats in the {@code opencv.mat.allocations} counter.
+ * </p>
+ */
+public final class MatScope implements AutoCloseable {
+
+	private static final Set<MatScope> OPEN_SCOPES = ConcurrentHashMap.newKeySet();
+
+	private static final Counter ALLOCATIONS = Counter.builder( "opencv.mat.allocations" )
+		.description( "OpenCV Mats tracked by a MatScope" )
+		.register( Metrics.globalRegistry );
+
+	static {
+		Gauge.builder( "opencv.mat.live.bytes", OPEN_SCOPES, MatScope::liveBytes )
+			.description( "Native bytes held by the Mats of the open MatScopes" )
+			.baseUnit( "bytes" )
+			.register( Metrics.globalRegistry );
+		Gauge.builder( "opencv.mat.scopes.open", OPEN_SCOPES, Set::size )
+			.description( "Open MatScopes" )
+			.register( Metrics.globalRegistry );
+	}
+
+	private final List<Mat> mats = new ArrayList<>();
+
+	private boolean closed;
+
+	private MatScope() {
+	}
+
+	public static MatScope open() {
+		MatScope scope = new MatScope();
+		OPEN_SCOPES.add( scope );
+		return scope;
+	}
+
+	/**
+	 * @return A new empty Mat released when this scope is closed.
+	 */
+	public Mat newMat() {
+		return track( new Mat() );
+	}
+
+	/**
+	 * Tracks a Mat created elsewhere, e.g. returned by an OpenCV function, so it is released when this scope is closed.
+	 *
+	 * @param mat The Mat to track.
+	 * @return The same Mat.
+	 */
+	public synchronized <T extends Mat> T track( T mat ) {
+		if ( closed ) {
+			throw new IllegalStateException( "MatScope is already closed" );
+		}
+		mats.add( mat );
+		ALLOCATIONS.increment();
+		return mat;
+	}
+
+	/**
+	 * Releases the native buffers of every tracked Mat, in reverse order of tracking.
+	 */
+	@Override
+	public synchronized void close() {
+		if ( closed ) {
+			return;
+		}
+		closed = true;
+		OPEN_SCOPES.remove( this );
+		for ( int i = mats.size() - 1; i >= 0; i-- ) {
+			mats.get( i ).release();
+		}
+		mats.clear();
+	}
+
+	private synchronized long nativeBytes() {
+		long bytes = 0;
+		for ( Mat mat : mats ) {
+			bytes += mat.total() * mat.elemSize();
+		}
+		return bytes;
+	}
+
+	private static double liveBytes( Set<MatScope> scopes ) {
+		long bytes = 0;
+		for ( MatScope scope : scopes ) {
+			bytes += scope.nativeBytes();
+		}
+		return bytes;
+	}
+}
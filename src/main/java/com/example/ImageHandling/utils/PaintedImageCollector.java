@@ -0,0 +1,88 @@
+package com.example.ImageHandling.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.DrawObject;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the images a PDF page actually paints, at their native resolution.
+ * <p>
+ * The content stream of the page and of the forms it draws is walked for {@code Do} operators, so images that are only
+ * listed in resources inherited from the page tree or shared with other pages are not returned. An image painted more
+ * than once on the page is returned once. Stencil masks and images smaller than the minimum size, such as logos, are
+ * skipped.
+ * </p>
+ */
+@Slf4j
+public final class PaintedImageCollector extends PDFStreamEngine {
+
+	private final int minImageSize;
+
+	private final List<BufferedImage> images = new ArrayList<>();
+
+	private final Set<COSBase> paintedImages = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+	private PaintedImageCollector( int minImageSize ) {
+		this.minImageSize = minImageSize;
+		// Draws nested forms through showForm, which also guards against recursive forms
+		addOperator( new DrawObject() );
+	}
+
+	/**
+	 * @param page         The page.
+	 * @param minImageSize The minimum width and height of the returned images.
+	 * @return The images painted by the page, in painting order.
+	 * @throws IOException If the content stream of the page cannot be parsed.
+	 */
+	public static List<BufferedImage> collect( PDPage page, int minImageSize ) throws IOException {
+		PaintedImageCollector collector = new PaintedImageCollector( minImageSize );
+		collector.processPage( page );
+		return collector.images;
+	}
+
+	@Override
+	protected void processOperator( Operator operator, List<COSBase> operands ) throws IOException {
+		if ( OperatorName.DRAW_OBJECT.equals( operator.getName() ) && !operands.isEmpty() && operands.get( 0 ) instanceof COSName ) {
+			COSName name = (COSName) operands.get( 0 );
+			PDResources resources = getResources();
+			if ( resources != null && resources.isImageXObject( name ) ) {
+				addImage( resources, name );
+				return;
+			}
+		}
+		super.processOperator( operator, operands );
+	}
+
+	private void addImage( PDResources resources, COSName name ) {
+		try {
+			PDXObject xObject = resources.getXObject( name );
+			if ( !( xObject instanceof PDImageXObject ) || !paintedImages.add( xObject.getCOSObject() ) ) {
+				return;
+			}
+			PDImageXObject image = (PDImageXObject) xObject;
+			if ( !image.isStencil() && image.getWidth() >= minImageSize && image.getHeight() >= minImageSize ) {
+				images.add( image.getImage() );
+			}
+		}
+		catch ( IOException e ) {
+			log.warn( "Could not read embedded image {} of PDF page. exception message: {}", name.getName(), ExceptionUtils.getRootCauseMessage( e ) );
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.example.ImageHandling.utils;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.detector.MultiFinderPatternFinder;
+import com.google.zxing.qrcode.detector.FinderPattern;
+import com.google.zxing.qrcode.detector.FinderPatternInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Locates candidate QR code regions on a page before decoding it.
+ * <p>
+ * Finder patterns are searched on a downscaled grayscale copy of the page, which is much cheaper than
+ * decoding the whole page. The regions are returned in the coordinates of the original image, so the
+ * decoder and the repair can run on full-resolution crops only.
+ * </p>
+ */
+@Slf4j
+public final class QRCodeRegionLocator {
+
+	// Finder pattern centres sit 3.5 modules inside the symbol, and the quiet zone adds 4 more modules
+	private static final float REGION_PADDING_MODULES = 8f;
+
+	private static final Map<DecodeHintType, Object> LOCATOR_HINTS = Map.of( DecodeHintType.TRY_HARDER, Boolean.TRUE );
+
+	private QRCodeRegionLocator() {
+	}
+
+	/**
+	 * Finds the regions of the image that contain a QR code finder pattern triple.
+	 *
+	 * @param image        The full-resolution page image.
+	 * @param maxDimension The maximum width or height of the downscaled copy used for the search.
+	 * @return The candidate regions in the coordinates of {@code image}, or an empty list if none was found.
+	 */
+	public static List<Rectangle> locateQRCodeRegions( BufferedImage image, int maxDimension ) {
+		List<Rectangle> regions = new ArrayList<>();
+		double scale = Math.min( 1d, (double) maxDimension / Math.max( image.getWidth(), image.getHeight() ) );
+		BufferedImage searchImage = downscaleToGray( image, scale );
+
+		FinderPatternInfo[] finderPatterns;
+		try {
+			BitMatrix bitMatrix = new HybridBinarizer( new BufferedImageLuminanceSource( searchImage ) ).getBlackMatrix();
+			finderPatterns = new MultiFinderPatternFinder( bitMatrix, null ).findMulti( LOCATOR_HINTS );
+		}
+		catch ( NotFoundException e ) {
+			return regions;
+		}
+
+		Rectangle imageBounds = new Rectangle( 0, 0, image.getWidth(), image.getHeight() );
+		for ( FinderPatternInfo finderPattern : finderPatterns ) {
+			Rectangle region = toImageRegion( finderPattern, scale ).intersection( imageBounds );
+			if ( !region.isEmpty() && regions.stream().noneMatch( existing -> existing.contains( region ) ) ) {
+				regions.removeIf( region::contains );
+				regions.add( region );
+			}
+		}
+		log.debug( "Located {} candidate QR code regions on a {}x{} image", regions.size(), image.getWidth(), image.getHeight() );
+		return regions;
+	}
+
+	/**
+	 * Copies a region of the image into a new image that does not share the source raster.
+	 *
+	 * @param image  The source image.
+	 * @param region The region to copy, in the coordinates of {@code image}.
+	 * @return A standalone copy of the region.
+	 */
+	public static BufferedImage crop( BufferedImage image, Rectangle region ) {
+		int type = image.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_3BYTE_BGR : image.getType();
+		BufferedImage crop = new BufferedImage( region.width, region.height, type );
+		Graphics2D graphics = crop.createGraphics();
+		try {
+			graphics.drawImage( image, 0, 0, region.width, region.height,
+				region.x, region.y, region.x + region.width, region.y + region.height, null );
+		}
+		finally {
+			graphics.dispose();
+		}
+		return crop;
+	}
+
+	private static Rectangle toImageRegion( FinderPatternInfo finderPattern, double scale ) {
+		FinderPattern topLeft = finderPattern.getTopLeft();
+		FinderPattern topRight = finderPattern.getTopRight();
+		FinderPattern bottomLeft = finderPattern.getBottomLeft();
+		// The fourth corner completes the parallelogram spanned by the three finder patterns
+		float bottomRightX = topRight.getX() + bottomLeft.getX() - topLeft.getX();
+		float bottomRightY = topRight.getY() + bottomLeft.getY() - topLeft.getY();
+
+		float minX = Math.min( Math.min( topLeft.getX(), topRight.getX() ), Math.min( bottomLeft.getX(), bottomRightX ) );
+		float maxX = Math.max( Math.max( topLeft.getX(), topRight.getX() ), Math.max( bottomLeft.getX(), bottomRightX ) );
+		float minY = Math.min( Math.min( topLeft.getY(), topRight.getY() ), Math.min( bottomLeft.getY(), bottomRightY ) );
+		float maxY = Math.max( Math.max( topLeft.getY(), topRight.getY() ), Math.max( bottomLeft.getY(), bottomRightY ) );
+
+		float moduleSize = ( topLeft.getEstimatedModuleSize() + topRight.getEstimatedModuleSize() + bottomLeft.getEstimatedModuleSize() ) / 3f;
+		float padding = moduleSize * REGION_PADDING_MODULES;
+
+		int x = (int) Math.floor( ( minX - padding ) / scale );
+		int y = (int) Math.floor( ( minY - padding ) / scale );
+		int width = (int) Math.ceil( ( maxX + padding ) / scale ) - x;
+		int height = (int) Math.ceil( ( maxY + padding ) / scale ) - y;
+		return new Rectangle( x, y, width, height );
+	}
+
+	private static BufferedImage downscaleToGray( BufferedImage image, double scale ) {
+		int width = Math.max( 1, (int) Math.round( image.getWidth() * scale ) );
+		int height = Math.max( 1, (int) Math.round( image.getHeight() * scale ) );
+		BufferedImage gray = new BufferedImage( width, height, BufferedImage.TYPE_BYTE_GRAY );
+		Graphics2D graphics = gray.createGraphics();
+		try {
+			graphics.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR );
+			graphics.drawImage( image, 0, 0, width, height, null );
+		}
+		finally {
+			graphics.dispose();
+		}
+		return gray;
+	}
+}
@@ -5,6 +5,7 @@ package com.example.ImageHandling.utils;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 
+import com.example.ImageHandling.domains.types.QRCodeRepairStrategy;
 import lombok.extern.slf4j.Slf4j;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
@@ -17,144 +18,165 @@ public class QRCodeRepairUtil {
 
 
     public static BufferedImage repairQRCode(BufferedImage image) {
-        // Convert BufferedImage to Mat
-        Mat mat = bufferedImageToMat(image);
+        return repairQRCode(image, QRCodeRepairStrategy.FULL);
+    }
+
+    /**
+     * Repairs a QR code image with a single repair strategy.
+     *
+     * @param image    The image of the QR code.
+     * @param strategy The repair strategy to apply.
+     * @return The repaired binary image, or a 1x1 image if the image could not be converted.
+     */
+    public static BufferedImage repairQRCode(BufferedImage image, QRCodeRepairStrategy strategy) {
+        // Every intermediate Mat is released when the repair returns
+        try (MatScope scope = MatScope.open()) {
+            // Convert BufferedImage to Mat
+            Mat mat = bufferedImageToMat(scope, image);
+
+            // Return empty image if conversion failed
+            if (mat.empty()) {
+                log.error("Input image conversion to Mat failed, returning empty BufferedImage.");
+                return new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+            }
 
-        // Return empty image if conversion failed
-        if (mat.empty()) {
-            log.error("Input image conversion to Mat failed, returning empty BufferedImage.");
-            return new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+            // Convert to grayscale
+            Mat gray = scope.newMat();
+            Imgproc.cvtColor(mat, gray, Imgproc.COLOR_BGR2GRAY);
+
+            switch (strategy) {
+                case OTSU:
+                    return matToBufferedImage(otsuThreshold(scope, gray));
+                case ADAPTIVE:
+                    return matToBufferedImage(adaptiveThreshold(scope, gray));
+                case DENOISED:
+                    return matToBufferedImage(combinedThreshold(scope, denoise(scope, gray)));
+                default:
+                    return matToBufferedImage(fillAndClean(scope, gray));
+            }
         }
+    }
 
-        // Convert to grayscale
-        Mat gray = new Mat();
-        Imgproc.cvtColor(mat, gray, Imgproc.COLOR_BGR2GRAY);
+    private static Mat otsuThreshold(MatScope scope, Mat gray) {
+        Mat otsuBinary = scope.newMat();
+        Imgproc.threshold(gray, otsuBinary, 0, 255, Imgproc.THRESH_BINARY + Imgproc.THRESH_OTSU);
+        return otsuBinary;
+    }
 
-        // Apply contrast enhancement (less aggressive)
-        Mat contrast = new Mat();
-        {
+    private static Mat adaptiveThreshold(MatScope scope, Mat gray) {
+        Mat adaptiveBinary = scope.newMat();
+        Imgproc.adaptiveThreshold(gray, adaptiveBinary, 255,
+                Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 15, 3);
+        return adaptiveBinary;
+    }
 
-            gray.convertTo(contrast, -1, 1.2, -5); // Less aggressive contrast
-        }
+    private static Mat denoise(MatScope scope, Mat gray) {
+        // Apply contrast enhancement (less aggressive)
+        Mat contrast = scope.newMat();
+        gray.convertTo(contrast, -1, 1.2, -5); // Less aggressive contrast
 
         // Apply bilateral filter to reduce noise while preserving edges
-        Mat filtered = new Mat();
+        Mat filtered = scope.newMat();
         Imgproc.bilateralFilter(contrast, filtered, 9, 75, 75);
+        return filtered;
+    }
 
-        // Use multiple thresholding approaches and combine
-        Mat otsuBinary = new Mat();
-        Imgproc.threshold(filtered, otsuBinary, 0, 255, Imgproc.THRESH_BINARY + Imgproc.THRESH_OTSU);
-
-        Mat adaptiveBinary = new Mat();
-        Imgproc.adaptiveThreshold(filtered, adaptiveBinary, 255,
-                Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 15, 3);
-
+    private static Mat combinedThreshold(MatScope scope, Mat filtered) {
         // Combine the two binary images - take intersection of black regions
-        Mat combined = new Mat();
-        Core.bitwise_and(otsuBinary, adaptiveBinary, combined);
+        Mat combined = scope.newMat();
+        Core.bitwise_and(otsuThreshold(scope, filtered), adaptiveThreshold(scope, filtered), combined);
+        return combined;
+    }
+
+    private static Mat fillAndClean(MatScope scope, Mat gray) {
+        Mat filtered = denoise(scope, gray);
+        Mat combined = combinedThreshold(scope, filtered);
 
         // --- FILL FIRST ---
-        Mat filled = FillGrayAreas(filtered, combined);
+        Mat filled = FillGrayAreas(scope, filtered, combined);
 
         // --- THEN CLEAN ---
         // Fill gaps using morphological operations
-        Mat kernel1 = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2, 2));
-        Mat closed = new Mat();
+        Mat kernel1 = scope.track(Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2, 2)));
+        Mat closed = scope.newMat();
         Imgproc.morphologyEx(filled, closed, Imgproc.MORPH_CLOSE, kernel1);
 
         // Apply selective dilation to connect broken parts
-        Mat kernel2 = Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(3, 3));
-        Mat dilated = new Mat();
+        Mat kernel2 = scope.track(Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(3, 3)));
+        Mat dilated = scope.newMat();
         Imgproc.dilate(closed, dilated, kernel2, new Point(-1, -1), 1);
 
         // Apply selective erosion to restore the original size
-        Mat eroded = new Mat();
+        Mat eroded = scope.newMat();
         Imgproc.erode(dilated, eroded, kernel2, new Point(-1, -1), 1);
 
         // Final noise cleanup
-        Mat kernel3 = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2, 2));
-        Mat cleaned = new Mat();
+        Mat kernel3 = scope.track(Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2, 2)));
+        Mat cleaned = scope.newMat();
         Imgproc.morphologyEx(eroded, cleaned, Imgproc.MORPH_OPEN, kernel3);
-
-        return matToBufferedImage(cleaned);
+        return cleaned;
     }
 
 
-    // Gray area fill
-    private static Mat FillGrayAreas(Mat grayImage, Mat binaryImage) {
-        Mat result = binaryImage.clone();
-        int rows = grayImage.rows();
-        int cols = grayImage.cols();
-
-        byte[] grayData = new byte[rows * cols];
-        byte[] binaryData = new byte[rows * cols];
-        byte[] resultData = new byte[rows * cols];
-
-        grayImage.get(0, 0, grayData);
-        binaryImage.get(0, 0, binaryData);
-        result.get(0, 0, resultData);
-
-        // Only fill pixels that are moderately gray and have several black neighbors
-        for (int y = 1; y < rows - 1; y++) {
-            for (int x = 1; x < cols - 1; x++) {
-                int idx = y * cols + x;
-                int currentBinary = binaryData[idx] & 0xFF;
-                int currentGray = grayData[idx] & 0xFF;
-
-                // Less aggressive gray detection
-                if (currentBinary > 20 && currentGray < 180 && currentGray > 80) {
-                    // Check in a small neighborhood for black pixels
-                    int blackNeighbors = 0;
-                    int totalNeighbors = 0;
-                    for (int dy = -1; dy <= 1; dy++) {
-                        for (int dx = -1; dx <= 1; dx++) {
-                            if (dy == 0 && dx == 0) continue;
-                            int ny = y + dy;
-                            int nx = x + dx;
-                            if (ny >= 0 && ny < rows && nx >= 0 && nx < cols) {
-                                int nIdx = ny * cols + nx;
-                                totalNeighbors++;
-                                if ((binaryData[nIdx] & 0xFF) < 127) {
-                                    blackNeighbors++;
-                                }
-                            }
-                        }
-                    }
-                    // Only fill if at least 3 of 8 neighbors are black
-                    if (blackNeighbors >= 3) {
-                        resultData[idx] = 0;
-                    }
-                }
-            }
-        }
-
-        result.put(0, 0, resultData);
+    // Gray area fill: a moderately gray pixel becomes black when at least 3 of its 8 neighbours are black
+    static Mat FillGrayAreas(MatScope scope, Mat grayImage, Mat binaryImage) {
+        // 1 where the binary pixel is black (< 127), 0 elsewhere
+        Mat black = scope.newMat();
+        Imgproc.threshold(binaryImage, black, 126, 1, Imgproc.THRESH_BINARY_INV);
+
+        // Count the black pixels of the 8-neighbourhood of each pixel
+        Mat neighbourKernel = scope.track(Mat.ones(3, 3, CvType.CV_32F));
+        neighbourKernel.put(1, 1, 0);
+        Mat blackNeighbours = scope.newMat();
+        Imgproc.filter2D(black, blackNeighbours, CvType.CV_8U, neighbourKernel, new Point(-1, -1), 0, Core.BORDER_CONSTANT);
+
+        // Less aggressive gray detection: not black in the binary image, moderately gray in the gray image
+        Mat notBlack = scope.newMat();
+        Imgproc.threshold(binaryImage, notBlack, 20, 255, Imgproc.THRESH_BINARY);
+        Mat moderatelyGray = scope.newMat();
+        Core.inRange(grayImage, new Scalar(81), new Scalar(179), moderatelyGray);
+        Mat enoughBlackNeighbours = scope.newMat();
+        Imgproc.threshold(blackNeighbours, enoughBlackNeighbours, 2, 255, Imgproc.THRESH_BINARY);
+
+        Mat fillMask = scope.newMat();
+        Core.bitwise_and(notBlack, moderatelyGray, fillMask);
+        Core.bitwise_and(fillMask, enoughBlackNeighbours, fillMask);
+
+        // Border pixels are never filled
+        int rows = fillMask.rows();
+        int cols = fillMask.cols();
+        fillMask.row(0).setTo(Scalar.all(0));
+        fillMask.row(rows - 1).setTo(Scalar.all(0));
+        fillMask.col(0).setTo(Scalar.all(0));
+        fillMask.col(cols - 1).setTo(Scalar.all(0));
+
+        Mat result = scope.track(binaryImage.clone());
+        result.setTo(Scalar.all(0), fillMask);
         return result;
     }
 
-    private static Mat bufferedImageToMat(BufferedImage bi) {
+    private static Mat bufferedImageToMat(MatScope scope, BufferedImage bi) {
         try
         {
             int type = bi.getType();
-            if (type == BufferedImage.TYPE_INT_RGB ||
-                    type == BufferedImage.TYPE_INT_ARGB ||
-                    type == BufferedImage.TYPE_3BYTE_BGR) {
+            // Only TYPE_3BYTE_BGR is backed by BGR bytes, other types are converted first
+            if (type == BufferedImage.TYPE_3BYTE_BGR) {
                 byte[] pixels = ((DataBufferByte) bi.getRaster().getDataBuffer()).getData();
-                Mat mat = new Mat(bi.getHeight(), bi.getWidth(), CvType.CV_8UC3);
+                Mat mat = scope.track(new Mat(bi.getHeight(), bi.getWidth(), CvType.CV_8UC3));
                 mat.put(0, 0, pixels);
                 return mat;
             } else {
                 BufferedImage convertedImg = new BufferedImage(bi.getWidth(), bi.getHeight(),
                         BufferedImage.TYPE_3BYTE_BGR);
                 convertedImg.getGraphics().drawImage(bi, 0, 0, null);
-                return bufferedImageToMat(convertedImg);
+                return bufferedImageToMat(scope, convertedImg);
             }
         }
         catch (Exception e)
         {
             // Log the error and return an empty Mat
             log.error("Error converting BufferedImage to Mat: {}", e.getMessage());
-            return new Mat(); // Return empty Mat on exception
+            return scope.newMat(); // Return empty Mat on exception
         }
 
     }
@@ -0,0 +1,44 @@
+package com.example.ImageHandling.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces calls to a remote service evenly, at most {@code permitsPerSecond} per second.
+ * <p>
+ * Permits are handed out in order of arrival, each one interval after the previous one. Unused permits are not saved
+ * up, so an idle period is never followed by a burst.
+ * </p>
+ */
+public class RateLimiter {
+
+	private final long intervalNanos;
+
+	private long nextPermitAt = System.nanoTime();
+
+	public RateLimiter( double permitsPerSecond ) {
+		if ( permitsPerSecond <= 0 ) {
+			throw new IllegalArgumentException( "Permits per second must be positive" );
+		}
+		this.intervalNanos = (long) ( TimeUnit.SECONDS.toNanos( 1 ) / permitsPerSecond );
+	}
+
+	/**
+	 * Waits until the next permit is available.
+	 *
+	 * @return The time waited, in nanoseconds.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public long acquire() throws InterruptedException {
+		long waitNanos;
+		synchronized ( this ) {
+			long now = System.nanoTime();
+			long permitAt = Math.max( now, nextPermitAt );
+			nextPermitAt = permitAt + intervalNanos;
+			waitNanos = permitAt - now;
+		}
+		if ( waitNanos > 0 ) {
+			TimeUnit.NANOSECONDS.sleep( waitNanos );
+		}
+		return waitNanos;
+	}
+}
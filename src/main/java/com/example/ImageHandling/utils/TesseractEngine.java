@@ -0,0 +1,179 @@
+package com.example.ImageHandling.utils;
+
+import com.sun.jna.Pointer;
+import net.sourceforge.tess4j.ITessAPI.TessBaseAPI;
+import net.sourceforge.tess4j.TessAPI1;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.util.ImageIOHelper;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Initialized Tesseract engine that keeps its language model loaded between recognitions.
+ * <p>
+ * {@link net.sourceforge.tess4j.Tesseract#doOCR(BufferedImage)} initializes and disposes the native engine on every
+ * call, which reloads the {@code .traineddata} model each time. This engine wraps the native handle directly, so the
+ * model is loaded once. An engine is not thread-safe: it must be used by one thread at a time, e.g. through a pool.
+ * </p>
+ */
+public final class TesseractEngine implements AutoCloseable {
+
+	/**
+	 * Source resolution of images whose DPI is not known, e.g. uploaded photos. Tesseract then estimates it.
+	 */
+	public static final int UNKNOWN_RESOLUTION = 0;
+
+	private static final String CHAR_WHITELIST = "tessedit_char_whitelist";
+
+	private final TessBaseAPI handle;
+
+	private final String language;
+
+	private TesseractEngine( TessBaseAPI handle, String language ) {
+		this.handle = handle;
+		this.language = language;
+	}
+
+	/**
+	 * Loads the language model and initializes a native engine.
+	 *
+	 * @param datapath       The directory holding the {@code .traineddata} files.
+	 * @param language       The language code, e.g. {@code por} or {@code por+eng}.
+	 * @param ocrEngineMode  The OCR engine mode, e.g. 3 for the default engine.
+	 * @param pageSegMode    The page segmentation mode, e.g. 6 for a single uniform block of text.
+	 * @return The initialized engine.
+	 * @throws TesseractException If the model could not be loaded.
+	 */
+	public static TesseractEngine create( String datapath, String language, int ocrEngineMode, int pageSegMode ) throws TesseractException {
+		TessBaseAPI handle = TessAPI1.TessBaseAPICreate();
+		if ( TessAPI1.TessBaseAPIInit2( handle, datapath, language, ocrEngineMode ) != 0 ) {
+			TessAPI1.TessBaseAPIDelete( handle );
+			throw new TesseractException( "Could not initialize Tesseract for language " + language + " from " + datapath );
+		}
+		TessAPI1.TessBaseAPISetPageSegMode( handle, pageSegMode );
+		return new TesseractEngine( handle, language );
+	}
+
+	public String getLanguage() {
+		return language;
+	}
+
+	/**
+	 * Recognizes the text of an image.
+	 *
+	 * @param image The image to recognize.
+	 * @return The recognized text.
+	 */
+	public String recognize( BufferedImage image ) {
+		ByteBuffer pixels = ImageIOHelper.convertImageData( image );
+		int bitsPerPixel = image.getColorModel().getPixelSize();
+		int bytesPerLine = (int) Math.ceil( image.getWidth() * bitsPerPixel / 8.0 );
+		return recognize( pixels, image.getWidth(), image.getHeight(), bitsPerPixel / 8, bytesPerLine, UNKNOWN_RESOLUTION );
+	}
+
+	/**
+	 * Recognizes the text of an OpenCV image by handing its pixel buffer to Tesseract, without encoding it.
+	 * <p>
+	 * Color images are converted from the OpenCV BGR channel order to RGB. The native buffer is wrapped, not copied
+	 * into the Java heap.
+	 * </p>
+	 *
+	 * @param image The image, with 1, 3 or 4 channels of 8 bits.
+	 * @return The recognized text.
+	 */
+	public String recognize( Mat image ) {
+		return recognize( image, UNKNOWN_RESOLUTION );
+	}
+
+	/**
+	 * Recognizes the text of an OpenCV image of a known resolution, e.g. a PDF page rendered at a given DPI.
+	 *
+	 * @param image            The image, with 1, 3 or 4 channels of 8 bits.
+	 * @param sourceResolution The resolution of the image in DPI, or {@link #UNKNOWN_RESOLUTION}.
+	 * @return The recognized text.
+	 */
+	public String recognize( Mat image, int sourceResolution ) {
+		if ( image.empty() ) {
+			return "";
+		}
+		try ( MatScope scope = MatScope.open() ) {
+			Mat pixels = image;
+			if ( image.channels() == 3 ) {
+				pixels = scope.newMat();
+				Imgproc.cvtColor( image, pixels, Imgproc.COLOR_BGR2RGB );
+			}
+			else if ( image.channels() == 4 ) {
+				pixels = scope.newMat();
+				Imgproc.cvtColor( image, pixels, Imgproc.COLOR_BGRA2RGB );
+			}
+			else if ( !image.isContinuous() ) {
+				pixels = scope.track( image.clone() );
+			}
+			int bytesPerPixel = (int) pixels.elemSize();
+			int bytesPerLine = (int) ( pixels.step1() * pixels.elemSize1() );
+			ByteBuffer buffer = new Pointer( pixels.dataAddr() ).getByteBuffer( 0, (long) bytesPerLine * pixels.rows() );
+			return recognize( buffer, pixels.cols(), pixels.rows(), bytesPerPixel, bytesPerLine, sourceResolution );
+		}
+	}
+
+	/**
+	 * Recognizes the text of an OpenCV image, restricted to the given characters.
+	 *
+	 * @param image         The image, with 1, 3 or 4 channels of 8 bits.
+	 * @param charWhitelist The characters Tesseract may recognize, or null for any character.
+	 * @return The recognized text.
+	 */
+	public String recognize( Mat image, String charWhitelist ) {
+		if ( charWhitelist == null ) {
+			return recognize( image );
+		}
+		TessAPI1.TessBaseAPISetVariable( handle, CHAR_WHITELIST, charWhitelist );
+		try {
+			return recognize( image );
+		}
+		finally {
+			// Engines are pooled, the next user must not inherit the whitelist
+			TessAPI1.TessBaseAPISetVariable( handle, CHAR_WHITELIST, "" );
+		}
+	}
+
+	/**
+	 * Recognizes the text of raw pixels.
+	 *
+	 * @param pixels           The pixel rows, top to bottom.
+	 * @param width            The width of the image in pixels.
+	 * @param height           The height of the image in pixels.
+	 * @param bytesPerPixel    The bytes per pixel, 1 for grayscale and 3 for RGB.
+	 * @param bytesPerLine     The bytes of one pixel row, including any padding.
+	 * @param sourceResolution The resolution of the image in DPI, or {@link #UNKNOWN_RESOLUTION}.
+	 * @return The recognized text.
+	 */
+	public String recognize( ByteBuffer pixels, int width, int height, int bytesPerPixel, int bytesPerLine, int sourceResolution ) {
+		TessAPI1.TessBaseAPISetImage( handle, pixels, width, height, bytesPerPixel, bytesPerLine );
+		// Tesseract reads the resolution set after SetImage. Without it Tesseract warns and guesses the DPI
+		if ( sourceResolution > 0 ) {
+			TessAPI1.TessBaseAPISetSourceResolution( handle, sourceResolution );
+		}
+		Pointer text = TessAPI1.TessBaseAPIGetUTF8Text( handle );
+		try {
+			return text == null ? "" : text.getString( 0, StandardCharsets.UTF_8.name() );
+		}
+		finally {
+			if ( text != null ) {
+				TessAPI1.TessDeleteText( text );
+			}
+			// Drops the image and the recognition results, the language model stays loaded
+			TessAPI1.TessBaseAPIClear( handle );
+		}
+	}
+
+	@Override
+	public void close() {
+		TessAPI1.TessBaseAPIEnd( handle );
+		TessAPI1.TessBaseAPIDelete( handle );
+	}
+}
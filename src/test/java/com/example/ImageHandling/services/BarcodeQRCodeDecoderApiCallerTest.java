@@ -0,0 +1,157 @@
+package com.example.ImageHandling.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the decoder API client against a local stub of the decoder API.
+ */
+class BarcodeQRCodeDecoderApiCallerTest {
+
+	private static final String QR_CODE_TEXT = "A:500000000*B:999999990*C:PT*D:FT";
+
+	private static final String DECODED = "[{\"type\":\"QRCODE\",\"data\":\"" + QR_CODE_TEXT + "\"}]";
+
+	private static final byte[] IMAGE = { 1, 2, 3 };
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private volatile Duration responseDelay = Duration.ZERO;
+
+	private volatile int status = 200;
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	private BarcodeQRCodeDecoderApiCaller decoderApiCaller;
+
+	@BeforeEach
+	void startStub() throws IOException {
+		server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor( serverExecutor );
+		server.createContext( "/decode", this::decode );
+		server.start();
+	}
+
+	@AfterEach
+	void stopStub() {
+		if ( decoderApiCaller != null ) {
+			decoderApiCaller.disposeConnectionPool();
+		}
+		server.stop( 0 );
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	void decodesAndReusesPooledConnections() {
+		decoderApiCaller = caller( Duration.ofSeconds( 5 ), Duration.ofSeconds( 10 ), 5 );
+
+		for ( int i = 0; i < 10; i++ ) {
+			assertEquals( QR_CODE_TEXT, decoderApiCaller.callDecodeApi( IMAGE, "page.jpeg" ).block( Duration.ofSeconds( 5 ) ) );
+		}
+
+		assertEquals( 10, requests.get() );
+		// block() may return before the previous connection is back in the pool, so two connections can alternate
+		assertTrue( clientPorts.size() <= 2 );
+	}
+
+	@Test
+	void completesEmptyAfterTheResponseTimeout() {
+		decoderApiCaller = caller( Duration.ofMillis( 300 ), Duration.ofMillis( 100 ), 5 );
+		responseDelay = Duration.ofSeconds( 3 );
+
+		long start = System.nanoTime();
+		assertNull( decoderApiCaller.callDecodeApi( IMAGE, "page.jpeg" ).block( Duration.ofSeconds( 5 ) ) );
+
+		// The primary and the hedge both time out
+		assertTrue( Duration.ofNanos( System.nanoTime() - start ).compareTo( Duration.ofSeconds( 2 ) ) < 0 );
+		assertEquals( 1, meterRegistry.timer( "decoder.api.requests", "attempt", "primary", "outcome", "error" ).count() );
+		assertEquals( 1, meterRegistry.timer( "decoder.api.requests", "attempt", "hedge", "outcome", "error" ).count() );
+	}
+
+	@Test
+	void opensTheCircuitBreakerAfterConsecutiveFailures() {
+		decoderApiCaller = caller( Duration.ofSeconds( 5 ), Duration.ofMillis( 100 ), 2 );
+		status = 503;
+
+		for ( int i = 0; i < 3; i++ ) {
+			assertNull( decoderApiCaller.callDecodeApi( IMAGE, "page.jpeg" ).block( Duration.ofSeconds( 5 ) ) );
+		}
+
+		// The failed primary and hedge of the first call open the breaker, so the primaries and hedges of the next calls are rejected
+		assertEquals( 2, requests.get() );
+		assertEquals( 1, meterRegistry.get( "decoder.api.circuit.open" ).gauge().value() );
+		assertEquals( 4, meterRegistry.counter( "decoder.api.rejected", "reason", "circuit-open" ).count() );
+	}
+
+	@Test
+	void answersFromTheHedgedRequestWhenThePrimaryIsSlow() {
+		decoderApiCaller = caller( Duration.ofSeconds( 5 ), Duration.ofMillis( 200 ), 5 );
+		responseDelay = Duration.ofSeconds( 3 );
+		AtomicInteger calls = new AtomicInteger();
+		server.removeContext( "/decode" );
+		server.createContext( "/decode", exchange -> {
+			// Only the primary request is slow
+			if ( calls.incrementAndGet() > 1 ) {
+				responseDelay = Duration.ZERO;
+			}
+			decode( exchange );
+		} );
+
+		long start = System.nanoTime();
+		assertEquals( QR_CODE_TEXT, decoderApiCaller.callDecodeApi( IMAGE, "page.jpeg" ).block( Duration.ofSeconds( 5 ) ) );
+
+		assertTrue( Duration.ofNanos( System.nanoTime() - start ).compareTo( Duration.ofSeconds( 2 ) ) < 0 );
+		assertEquals( 1, meterRegistry.timer( "decoder.api.requests", "attempt", "hedge", "outcome", "decoded" ).count() );
+	}
+
+	private BarcodeQRCodeDecoderApiCaller caller( Duration responseTimeout, Duration hedgeDelay, int failureThreshold ) {
+		return new BarcodeQRCodeDecoderApiCaller( WebClient.builder(), meterRegistry, "http://127.0.0.1:" + server.getAddress().getPort(),
+			4, 4, Duration.ofSeconds( 1 ), responseTimeout, hedgeDelay, failureThreshold, Duration.ofMinutes( 1 ) );
+	}
+
+	private void decode( HttpExchange exchange ) throws IOException {
+		requests.incrementAndGet();
+		clientPorts.add( exchange.getRemoteAddress().getPort() );
+		exchange.getRequestBody().readAllBytes();
+		Duration delay = responseDelay;
+		if ( !delay.isZero() ) {
+			try {
+				Thread.sleep( delay.toMillis() );
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		byte[] body = ( status == 200 ? DECODED : "error" ).getBytes( StandardCharsets.UTF_8 );
+		exchange.getResponseHeaders().add( "Content-Type", status == 200 ? "application/json" : "text/plain" );
+		exchange.sendResponseHeaders( status, body.length );
+		exchange.getResponseBody().write( body );
+		exchange.close();
+	}
+}
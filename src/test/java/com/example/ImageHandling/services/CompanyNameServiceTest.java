@@ -0,0 +1,81 @@
+package com.example.ImageHandling.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CompanyNameServiceTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final ViesClient viesClient = mock( ViesClient.class );
+
+	private final CompanyRegistryService companyRegistryService = mock( CompanyRegistryService.class );
+
+	private final CompanyNameCache companyNameCache = mock( CompanyNameCache.class );
+
+	private final IssuerDirectoryService issuerDirectoryService = mock( IssuerDirectoryService.class );
+
+	private final ExecutorService viesLookupTaskExecutor = Executors.newSingleThreadExecutor();
+
+	private final CountDownLatch viesReleased = new CountDownLatch( 1 );
+
+	@AfterEach
+	void shutDown() {
+		viesReleased.countDown();
+		viesLookupTaskExecutor.shutdownNow();
+	}
+
+	@Test
+	void fallsBackToTheIssuerDirectoryWhenViesIsTooSlow() throws Exception {
+		when( companyRegistryService.findCompanyName( "123456789" ) ).thenReturn( Optional.empty() );
+		when( companyNameCache.get( "123456789" ) ).thenReturn( Optional.empty() );
+		when( issuerDirectoryService.findCompanyName( "123456789" ) ).thenReturn( Optional.of( "Directory Lda" ) );
+		when( viesClient.lookupCompanyName( "PT", "123456789" ) ).thenAnswer( invocation -> {
+			viesReleased.await();
+			return Optional.of( "Vies Lda" );
+		} );
+		CompanyNameService companyNameService = new CompanyNameService( viesClient, companyRegistryService, companyNameCache,
+			issuerDirectoryService, viesLookupTaskExecutor, meterRegistry, 1000, Duration.ofMillis( 200 ) );
+
+		long start = System.nanoTime();
+		CompletableFuture<String> first = companyNameService.fetchCompanyName( "PT123456789" );
+		CompletableFuture<String> coalesced = companyNameService.fetchCompanyName( "123456789" );
+
+		assertEquals( "Directory Lda", first.get( 5, TimeUnit.SECONDS ) );
+		assertEquals( "Directory Lda", coalesced.get( 5, TimeUnit.SECONDS ) );
+		assertTrue( System.nanoTime() - start < TimeUnit.SECONDS.toNanos( 2 ) );
+		assertEquals( 2, meterRegistry.counter( "vies.lookups", "result", "timed-out" ).count() );
+
+		// The lookup goes on and caches the VIES answer for the next invoices
+		viesReleased.countDown();
+		verify( companyNameCache, timeout( 5000 ) ).put( "123456789", "Vies Lda" );
+	}
+
+	@Test
+	void returnsTheViesAnswerWithinTheTimeout() throws Exception {
+		when( companyRegistryService.findCompanyName( "123456789" ) ).thenReturn( Optional.empty() );
+		when( companyNameCache.get( "123456789" ) ).thenReturn( Optional.empty() );
+		when( viesClient.lookupCompanyName( "PT", "123456789" ) ).thenReturn( Optional.of( "Vies Lda" ) );
+		CompanyNameService companyNameService = new CompanyNameService( viesClient, companyRegistryService, companyNameCache,
+			issuerDirectoryService, viesLookupTaskExecutor, meterRegistry, 1000, Duration.ofSeconds( 5 ) );
+
+		assertEquals( "Vies Lda", companyNameService.fetchCompanyName( "123456789" ).get( 5, TimeUnit.SECONDS ) );
+		assertEquals( 0, meterRegistry.counter( "vies.lookups", "result", "timed-out" ).count() );
+	}
+}
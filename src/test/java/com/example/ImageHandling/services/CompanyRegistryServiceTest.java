@@ -0,0 +1,61 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.utils.CompanyRegistryIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompanyRegistryServiceTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void servesThePreviousIndexUntilTheNewerExportIsImported() throws IOException {
+		Path indexFile = directory.resolve( "registry.idx" );
+		CompanyRegistryIndex.Builder builder = new CompanyRegistryIndex.Builder();
+		builder.add( "500000000", "Nome Antigo" );
+		builder.write( indexFile );
+		Files.setLastModifiedTime( indexFile, FileTime.from( Instant.now().minusSeconds( 3600 ) ) );
+		Path csvFile = directory.resolve( "registry.csv" );
+		Files.writeString( csvFile, "nif,name\nPT500000000,Nome Novo\n600000000,Empresa Açoriana\n12345,Inválido\n" );
+		CompanyRegistryService companyRegistryService = companyRegistryService( indexFile, csvFile );
+
+		companyRegistryService.loadIndex();
+
+		assertEquals( Optional.of( "Nome Antigo" ), companyRegistryService.findCompanyName( "500000000" ) );
+		assertEquals( Optional.empty(), companyRegistryService.findCompanyName( "600000000" ) );
+
+		companyRegistryService.importOutdatedIndex();
+
+		assertEquals( Optional.of( "Nome Novo" ), companyRegistryService.findCompanyName( "PT500000000" ) );
+		assertEquals( Optional.of( "Empresa Açoriana" ), companyRegistryService.findCompanyName( "600000000" ) );
+	}
+
+	@Test
+	void rebuildsAnIndexThatCannotBeLoaded() throws IOException {
+		Path csvFile = directory.resolve( "registry.csv" );
+		Files.writeString( csvFile, "nif,name\n500000000,Empresa\n" );
+		Path indexFile = directory.resolve( "registry.idx" );
+		Files.write( indexFile, new byte[] { 1, 2, 3 } );
+		CompanyRegistryService companyRegistryService = companyRegistryService( indexFile, csvFile );
+
+		companyRegistryService.loadIndex();
+		companyRegistryService.importOutdatedIndex();
+
+		assertEquals( Optional.of( "Empresa" ), companyRegistryService.findCompanyName( "500000000" ) );
+	}
+
+	private static CompanyRegistryService companyRegistryService( Path indexFile, Path csvFile ) {
+		return new CompanyRegistryService( new SimpleMeterRegistry(), indexFile.toString(), csvFile.toString(), "nif", "name", ',' );
+	}
+}
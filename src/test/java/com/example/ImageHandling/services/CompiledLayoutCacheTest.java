@@ -0,0 +1,135 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.CompiledLayout;
+import com.example.ImageHandling.domains.RegexPattern;
+import com.example.ImageHandling.domains.RegexPatternDeletedEvent;
+import com.example.ImageHandling.domains.repository.InvoicesRepository;
+import com.example.ImageHandling.domains.repository.RegexPatternRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CompiledLayoutCacheTest {
+
+	private static final LocalDateTime UPDATED_AT = LocalDateTime.of( 2024, 1, 1, 12, 0 );
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final CompiledLayoutCache compiledLayoutCache = new CompiledLayoutCache( meterRegistry, 2, Duration.ofMinutes( 1 ) );
+
+	// Layouts handed to the compiler, in compilation order
+	private final List<String> compiledLayoutIds = new ArrayList<>();
+
+	@Test
+	void reusesTheCompiledLayoutOfTheSameVersion() {
+		CompiledLayout first = compiledLayoutCache.get( layout( "a", UPDATED_AT ), this::compile );
+		CompiledLayout second = compiledLayoutCache.get( layout( "a", UPDATED_AT ), this::compile );
+
+		assertSame( first, second );
+		assertEquals( List.of( "a" ), compiledLayoutIds );
+		assertEquals( 1, meterRegistry.counter( "layout.cache", "result", "miss" ).count() );
+		assertEquals( 1, meterRegistry.counter( "layout.cache", "result", "hit" ).count() );
+	}
+
+	@Test
+	void recompilesWhenTheLayoutIsUpdated() {
+		CompiledLayout first = compiledLayoutCache.get( layout( "a", UPDATED_AT ), this::compile );
+		CompiledLayout updated = compiledLayoutCache.get( layout( "a", UPDATED_AT.plusSeconds( 1 ) ), this::compile );
+
+		assertNotSame( first, updated );
+		assertEquals( List.of( "a", "a" ), compiledLayoutIds );
+		assertSame( updated, compiledLayoutCache.get( layout( "a", UPDATED_AT.plusSeconds( 1 ) ), this::compile ) );
+	}
+
+	@Test
+	void compilesLayoutsWithoutAnIdEveryTime() {
+		compiledLayoutCache.get( layout( null, UPDATED_AT ), this::compile );
+		compiledLayoutCache.get( layout( null, UPDATED_AT ), this::compile );
+
+		assertEquals( 2, compiledLayoutIds.size() );
+	}
+
+	@Test
+	void evictsTheLayoutUpdatedThroughTheService() {
+		RegexPattern stored = layout( "a", UPDATED_AT );
+		RegexPattern previousVersion = new RegexPattern( stored );
+		RegexPatternRepository regexPatternRepository = mock( RegexPatternRepository.class );
+		when( regexPatternRepository.findById( "a" ) ).thenReturn( Optional.of( stored ) );
+		when( regexPatternRepository.save( any( RegexPattern.class ) ) ).thenAnswer( invocation -> invocation.getArgument( 0 ) );
+		RegexPatternService regexPatternService = new RegexPatternService( regexPatternRepository, mock( InvoicesRepository.class ),
+			mock( AuditLogService.class ), mock( ImageService.class ), mock( IssuerService.class ), mock( ApplicationEventPublisher.class ),
+			mock( AuthService.class ), mock( MongoTemplate.class ), compiledLayoutCache, mock( LayoutRegexProfiler.class ) );
+		compiledLayoutCache.get( previousVersion, this::compile );
+
+		RegexPattern renamed = new RegexPattern();
+		renamed.setName( "Renamed" );
+		regexPatternService.updatePattern( "a", renamed );
+
+		// Even an extraction that still holds the previous version compiles it again
+		compiledLayoutCache.get( previousVersion, this::compile );
+		assertEquals( List.of( "a", "a" ), compiledLayoutIds );
+	}
+
+	@Test
+	void evictsADeletedLayout() {
+		compiledLayoutCache.get( layout( "a", UPDATED_AT ), this::compile );
+
+		compiledLayoutCache.handlePatternDeletedEvent( new RegexPatternDeletedEvent( this, "a" ) );
+
+		compiledLayoutCache.get( layout( "a", UPDATED_AT ), this::compile );
+		assertEquals( List.of( "a", "a" ), compiledLayoutIds );
+	}
+
+	@Test
+	void recompilesAnExpiredLayout() throws InterruptedException {
+		CompiledLayoutCache shortLivedCache = new CompiledLayoutCache( meterRegistry, 2, Duration.ofMillis( 50 ) );
+		shortLivedCache.get( layout( "a", UPDATED_AT ), this::compile );
+		shortLivedCache.get( layout( "a", UPDATED_AT ), this::compile );
+
+		Thread.sleep( 100 );
+
+		shortLivedCache.get( layout( "a", UPDATED_AT ), this::compile );
+		assertEquals( List.of( "a", "a" ), compiledLayoutIds );
+	}
+
+	@Test
+	void keepsAtMostTheMaximumNumberOfLayouts() {
+		compiledLayoutCache.get( layout( "a", UPDATED_AT ), this::compile );
+		compiledLayoutCache.get( layout( "b", UPDATED_AT ), this::compile );
+		compiledLayoutCache.get( layout( "a", UPDATED_AT ), this::compile );
+
+		compiledLayoutCache.get( layout( "c", UPDATED_AT ), this::compile );
+
+		// The least recently used layout was evicted to make room for the third one
+		compiledLayoutCache.get( layout( "a", UPDATED_AT ), this::compile );
+		compiledLayoutCache.get( layout( "b", UPDATED_AT ), this::compile );
+		assertEquals( List.of( "a", "b", "c", "b" ), compiledLayoutIds );
+	}
+
+	private CompiledLayout compile( RegexPattern layout ) {
+		compiledLayoutIds.add( layout.getId() );
+		return new CompiledLayout( layout, List.of(), 512 );
+	}
+
+	private static RegexPattern layout( String id, LocalDateTime updatedAt ) {
+		RegexPattern layout = new RegexPattern();
+		layout.setId( id );
+		layout.setName( "Layout " + id );
+		layout.setUpdatedAt( updatedAt );
+		return layout;
+	}
+}
@@ -0,0 +1,169 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.FieldMapping;
+import com.example.ImageHandling.domains.InvoiceMetadata;
+import com.example.ImageHandling.domains.RegexPattern;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sourceforge.tess4j.TesseractException;
+import nu.pattern.OpenCV;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Mat;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExtractionServiceTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@Test
+	void keepsTheOtherPagesWhenTheOcrOfAPageFails() throws Exception {
+		ImageService imageService = mock( ImageService.class );
+		// Pages are recognized in page order on the calling thread: the OCR of the second page fails, the third succeeds
+		when( imageService.extractText( any( Mat.class ), any(), anyInt() ) )
+			.thenThrow( new TesseractException( "Tesseract failed" ) )
+			.thenReturn( "Total 12,50" );
+		ExtractionService extractionService = extractionService( imageService, Runnable::run );
+
+		InvoiceMetadata invoiceMetadata = extractionService.extractTextFromPDFWithLayout(
+			pdf( "Fatura FT-1 Data: 05-03-2024", "", "" ), layout( "L1" ) );
+
+		assertEquals( "FT-1", invoiceMetadata.getInvoiceNumber() );
+		assertEquals( LocalDate.of( 2024, 3, 5 ), invoiceMetadata.getInvoiceDate() );
+		assertEquals( "12,50", invoiceMetadata.getTotal() );
+		assertEquals( 1, meterRegistry.counter( "pdf.pages", "source", "ocr-failed" ).count() );
+	}
+
+	@Test
+	void concurrentExtractionsDoNotShareState() throws Exception {
+		ExtractionService extractionService = extractionService( mock( ImageService.class ), Runnable::run );
+		RegexPattern dayFirstLayout = layout( "L1" );
+		RegexPattern yearFirstLayout = layout( "L2" );
+		yearFirstLayout.setDateFormat( "yyyy/MM/dd" );
+		yearFirstLayout.setFieldMappings( List.of(
+			fieldMapping( "Invoice Number", "Fatura (\\S+)" ),
+			fieldMapping( "Invoice Date", "Date (\\S+)" ) ) );
+		MockMultipartFile[] pdfs = new MockMultipartFile[8];
+		for ( int i = 0; i < pdfs.length; i++ ) {
+			pdfs[i] = pdf( "Fatura PDF" + i + " page one", "Data: 0" + ( i + 1 ) + "-03-2024 page two" );
+		}
+
+		int threads = 8;
+		ExecutorService executorService = Executors.newFixedThreadPool( threads );
+		CountDownLatch start = new CountDownLatch( 1 );
+		List<Future<?>> results = new ArrayList<>();
+		try {
+			for ( int thread = 0; thread < threads; thread++ ) {
+				int threadIndex = thread;
+				results.add( executorService.submit( () -> {
+					start.await();
+					for ( int i = 0; i < 200; i++ ) {
+						int day = ( threadIndex * 31 + i ) % 28 + 1;
+						String dayText = String.format( "%02d", day );
+						InvoiceMetadata dayFirst = extractionService.populateInvoiceMetadata( "Fatura A" + day + " Data: " + dayText + "-04-2024", dayFirstLayout );
+						assertEquals( "A" + day, dayFirst.getInvoiceNumber() );
+						assertEquals( LocalDate.of( 2024, 4, day ), dayFirst.getInvoiceDate() );
+						InvoiceMetadata yearFirst = extractionService.populateInvoiceMetadata( "Fatura B" + day + " Date 2024/05/" + dayText, yearFirstLayout );
+						assertEquals( "B" + day, yearFirst.getInvoiceNumber() );
+						assertEquals( LocalDate.of( 2024, 5, day ), yearFirst.getInvoiceDate() );
+						if ( i % 10 == 0 ) {
+							// A layout extraction strips page by page, the next whole-document extraction on the thread must see every page again
+							int pdfIndex = ( threadIndex + i ) % pdfs.length;
+							InvoiceMetadata pdfMetadata = extractionService.extractTextFromPDFWithLayout( pdfs[pdfIndex], dayFirstLayout );
+							assertEquals( "PDF" + pdfIndex, pdfMetadata.getInvoiceNumber() );
+							assertEquals( LocalDate.of( 2024, 3, pdfIndex + 1 ), pdfMetadata.getInvoiceDate() );
+							String text = extractionService.extractTextFromPDF( pdfs[pdfIndex] );
+							assertTrue( text.contains( "PDF" + pdfIndex + " page one" ) && text.contains( "page two" ), text );
+						}
+					}
+					return null;
+				} ) );
+			}
+			start.countDown();
+			for ( Future<?> result : results ) {
+				result.get( 60, TimeUnit.SECONDS );
+			}
+		}
+		finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private ExtractionService extractionService( ImageService imageService, Executor ocrPageTaskExecutor ) {
+		return new ExtractionService( null, imageService, null, new CompiledLayoutCache( meterRegistry, 10, Duration.ofHours( 1 ) ), null,
+			ocrPageTaskExecutor, meterRegistry, 5, 72f, 512, Duration.ofSeconds( 1 ) );
+	}
+
+	private static RegexPattern layout( String id ) {
+		RegexPattern layout = new RegexPattern();
+		layout.setId( id );
+		layout.setDateFormat( "dd-MM-yyyy" );
+		layout.setUpdatedAt( LocalDateTime.now() );
+		layout.setFieldMappings( List.of(
+			fieldMapping( "Invoice Number", "Fatura (\\S+)" ),
+			fieldMapping( "Invoice Date", "Data: (\\S+)" ),
+			fieldMapping( "Total", "Total (\\S+)" ) ) );
+		return layout;
+	}
+
+	private static FieldMapping fieldMapping( String name, String regex ) {
+		FieldMapping fieldMapping = new FieldMapping();
+		fieldMapping.setName( name );
+		fieldMapping.setRegex( regex );
+		return fieldMapping;
+	}
+
+	/**
+	 * Builds a PDF with one page per text. An empty text gives a page without a text layer, which is OCRed.
+	 */
+	private static MockMultipartFile pdf( String... pageTexts ) throws IOException {
+		try ( PDDocument document = new PDDocument() ) {
+			for ( String pageText : pageTexts ) {
+				PDPage page = new PDPage();
+				document.addPage( page );
+				if ( pageText.isEmpty() ) {
+					continue;
+				}
+				try ( PDPageContentStream contentStream = new PDPageContentStream( document, page ) ) {
+					contentStream.beginText();
+					contentStream.setFont( PDType1Font.HELVETICA, 12 );
+					contentStream.newLineAtOffset( 50, 700 );
+					contentStream.showText( pageText );
+					contentStream.endText();
+				}
+			}
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			document.save( output );
+			return new MockMultipartFile( "file", "invoice.pdf", "application/pdf", output.toByteArray() );
+		}
+	}
+}
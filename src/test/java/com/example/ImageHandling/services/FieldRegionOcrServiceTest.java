@@ -0,0 +1,30 @@
+package com.example.ImageHandling.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FieldRegionOcrServiceTest {
+
+	@Test
+	void restrictsNumericDatesToDigitsAndTheSeparatorsOfTheFormat() {
+		assertEquals( "0123456789/", FieldRegionOcrService.dateCharWhitelist( "dd/MM/yyyy" ) );
+		assertEquals( "0123456789-", FieldRegionOcrService.dateCharWhitelist( "yyyy-MM-dd" ) );
+		assertEquals( "0123456789. ", FieldRegionOcrService.dateCharWhitelist( "d.M.yy uuuu" ) );
+	}
+
+	@Test
+	void keepsTheDefaultDateCharactersWithoutADateFormat() {
+		assertEquals( "0123456789/-.", FieldRegionOcrService.dateCharWhitelist( null ) );
+		assertEquals( "0123456789/-.", FieldRegionOcrService.dateCharWhitelist( " " ) );
+	}
+
+	@Test
+	void doesNotRestrictDatesWithTextualParts() {
+		assertNull( FieldRegionOcrService.dateCharWhitelist( "dd MMM yyyy" ) );
+		assertNull( FieldRegionOcrService.dateCharWhitelist( "dd MMMM yyyy" ) );
+		assertNull( FieldRegionOcrService.dateCharWhitelist( "d 'de' MM 'de' yyyy" ) );
+		assertNull( FieldRegionOcrService.dateCharWhitelist( "EEE, dd/MM/yyyy" ) );
+	}
+}
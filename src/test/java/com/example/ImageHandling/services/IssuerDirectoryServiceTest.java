@@ -0,0 +1,236 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.InvoiceMetadata;
+import com.example.ImageHandling.domains.Invoices;
+import com.example.ImageHandling.domains.IssuerDirectoryBackfill;
+import com.example.ImageHandling.domains.IssuerDirectoryEntry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IssuerDirectoryServiceTest {
+
+	private final MongoTemplate mongoTemplate = mock( MongoTemplate.class );
+
+	private final TestTransactionManager transactionManager = new TestTransactionManager();
+
+	private final IssuerDirectoryService issuerDirectoryService = new IssuerDirectoryService( mongoTemplate, transactionManager, false, Duration.ofHours( 1 ), 20 );
+
+	// Whether the invoice transaction was bound to the thread when each directory update ran
+	private final List<Boolean> updatedInTransaction = new ArrayList<>();
+
+	@Test
+	void updatesTheDirectoryAfterTheInvoiceTransactionCommits() {
+		recordUpdates();
+
+		new TransactionTemplate( transactionManager ).executeWithoutResult( status -> {
+			issuerDirectoryService.recordInvoice( metadata( "PT123456789", "Empresa Lda" ) );
+			issuerDirectoryService.recordRemoval( metadata( "987654321", "" ) );
+			assertEquals( List.of(), updatedInTransaction );
+		} );
+
+		assertEquals( List.of( false, false ), updatedInTransaction );
+	}
+
+	@Test
+	void skipsTheDirectoryUpdatesWhenTheInvoiceTransactionRollsBack() {
+		recordUpdates();
+
+		new TransactionTemplate( transactionManager ).executeWithoutResult( status -> {
+			issuerDirectoryService.recordInvoice( metadata( "123456789", "Empresa Lda" ) );
+			status.setRollbackOnly();
+		} );
+
+		verify( mongoTemplate, never() ).upsert( any( Query.class ), any( Update.class ), eq( IssuerDirectoryEntry.class ) );
+	}
+
+	@Test
+	void updatesTheDirectoryAtOnceWithoutTransaction() {
+		recordUpdates();
+
+		issuerDirectoryService.recordInvoice( metadata( "123456789", "Empresa Lda" ) );
+
+		assertEquals( List.of( false ), updatedInTransaction );
+	}
+
+	@Test
+	void searchesTheVatNumberOnlyForDigitsWithAnOptionalPTPrefix() {
+		assertEquals( "_id", searchedField( "500100" ) );
+		assertEquals( "_id", searchedField( "PT500100" ) );
+		assertEquals( "_id", searchedField( " PT5 " ) );
+		assertEquals( "searchName", searchedField( "PT Comunicações" ) );
+		assertEquals( "searchName", searchedField( "PTC Lda" ) );
+		assertEquals( "searchName", searchedField( "PT" ) );
+		assertEquals( "searchName", searchedField( "500 100" ) );
+	}
+
+	@Test
+	void setsTheAggregatedInvoiceCountsOfTheIssuers() {
+		IssuerDirectoryService backfillingService = new IssuerDirectoryService( mongoTemplate, transactionManager, true, Duration.ofHours( 1 ), 20 );
+		Date january = new Date( 1704067200000L );
+		Date march = new Date( 1709251200000L );
+		when( mongoTemplate.aggregate( any( Aggregation.class ), eq( Invoices.class ), eq( Document.class ) ) ).thenReturn(
+			new AggregationResults<>( List.of(
+				new Document( "_id", "PT123456789" ).append( "invoiceCount", 2 ).append( "lastSeen", march ),
+				new Document( "_id", "123456789" ).append( "invoiceCount", 3 ).append( "lastSeen", january ),
+				new Document( "_id", "987654321" ).append( "invoiceCount", 1 ) ), new Document() ),
+			new AggregationResults<>( List.of( new Document( "_id", "123456789" ).append( "companyName", "Empresa Lda" ) ), new Document() ) );
+		BulkOperations bulkOperations = mock( BulkOperations.class );
+		when( mongoTemplate.bulkOps( BulkOperations.BulkMode.UNORDERED, IssuerDirectoryEntry.class ) ).thenReturn( bulkOperations );
+
+		backfillingService.backfill();
+
+		ArgumentCaptor<Query> queries = ArgumentCaptor.forClass( Query.class );
+		ArgumentCaptor<Update> updates = ArgumentCaptor.forClass( Update.class );
+		verify( bulkOperations, times( 2 ) ).upsert( queries.capture(), updates.capture() );
+		verify( bulkOperations ).execute();
+		Map<Object, Document> updatesByVatNumber = new HashMap<>();
+		for ( int i = 0; i < 2; i++ ) {
+			updatesByVatNumber.put( queries.getAllValues().get( i ).getQueryObject().get( "_id" ), updates.getAllValues().get( i ).getUpdateObject() );
+		}
+		assertEquals( new Document( "$set", new Document( "invoiceCount", 5L ).append( "companyName", "Empresa Lda" ).append( "searchName", "empresa lda" ) )
+			.append( "$max", new Document( "lastSeen", march ) ), updatesByVatNumber.get( "123456789" ) );
+		assertEquals( new Document( "$set", new Document( "invoiceCount", 1L ) ), updatesByVatNumber.get( "987654321" ) );
+		verify( mongoTemplate ).updateFirst( any( Query.class ), any( Update.class ), eq( IssuerDirectoryBackfill.class ) );
+	}
+
+	@Test
+	void skipsTheBackfillClaimedByAnotherNode() {
+		IssuerDirectoryService backfillingService = new IssuerDirectoryService( mongoTemplate, transactionManager, true, Duration.ofHours( 1 ), 20 );
+		when( mongoTemplate.upsert( any( Query.class ), any( Update.class ), eq( IssuerDirectoryBackfill.class ) ) )
+			.thenThrow( new DuplicateKeyException( "E11000 duplicate key error" ) );
+
+		backfillingService.backfill();
+
+		verify( mongoTemplate, never() ).aggregate( any( Aggregation.class ), eq( Invoices.class ), eq( Document.class ) );
+	}
+
+	@Test
+	void claimsAnUnclaimedOrStaleBackfill() {
+		IssuerDirectoryService backfillingService = new IssuerDirectoryService( mongoTemplate, transactionManager, true, Duration.ofHours( 1 ), 20 );
+		when( mongoTemplate.aggregate( any( Aggregation.class ), eq( Invoices.class ), eq( Document.class ) ) )
+			.thenReturn( new AggregationResults<>( List.of(), new Document() ) );
+
+		backfillingService.backfill();
+
+		ArgumentCaptor<Query> claim = ArgumentCaptor.forClass( Query.class );
+		verify( mongoTemplate ).upsert( claim.capture(), any( Update.class ), eq( IssuerDirectoryBackfill.class ) );
+		Document claimQuery = claim.getValue().getQueryObject();
+		assertEquals( "issuer-directory", claimQuery.get( "_id" ) );
+		assertTrue( claimQuery.containsKey( "completedAt" ) );
+		assertEquals( List.of( "startedAt", "startedAt" ), claimQuery.getList( "$or", Document.class ).stream()
+			.map( condition -> condition.keySet().iterator().next() )
+			.collect( Collectors.toList() ) );
+	}
+
+	@Test
+	void releasesTheClaimWhenTheBackfillFails() {
+		IssuerDirectoryService backfillingService = new IssuerDirectoryService( mongoTemplate, transactionManager, true, Duration.ofHours( 1 ), 20 );
+		when( mongoTemplate.aggregate( any( Aggregation.class ), eq( Invoices.class ), eq( Document.class ) ) )
+			.thenThrow( new IllegalStateException( "Connection refused" ) );
+
+		backfillingService.backfill();
+
+		verify( mongoTemplate ).remove( any( Query.class ), eq( IssuerDirectoryBackfill.class ) );
+		verify( mongoTemplate, never() ).updateFirst( any( Query.class ), any( Update.class ), eq( IssuerDirectoryBackfill.class ) );
+	}
+
+	private String searchedField( String text ) {
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass( Query.class );
+		when( mongoTemplate.find( query.capture(), eq( IssuerDirectoryEntry.class ) ) ).thenReturn( List.of() );
+		issuerDirectoryService.search( text, 10 );
+		return query.getValue().getQueryObject().keySet().iterator().next();
+	}
+
+	private void recordUpdates() {
+		when( mongoTemplate.upsert( any( Query.class ), any( Update.class ), eq( IssuerDirectoryEntry.class ) ) ).thenAnswer( invocation -> {
+			updatedInTransaction.add( TransactionSynchronizationManager.hasResource( transactionManager ) );
+			return null;
+		} );
+		when( mongoTemplate.updateFirst( any( Query.class ), any( Update.class ), eq( IssuerDirectoryEntry.class ) ) ).thenAnswer( invocation -> {
+			updatedInTransaction.add( TransactionSynchronizationManager.hasResource( transactionManager ) );
+			return null;
+		} );
+	}
+
+	private static InvoiceMetadata metadata( String issuerVatNumber, String companyName ) {
+		InvoiceMetadata metadata = new InvoiceMetadata();
+		metadata.setIssuerVATNumber( issuerVatNumber );
+		metadata.setCompanyName( companyName );
+		return metadata;
+	}
+
+	/**
+	 * Binds a resource to the thread while a transaction is active, as the MongoTransactionManager binds its session.
+	 */
+	private static class TestTransactionManager extends AbstractPlatformTransactionManager {
+
+		@Override
+		protected Object doGetTransaction() {
+			return new Object();
+		}
+
+		@Override
+		protected boolean isExistingTransaction( Object transaction ) {
+			return TransactionSynchronizationManager.hasResource( this );
+		}
+
+		@Override
+		protected void doBegin( Object transaction, TransactionDefinition definition ) {
+			TransactionSynchronizationManager.bindResource( this, transaction );
+		}
+
+		@Override
+		protected Object doSuspend( Object transaction ) {
+			return TransactionSynchronizationManager.unbindResource( this );
+		}
+
+		@Override
+		protected void doResume( Object transaction, Object suspendedResources ) {
+			TransactionSynchronizationManager.bindResource( this, suspendedResources );
+		}
+
+		@Override
+		protected void doCommit( DefaultTransactionStatus status ) {
+		}
+
+		@Override
+		protected void doRollback( DefaultTransactionStatus status ) {
+		}
+
+		@Override
+		protected void doCleanupAfterCompletion( Object transaction ) {
+			TransactionSynchronizationManager.unbindResourceIfPossible( this );
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.FieldMapping;
+import com.example.ImageHandling.domains.RegexPattern;
+import com.example.ImageHandling.exception.IllegalDataException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayoutRegexProfilerTest {
+
+	private final LayoutRegexProfiler layoutRegexProfiler = new LayoutRegexProfiler( 20_000_000L );
+
+	@Test
+	void acceptsLinearAndQuadraticRegexes() {
+		assertDoesNotThrow( () -> layoutRegexProfiler.validate( layout(
+			fieldMapping( "Issuer VAT number", "NIF:\\s*(\\d{9})", "NIF: 123456789" ),
+			fieldMapping( "Total", "Total:?\\s*([\\d.,]+)", "Total: 12,50" ),
+			fieldMapping( "Invoice Number", "\\bFatura\\s+(\\S+)", "Fatura FT1" ),
+			fieldMapping( "Client", "(.*)Total", "x Total" ),
+			fieldMapping( "Site", null, null ) ) ) );
+	}
+
+	@Test
+	void rejectsCubicRegexes() {
+		IllegalDataException exception = assertThrows( IllegalDataException.class, () -> layoutRegexProfiler.validate( layout(
+			fieldMapping( "Invoice Number", "Fatura (\\S+)", "Fatura FT1" ),
+			fieldMapping( "Total", "(.*)(.*)(.*)X(\\d)", "aX1" ) ) ) );
+
+		assertTrue( exception.getMessage().contains( "Regex of field Total is too expensive" ), exception.getMessage() );
+	}
+
+	@Test
+	void rejectsRegexesWithoutCapturingGroup() {
+		IllegalDataException exception = assertThrows( IllegalDataException.class, () -> layoutRegexProfiler.validate( layout(
+			fieldMapping( "Issuer VAT number", "NIF:\\s*\\d{9}", "NIF: 123456789" ) ) ) );
+
+		assertTrue( exception.getMessage().contains( "must have a capturing group" ), exception.getMessage() );
+	}
+
+	@Test
+	void rejectsInvalidRegexes() {
+		IllegalDataException exception = assertThrows( IllegalDataException.class, () -> layoutRegexProfiler.validate( layout(
+			fieldMapping( "Total", "Total ([", "" ) ) ) );
+
+		assertTrue( exception.getMessage().contains( "Regex of field Total is invalid" ), exception.getMessage() );
+	}
+
+	private static RegexPattern layout( FieldMapping... fieldMappings ) {
+		RegexPattern layout = new RegexPattern();
+		layout.setFieldMappings( List.of( fieldMappings ) );
+		return layout;
+	}
+
+	private static FieldMapping fieldMapping( String name, String regex, String example ) {
+		FieldMapping fieldMapping = new FieldMapping();
+		fieldMapping.setName( name );
+		fieldMapping.setRegex( regex );
+		fieldMapping.setExample( example );
+		return fieldMapping;
+	}
+}
@@ -0,0 +1,145 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.DecodedQRCode;
+import com.example.ImageHandling.domains.InvoiceMetadata;
+import com.example.ImageHandling.domains.QRCodeDecodeCacheEntry;
+import com.example.ImageHandling.domains.repository.QRCodeDecodeCacheRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QRCodeDecodeCacheTest {
+
+	private static final String INVOICE = "A:500000000*B:999999990*C:PT*D:FT*E:N*F:20240101*G:FT A/1*H:0*N:0.00*O:10.00";
+
+	private final QRCodeDecodeCacheRepository qrCodeDecodeCacheRepository = mock( QRCodeDecodeCacheRepository.class );
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final QRCodeDecodeCache qrCodeDecodeCache = new QRCodeDecodeCache( qrCodeDecodeCacheRepository, mock( MongoTemplate.class ), meterRegistry, true, 2, 30 );
+
+	@Test
+	void returnsTheDecodedQRCodesOfTheSameContent() {
+		String contentHash = qrCodeDecodeCache.contentHash( new byte[] { 1, 2, 3 } );
+		qrCodeDecodeCache.put( contentHash, List.of( invoiceQRCode( "Empresa Lda" ) ) );
+
+		Optional<List<DecodedQRCode>> decodedQRCodes = qrCodeDecodeCache.get( qrCodeDecodeCache.contentHash( new byte[] { 1, 2, 3 } ) );
+
+		assertTrue( decodedQRCodes.isPresent() );
+		assertEquals( INVOICE, decodedQRCodes.get().get( 0 ).getText() );
+		assertEquals( "Empresa Lda", decodedQRCodes.get().get( 0 ).getInvoiceMetadata().getCompanyName() );
+		assertEquals( 1, meterRegistry.counter( "qrcode.cache", "result", "memory-hit" ).count() );
+		verify( qrCodeDecodeCacheRepository ).save( any( QRCodeDecodeCacheEntry.class ) );
+		verify( qrCodeDecodeCacheRepository, never() ).findById( any() );
+	}
+
+	@Test
+	void cachesOnlyFilesWithAnATInvoiceQRCode() {
+		qrCodeDecodeCache.put( "no-qr-code", List.of( new DecodedQRCode( "", null ) ) );
+		qrCodeDecodeCache.put( "other-qr-code", List.of( new DecodedQRCode( "https://example.com", null ) ) );
+		qrCodeDecodeCache.put( "mixed", List.of( new DecodedQRCode( "https://example.com", null ), invoiceQRCode( "Empresa Lda" ) ) );
+
+		assertEquals( Optional.empty(), qrCodeDecodeCache.get( "no-qr-code" ) );
+		assertEquals( Optional.empty(), qrCodeDecodeCache.get( "other-qr-code" ) );
+		assertEquals( 2, qrCodeDecodeCache.get( "mixed" ).orElseThrow().size() );
+		verify( qrCodeDecodeCacheRepository, times( 1 ) ).save( any( QRCodeDecodeCacheEntry.class ) );
+	}
+
+	@Test
+	void readsMongoOnAMemoryMissAndKeepsTheEntryInMemory() {
+		QRCodeDecodeCacheEntry entry = new QRCodeDecodeCacheEntry();
+		entry.setContentHash( "stored" );
+		entry.setDecodedQRCodes( List.of( invoiceQRCode( "Empresa Lda" ) ) );
+		when( qrCodeDecodeCacheRepository.findById( "stored" ) ).thenReturn( Optional.of( entry ) );
+
+		assertEquals( "Empresa Lda", qrCodeDecodeCache.get( "stored" ).orElseThrow().get( 0 ).getInvoiceMetadata().getCompanyName() );
+		assertTrue( qrCodeDecodeCache.get( "stored" ).isPresent() );
+
+		verify( qrCodeDecodeCacheRepository, times( 1 ) ).findById( "stored" );
+		assertEquals( 1, meterRegistry.counter( "qrcode.cache", "result", "mongo-hit" ).count() );
+		assertEquals( 1, meterRegistry.counter( "qrcode.cache", "result", "memory-hit" ).count() );
+	}
+
+	@Test
+	void readsMongoForEntriesEvictedFromMemory() {
+		qrCodeDecodeCache.put( "first", List.of( invoiceQRCode( "Primeira Lda" ) ) );
+		qrCodeDecodeCache.put( "second", List.of( invoiceQRCode( "Segunda Lda" ) ) );
+		qrCodeDecodeCache.put( "third", List.of( invoiceQRCode( "Terceira Lda" ) ) );
+		when( qrCodeDecodeCacheRepository.findById( any() ) ).thenReturn( Optional.empty() );
+
+		assertEquals( Optional.empty(), qrCodeDecodeCache.get( "first" ) );
+		assertTrue( qrCodeDecodeCache.get( "third" ).isPresent() );
+
+		verify( qrCodeDecodeCacheRepository ).findById( "first" );
+		assertEquals( 1, meterRegistry.counter( "qrcode.cache", "result", "miss" ).count() );
+	}
+
+	@Test
+	void fallsBackToAMissWhenMongoFails() {
+		when( qrCodeDecodeCacheRepository.findById( any() ) ).thenThrow( new IllegalStateException( "Connection refused" ) );
+		when( qrCodeDecodeCacheRepository.save( any() ) ).thenThrow( new IllegalStateException( "Connection refused" ) );
+
+		qrCodeDecodeCache.put( "cached", List.of( invoiceQRCode( "Empresa Lda" ) ) );
+
+		assertEquals( Optional.empty(), qrCodeDecodeCache.get( "unknown" ) );
+		assertTrue( qrCodeDecodeCache.get( "cached" ).isPresent() );
+	}
+
+	@Test
+	void storesCopiesOfTheInvoiceMetadata() {
+		DecodedQRCode decodedQRCode = invoiceQRCode( "Empresa Lda" );
+		qrCodeDecodeCache.put( "copied", List.of( decodedQRCode ) );
+
+		// The caller keeps labelling its metadata after the upload, e.g. with the batch process file name
+		decodedQRCode.getInvoiceMetadata().setCompanyName( "Outra Lda" );
+		decodedQRCode.getInvoiceMetadata().getItems().add( null );
+
+		InvoiceMetadata cachedMetadata = qrCodeDecodeCache.get( "copied" ).orElseThrow().get( 0 ).getInvoiceMetadata();
+		assertNotSame( decodedQRCode.getInvoiceMetadata(), cachedMetadata );
+		assertEquals( "Empresa Lda", cachedMetadata.getCompanyName() );
+		assertTrue( cachedMetadata.getItems().isEmpty() );
+	}
+
+	@Test
+	void cachesNothingWhenDisabled() {
+		QRCodeDecodeCache disabledCache = new QRCodeDecodeCache( qrCodeDecodeCacheRepository, mock( MongoTemplate.class ), meterRegistry, false, 2, 30 );
+
+		disabledCache.put( "disabled", List.of( invoiceQRCode( "Empresa Lda" ) ) );
+
+		assertEquals( Optional.empty(), disabledCache.get( "disabled" ) );
+		verify( qrCodeDecodeCacheRepository, never() ).save( any() );
+		verify( qrCodeDecodeCacheRepository, never() ).findById( any() );
+	}
+
+	@Test
+	void keepsTheTextOfQRCodesWithoutMetadata() {
+		qrCodeDecodeCache.put( "mixed", List.of( new DecodedQRCode( "https://example.com", null ), invoiceQRCode( "Empresa Lda" ) ) );
+
+		DecodedQRCode otherQRCode = qrCodeDecodeCache.get( "mixed" ).orElseThrow().get( 0 );
+		assertEquals( "https://example.com", otherQRCode.getText() );
+		assertNull( otherQRCode.getInvoiceMetadata() );
+	}
+
+	private static DecodedQRCode invoiceQRCode( String companyName ) {
+		InvoiceMetadata metadata = new InvoiceMetadata();
+		metadata.setIssuerVATNumber( "500000000" );
+		metadata.setCompanyName( companyName );
+		metadata.setItems( new ArrayList<>() );
+		return new DecodedQRCode( INVOICE, metadata );
+	}
+}
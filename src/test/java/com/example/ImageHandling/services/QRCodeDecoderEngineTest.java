@@ -0,0 +1,51 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.types.QRCodeRepairStrategy;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.qrcode.QRCodeWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QRCodeDecoderEngineTest {
+
+	private static final String FIRST_INVOICE = "A:500000000*B:999999990*C:PT*D:FT*E:N*F:20240101*G:FT A/1*H:0*N:0.00*O:10.00";
+
+	private static final String SECOND_INVOICE = "A:500000000*B:999999990*C:PT*D:FT*E:N*F:20240102*G:FT A/2*H:0*N:0.00*O:20.00";
+
+	private final QRCodeDecoderEngine engine = new QRCodeDecoderEngine( new SimpleMeterRegistry(), List.of( QRCodeRepairStrategy.values() ) );
+
+	@Test
+	void decodesEveryQRCodeOfAPageWithTheFastTier() throws WriterException {
+		BufferedImage page = new BufferedImage( 900, 500, BufferedImage.TYPE_BYTE_GRAY );
+		Graphics2D graphics = page.createGraphics();
+		graphics.setColor( Color.WHITE );
+		graphics.fillRect( 0, 0, page.getWidth(), page.getHeight() );
+		graphics.drawImage( qrCode( FIRST_INVOICE ), 40, 60, null );
+		graphics.drawImage( qrCode( SECOND_INVOICE ), 480, 60, null );
+		graphics.dispose();
+
+		List<String> qrCodeTexts = engine.decode( page, text -> text.startsWith( "A:" ), false );
+
+		assertEquals( Set.of( FIRST_INVOICE, SECOND_INVOICE ), Set.copyOf( qrCodeTexts ) );
+		assertEquals( 2, qrCodeTexts.size() );
+	}
+
+	@Test
+	void decodesASingleQRCode() throws WriterException {
+		assertEquals( List.of( FIRST_INVOICE ), engine.decode( qrCode( FIRST_INVOICE ), text -> text.startsWith( "A:" ), false ) );
+	}
+
+	private static BufferedImage qrCode( String text ) throws WriterException {
+		return MatrixToImageWriter.toBufferedImage( new QRCodeWriter().encode( text, BarcodeFormat.QR_CODE, 360, 360 ) );
+	}
+}
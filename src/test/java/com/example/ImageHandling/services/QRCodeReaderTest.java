@@ -0,0 +1,87 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.domains.BatchProcessFile;
+import com.example.ImageHandling.domains.dto.ExtractedDataDTO;
+import com.example.ImageHandling.domains.repository.BatchProcessFilesRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import reactor.core.publisher.Mono;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QRCodeReaderTest {
+
+	private static final String INVOICE = "A:500000000*B:999999990*C:PT*D:FT*E:N*F:20240101*G:FT A/1*H:0*I1:PT*I7:10.00*N:0.00*O:10.00";
+
+	private final BarcodeQRCodeDecoderApiCaller barcodeQRCodeDecoderApiCaller = mock( BarcodeQRCodeDecoderApiCaller.class );
+
+	private final QRCodeDecoderEngine qrCodeDecoderEngine = mock( QRCodeDecoderEngine.class );
+
+	private final QRCodeDecodeCache qrCodeDecodeCache = mock( QRCodeDecodeCache.class );
+
+	private final CompanyNameService companyNameService = mock( CompanyNameService.class );
+
+	private final QRCodeReader qrCodeReader = new QRCodeReader( mock( BatchProcessFilesRepository.class ), barcodeQRCodeDecoderApiCaller,
+		qrCodeDecoderEngine, companyNameService, qrCodeDecodeCache, Runnable::run, new SimpleMeterRegistry(),
+		false, 1, 150, 300, false, 1600, true, Duration.ofMillis( 300 ) );
+
+	@Test
+	void stopsWaitingForTheExternalDecoderAfterTheWaitTimeout() throws IOException {
+		AtomicBoolean cancelled = new AtomicBoolean();
+		when( qrCodeDecodeCache.get( any() ) ).thenReturn( Optional.empty() );
+		when( qrCodeDecoderEngine.decode( any(), any(), anyBoolean() ) ).thenReturn( List.of() );
+		when( barcodeQRCodeDecoderApiCaller.callDecodeApi( any(), any() ) ).thenReturn( Mono.<String>never().doOnCancel( () -> cancelled.set( true ) ) );
+
+		List<ExtractedDataDTO> extractedData = assertTimeoutPreemptively( Duration.ofSeconds( 5 ),
+			() -> qrCodeReader.processImage( blankImage(), new BatchProcessFile() ) );
+
+		// The empty placeholder keeps the file for manual review
+		assertEquals( 1, extractedData.size() );
+		assertEquals( "invoice.png", extractedData.get( 0 ).getInvoiceMetadata().getOriginalFileName() );
+		assertTrue( cancelled.get() );
+	}
+
+	@Test
+	void usesTheExternalDecoderAnswerWithinTheWaitTimeout() throws IOException {
+		when( qrCodeDecodeCache.get( any() ) ).thenReturn( Optional.empty() );
+		when( qrCodeDecoderEngine.decode( any(), any(), anyBoolean() ) ).thenReturn( List.of() );
+		when( barcodeQRCodeDecoderApiCaller.callDecodeApi( any(), any() ) ).thenReturn( Mono.just( INVOICE ).delayElement( Duration.ofMillis( 50 ) ) );
+		when( companyNameService.fetchCompanyName( "500000000" ) ).thenReturn( CompletableFuture.completedFuture( "Empresa Lda" ) );
+
+		List<ExtractedDataDTO> extractedData = qrCodeReader.processImage( blankImage(), new BatchProcessFile() );
+
+		assertEquals( 1, extractedData.size() );
+		assertEquals( "500000000", extractedData.get( 0 ).getInvoiceMetadata().getIssuerVATNumber() );
+		assertEquals( "Empresa Lda", extractedData.get( 0 ).getInvoiceMetadata().getCompanyName() );
+	}
+
+	private static MockMultipartFile blankImage() throws IOException {
+		BufferedImage image = new BufferedImage( 200, 200, BufferedImage.TYPE_INT_RGB );
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor( Color.WHITE );
+		graphics.fillRect( 0, 0, image.getWidth(), image.getHeight() );
+		graphics.dispose();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write( image, "png", output );
+		return new MockMultipartFile( "file", "invoice.png", "image/png", output.toByteArray() );
+	}
+}
@@ -0,0 +1,187 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.utils.TesseractEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sourceforge.tess4j.TesseractException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class TesseractEnginePoolTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	// Engines created by the fake factory, in creation order
+	private final List<TesseractEngine> createdEngines = new ArrayList<>();
+
+	private final List<String> createdLanguages = new ArrayList<>();
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	private final TesseractEnginePool pool = new TesseractEnginePool( mock( MongoTemplate.class ), meterRegistry, "/tessdata", 2, Duration.ofMillis( 200 ),
+		false, ( datapath, language, ocrEngineMode, pageSegMode ) -> createEngine( language ) );
+
+	@AfterEach
+	void shutDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void reusesAReleasedEngine() throws TesseractException {
+		TesseractEngine first = pool.withEngine( "por", engine -> engine );
+		TesseractEngine second = pool.withEngine( "por", engine -> engine );
+
+		assertSame( first, second );
+		assertEquals( 1, createdEngines.size() );
+		assertEquals( 1, meterRegistry.counter( "tesseract.pool.created", "language", "por" ).count() );
+	}
+
+	@Test
+	void createsEnginesUpToTheCapacityOfEachKey() throws Exception {
+		CountDownLatch held = new CountDownLatch( 2 );
+		CountDownLatch release = new CountDownLatch( 1 );
+		List<Future<TesseractEngine>> holders = new ArrayList<>();
+		for ( int i = 0; i < 2; i++ ) {
+			holders.add( executor.submit( () -> pool.withEngine( "por", engine -> hold( engine, held, release ) ) ) );
+		}
+		assertTrue( held.await( 5, TimeUnit.SECONDS ) );
+
+		// A key of another language or page segmentation mode has its own capacity
+		TesseractEngine english = pool.withEngine( "eng", engine -> engine );
+		TesseractEngine singleLine = pool.withEngine( "por", TesseractEnginePool.DEFAULT_OCR_ENGINE_MODE, 7, engine -> engine );
+		release.countDown();
+
+		assertNotSame( holders.get( 0 ).get(), holders.get( 1 ).get() );
+		assertNotSame( english, singleLine );
+		assertEquals( List.of( "por", "por", "eng", "por" ), createdLanguages );
+	}
+
+	@Test
+	void timesOutWhenEveryEngineOfTheKeyIsInUse() throws Exception {
+		CountDownLatch held = new CountDownLatch( 2 );
+		CountDownLatch release = new CountDownLatch( 1 );
+		for ( int i = 0; i < 2; i++ ) {
+			executor.submit( () -> pool.withEngine( "por", engine -> hold( engine, held, release ) ) );
+		}
+		assertTrue( held.await( 5, TimeUnit.SECONDS ) );
+
+		long start = System.nanoTime();
+		TesseractException exception = assertThrows( TesseractException.class, () -> pool.withEngine( "por", engine -> engine ) );
+		long waitedMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+		release.countDown();
+
+		assertTrue( exception.getMessage().contains( "Timed out" ), exception.getMessage() );
+		assertTrue( waitedMillis >= 150, "waited " + waitedMillis + " ms" );
+		assertEquals( 2, createdEngines.size() );
+	}
+
+	@Test
+	void handsAnEngineReleasedWhileWaiting() throws Exception {
+		CountDownLatch held = new CountDownLatch( 2 );
+		CountDownLatch release = new CountDownLatch( 1 );
+		for ( int i = 0; i < 2; i++ ) {
+			executor.submit( () -> pool.withEngine( "por", engine -> hold( engine, held, release ) ) );
+		}
+		assertTrue( held.await( 5, TimeUnit.SECONDS ) );
+
+		Future<TesseractEngine> waiting = executor.submit( () -> pool.withEngine( "por", engine -> engine ) );
+		release.countDown();
+
+		assertTrue( createdEngines.contains( waiting.get( 5, TimeUnit.SECONDS ) ) );
+		assertEquals( 2, createdEngines.size() );
+	}
+
+	@Test
+	void releasesTheEngineWhenTheRecognitionFails() throws TesseractException {
+		assertThrows( IllegalStateException.class, () -> pool.withEngine( "por", engine -> {
+			throw new IllegalStateException( "Recognition failed" );
+		} ) );
+
+		assertEquals( 0, gauge( "in-use" ) );
+		assertEquals( 1, gauge( "idle" ) );
+		assertSame( createdEngines.get( 0 ), pool.withEngine( "por", engine -> engine ) );
+	}
+
+	@Test
+	void releasesTheCapacityWhenAnEngineCannotBeCreated() throws TesseractException {
+		AtomicInteger attempts = new AtomicInteger();
+		TesseractEnginePool failingPool = new TesseractEnginePool( mock( MongoTemplate.class ), meterRegistry, "/tessdata", 1, Duration.ofMillis( 200 ),
+			false, ( datapath, language, ocrEngineMode, pageSegMode ) -> {
+			if ( attempts.incrementAndGet() == 1 ) {
+				throw new TesseractException( "Could not initialize Tesseract for language " + language );
+			}
+			return mock( TesseractEngine.class );
+		} );
+
+		assertThrows( TesseractException.class, () -> failingPool.withEngine( "por", engine -> engine ) );
+
+		// With a capacity of one engine, a leaked permit would time out instead of creating the engine
+		failingPool.withEngine( "por", engine -> engine );
+		assertEquals( 2, attempts.get() );
+	}
+
+	@Test
+	void gaugesTheIdleEnginesAndTheEnginesInUse() throws TesseractException {
+		pool.withEngine( "por", engine -> {
+			assertEquals( 1, gauge( "in-use" ) );
+			assertEquals( 0, gauge( "idle" ) );
+			return engine;
+		} );
+
+		assertEquals( 0, gauge( "in-use" ) );
+		assertEquals( 1, gauge( "idle" ) );
+		assertEquals( 1, meterRegistry.get( "tesseract.pool.wait" ).tag( "language", "por" ).timer().count() );
+	}
+
+	@Test
+	void closesTheIdleEngines() throws TesseractException {
+		pool.withEngine( "por", engine -> engine );
+		pool.withEngine( "eng", engine -> engine );
+
+		pool.closeEngines();
+
+		for ( TesseractEngine engine : createdEngines ) {
+			verify( engine ).close();
+		}
+	}
+
+	private synchronized TesseractEngine createEngine( String language ) {
+		TesseractEngine engine = mock( TesseractEngine.class );
+		createdEngines.add( engine );
+		createdLanguages.add( language );
+		return engine;
+	}
+
+	private double gauge( String state ) {
+		return meterRegistry.get( "tesseract.pool.engines" ).tag( "language", "por" ).tag( "state", state ).gauge().value();
+	}
+
+	private static TesseractEngine hold( TesseractEngine engine, CountDownLatch held, CountDownLatch release ) {
+		held.countDown();
+		try {
+			release.await( 5, TimeUnit.SECONDS );
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		return engine;
+	}
+}
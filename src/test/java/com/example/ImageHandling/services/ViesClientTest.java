@@ -0,0 +1,158 @@
+package com.example.ImageHandling.services;
+
+import com.example.ImageHandling.exception.ViesLookupException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the VIES client against a local stub of the VIES SOAP endpoint.
+ */
+class ViesClientTest {
+
+	private static final String CHECK_VAT_RESPONSE = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+		+ "<checkVatResponse xmlns=\"urn:ec.europa.eu:taxud:vies:services:checkVat:types\"><countryCode>PT</countryCode>"
+		+ "<vatNumber>500000000</vatNumber><requestDate>2024-01-01+01:00</requestDate><valid>true</valid><name>ACME LDA</name>"
+		+ "<address>RUA</address></checkVatResponse></soap:Body></soap:Envelope>";
+
+	private static final String FAULT_RESPONSE = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+		+ "<soap:Fault><faultcode>soap:Server</faultcode><faultstring>MS_UNAVAILABLE</faultstring></soap:Fault></soap:Body></soap:Envelope>";
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	@BeforeEach
+	void startStub() throws IOException {
+		server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor( serverExecutor );
+		server.createContext( "/vies", exchange -> respond( exchange, 200, CHECK_VAT_RESPONSE ) );
+		server.createContext( "/slow", exchange -> {
+			sleep( Duration.ofSeconds( 3 ) );
+			respond( exchange, 200, CHECK_VAT_RESPONSE );
+		} );
+		server.createContext( "/broken", exchange -> respond( exchange, 503, "Service Unavailable" ) );
+		server.createContext( "/fault", exchange -> respond( exchange, 500, FAULT_RESPONSE ) );
+		server.start();
+	}
+
+	@AfterEach
+	void stopStub() {
+		server.stop( 0 );
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	void reusesPooledPortsAcrossLookups() throws Exception {
+		ViesClient client = client( "/vies", Duration.ofSeconds( 5 ), 2, 5 );
+
+		for ( int i = 0; i < 10; i++ ) {
+			assertEquals( Optional.of( "ACME LDA" ), client.lookupCompanyName( "PT", "500000000" ) );
+		}
+		assertEquals( 1, meterRegistry.timer( "vies.client.port.created" ).count() );
+
+		ExecutorService callers = Executors.newFixedThreadPool( 8 );
+		try {
+			List<Future<Optional<String>>> lookups = new ArrayList<>();
+			for ( int i = 0; i < 40; i++ ) {
+				lookups.add( callers.submit( () -> client.lookupCompanyName( "PT", "500000000" ) ) );
+			}
+			for ( Future<Optional<String>> lookup : lookups ) {
+				assertEquals( Optional.of( "ACME LDA" ), lookup.get() );
+			}
+		}
+		finally {
+			callers.shutdownNow();
+		}
+		assertTrue( meterRegistry.timer( "vies.client.port.created" ).count() <= 2 );
+		assertEquals( 50, requests.get() );
+	}
+
+	@Test
+	void failsASlowLookupAfterTheReadTimeout() {
+		ViesClient client = client( "/slow", Duration.ofMillis( 300 ), 1, 5 );
+		// Binds the service and creates the only port up front, so the lookup below measures the read timeout alone
+		client.warmUp();
+
+		long start = System.nanoTime();
+		assertThrows( ViesLookupException.class, () -> client.lookupCompanyName( "PT", "500000000" ) );
+
+		assertTrue( Duration.ofNanos( System.nanoTime() - start ).compareTo( Duration.ofSeconds( 2 ) ) < 0 );
+	}
+
+	@Test
+	void opensTheCircuitBreakerAfterConsecutiveFailures() {
+		ViesClient client = client( "/broken", Duration.ofSeconds( 5 ), 2, 2 );
+
+		assertThrows( ViesLookupException.class, () -> client.lookupCompanyName( "PT", "500000000" ) );
+		assertThrows( ViesLookupException.class, () -> client.lookupCompanyName( "PT", "500000000" ) );
+		ViesLookupException rejected = assertThrows( ViesLookupException.class, () -> client.lookupCompanyName( "PT", "500000000" ) );
+
+		assertTrue( rejected.getMessage().contains( "circuit breaker is open" ) );
+		assertEquals( 2, requests.get() );
+		assertEquals( 1, meterRegistry.get( "vies.client.circuit.open" ).gauge().value() );
+		assertEquals( 1, meterRegistry.counter( "vies.client.rejected", "reason", "circuit-open" ).count() );
+	}
+
+	@Test
+	void keepsTheCircuitBreakerClosedOnSoapFaults() {
+		ViesClient client = client( "/fault", Duration.ofSeconds( 5 ), 2, 2 );
+
+		for ( int i = 0; i < 4; i++ ) {
+			assertThrows( ViesLookupException.class, () -> client.lookupCompanyName( "PT", "500000000" ) );
+		}
+
+		assertEquals( 4, requests.get() );
+		assertEquals( 0, meterRegistry.get( "vies.client.circuit.open" ).gauge().value() );
+	}
+
+	private ViesClient client( String path, Duration readTimeout, int maxPorts, int failureThreshold ) {
+		return new ViesClient( meterRegistry, new ClassPathResource( "wsdl/checkVatService.wsdl" ),
+			"http://127.0.0.1:" + server.getAddress().getPort() + path,
+			Duration.ofSeconds( 1 ), readTimeout, maxPorts, Duration.ofSeconds( 5 ), true, failureThreshold, Duration.ofMinutes( 1 ) );
+	}
+
+	private void respond( HttpExchange exchange, int status, String body ) throws IOException {
+		requests.incrementAndGet();
+		exchange.getRequestBody().readAllBytes();
+		byte[] bytes = body.getBytes( StandardCharsets.UTF_8 );
+		exchange.getResponseHeaders().add( "Content-Type", status == 503 ? "text/plain" : "text/xml; charset=utf-8" );
+		exchange.sendResponseHeaders( status, bytes.length );
+		exchange.getResponseBody().write( bytes );
+		exchange.close();
+	}
+
+	private static void sleep( Duration duration ) {
+		try {
+			Thread.sleep( duration.toMillis() );
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
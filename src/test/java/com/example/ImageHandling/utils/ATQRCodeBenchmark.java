@@ -0,0 +1,73 @@
+package com.example.ImageHandling.utils;
+
+import com.example.ImageHandling.domains.types.ATQRCodeField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an AT QR code with {@link ATQRCode} against the split and HashMap parsing it replaced: the invoice check, the
+ * fields stored with an invoice and the subtotal.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ATQRCodeBenchmark {
+
+	@Param( { "shop", "specification" } )
+	String payload;
+
+	private String text;
+
+	@Setup
+	public void setUp() {
+		text = payload.equals( "shop" ) ? ATQRCodeTest.SHOP_PAYLOAD : ATQRCodeTest.SPECIFICATION_PAYLOAD;
+	}
+
+	@Benchmark
+	public void parser( Blackhole blackhole ) {
+		ATQRCode qrCode = ATQRCode.parse( text );
+		blackhole.consume( qrCode.isInvoice() );
+		blackhole.consume( qrCode.get( ATQRCodeField.A ) );
+		blackhole.consume( qrCode.get( ATQRCodeField.B ) );
+		blackhole.consume( qrCode.get( ATQRCodeField.C ) );
+		blackhole.consume( qrCode.get( ATQRCodeField.F ) );
+		blackhole.consume( qrCode.get( ATQRCodeField.G ) );
+		blackhole.consume( qrCode.get( ATQRCodeField.H ) );
+		blackhole.consume( qrCode.get( ATQRCodeField.N ) );
+		blackhole.consume( qrCode.get( ATQRCodeField.O ) );
+		blackhole.consume( qrCode.subtotal() );
+	}
+
+	@Benchmark
+	public void splitAndHashMap( Blackhole blackhole ) {
+		// The invoice check split the text once and the labelling split it again
+		Map<String, String> invoiceCheck = ATQRCodeTest.legacyFields( text );
+		blackhole.consume( invoiceCheck.containsKey( "A" ) && invoiceCheck.containsKey( "F" ) );
+		Map<String, String> dataMap = ATQRCodeTest.legacyFields( text );
+		blackhole.consume( dataMap.get( "A" ) );
+		blackhole.consume( dataMap.get( "B" ) );
+		blackhole.consume( dataMap.get( "C" ) );
+		blackhole.consume( dataMap.get( "F" ) );
+		blackhole.consume( dataMap.get( "G" ) );
+		blackhole.consume( dataMap.get( "H" ) );
+		blackhole.consume( dataMap.get( "N" ) );
+		blackhole.consume( dataMap.get( "O" ) );
+		blackhole.consume( ATQRCodeTest.legacySubtotal( dataMap ) );
+	}
+}
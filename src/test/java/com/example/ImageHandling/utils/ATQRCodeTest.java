@@ -0,0 +1,210 @@
+package com.example.ImageHandling.utils;
+
+import com.example.ImageHandling.domains.SubtotalField;
+import com.example.ImageHandling.domains.types.ATQRCodeField;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ATQRCodeTest {
+
+	// Example of the AT specification, with the I, J and K groups
+	static final String SPECIFICATION_PAYLOAD = "A:123456789*B:999999990*C:PT*D:FT*E:N*F:20191231*G:FT AB2019/0035*H:CSDF7T5H-0035"
+		+ "*I1:PT*I2:12000.00*I3:15000.00*I4:900.00*I5:50000.00*I6:6500.00*I7:80000.00*I8:18400.00"
+		+ "*J1:PT-AC*J2:10000.00*J3:25000.56*J4:1000.02*J5:75000.00*J6:6750.00*J7:100000.00*J8:18000.00"
+		+ "*K1:PT-MA*K2:5000.00*K3:12500.00*K4:625.00*K5:25000.00*K6:3000.00*K7:40000.00*K8:8800.00"
+		+ "*L:100.00*M:25.00*N:64000.02*O:513600.58*P:100.00*Q:kLp0*R:9999*S:TB;PT00000000000000000000000;513500.58";
+
+	// Simplified invoice of a shop, mainland rates only
+	static final String SHOP_PAYLOAD = "A:500000000*B:999999990*C:PT*D:FS*E:N*F:20240315*G:FS 1/123*H:JJ3XY6BD-123"
+		+ "*I1:PT*I3:4.72*I5:1.89*I7:10.00*I8:2.30*N:2.84*O:19.45*Q:abcd*R:1234";
+
+	static final String[] PAYLOADS = {
+		SPECIFICATION_PAYLOAD,
+		SHOP_PAYLOAD,
+		"A:500000000*B:PT123456789*C:PT*D:NC*E:N*F:20231101*G:NC A/7*H:0*I1:PT*I7:-50.00*I8:-11.50*N:-11.50*O:-61.50*Q:x1y2*R:42",
+		"A:500000000*B:999999990*C:ES*D:FR*E:N*F:20220228*G:FR 2022/9*H:0*I1:PT*I2:100*N:0*O:100*Q:zz9A*R:7"
+	};
+
+	@Test
+	void matchesTheSplitParserOnRealPayloads() {
+		for ( String payload : PAYLOADS ) {
+			assertParity( payload );
+		}
+	}
+
+	@Test
+	void matchesTheSplitParserOnMutatedPayloads() {
+		Random random = new Random( 7 );
+		String[] insertions = { ":", "*", "::", "**", "A:1", "*I7:1e2*", "*J2:+3.5*", "*I2:", "*:", "F:", "I9:1", " " };
+		for ( int iteration = 0; iteration < 1000; iteration++ ) {
+			StringBuilder payload = new StringBuilder( PAYLOADS[random.nextInt( PAYLOADS.length )] );
+			for ( int mutations = random.nextInt( 4 ); mutations >= 0; mutations-- ) {
+				int position = random.nextInt( payload.length() + 1 );
+				if ( random.nextBoolean() && position < payload.length() ) {
+					payload.delete( position, Math.min( payload.length(), position + 1 + random.nextInt( 3 ) ) );
+				}
+				else {
+					payload.insert( position, insertions[random.nextInt( insertions.length )] );
+				}
+			}
+			assertParity( payload.toString() );
+		}
+	}
+
+	@Test
+	void readsEveryField() {
+		ATQRCode qrCode = ATQRCode.parse( SPECIFICATION_PAYLOAD );
+
+		assertTrue( qrCode.isInvoice() );
+		assertEquals( "123456789", qrCode.get( ATQRCodeField.A ) );
+		assertEquals( "999999990", qrCode.get( ATQRCodeField.B ) );
+		assertEquals( "PT", qrCode.get( ATQRCodeField.C ) );
+		assertEquals( "FT", qrCode.get( ATQRCodeField.D ) );
+		assertEquals( "N", qrCode.get( ATQRCodeField.E ) );
+		assertEquals( "20191231", qrCode.get( ATQRCodeField.F ) );
+		assertEquals( "FT AB2019/0035", qrCode.get( ATQRCodeField.G ) );
+		assertEquals( "CSDF7T5H-0035", qrCode.get( ATQRCodeField.H ) );
+		assertEquals( "PT", qrCode.get( ATQRCodeField.I1 ) );
+		assertEquals( "18400.00", qrCode.get( ATQRCodeField.I8 ) );
+		assertEquals( "PT-AC", qrCode.get( ATQRCodeField.J1 ) );
+		assertEquals( "25000.56", qrCode.get( ATQRCodeField.J3 ) );
+		assertEquals( "PT-MA", qrCode.get( ATQRCodeField.K1 ) );
+		assertEquals( "8800.00", qrCode.get( ATQRCodeField.K8 ) );
+		assertEquals( "100.00", qrCode.get( ATQRCodeField.L ) );
+		assertEquals( "25.00", qrCode.get( ATQRCodeField.M ) );
+		assertEquals( "64000.02", qrCode.get( ATQRCodeField.N ) );
+		assertEquals( "513600.58", qrCode.get( ATQRCodeField.O ) );
+		assertEquals( "100.00", qrCode.get( ATQRCodeField.P ) );
+		assertEquals( "kLp0", qrCode.get( ATQRCodeField.Q ) );
+		assertEquals( "9999", qrCode.get( ATQRCodeField.R ) );
+		assertEquals( "TB;PT00000000000000000000000;513500.58", qrCode.get( ATQRCodeField.S ) );
+		for ( ATQRCodeField field : ATQRCodeField.values() ) {
+			assertTrue( qrCode.has( field ), field.name() );
+		}
+	}
+
+	@Test
+	void sumsTheTaxableBasesOfEveryRegion() {
+		// I2 + I3 + I5 + I7, J2 + J3 + J5 + J7 and K2 + K3 + K5 + K7
+		assertEquals( new BigDecimal( "449500.56" ), ATQRCode.parse( SPECIFICATION_PAYLOAD ).subtotal() );
+		assertEquals( new BigDecimal( "16.61" ), ATQRCode.parse( SHOP_PAYLOAD ).subtotal() );
+		assertEquals( BigDecimal.ZERO, ATQRCode.parse( "A:500000000*F:20240315*O:0.00" ).subtotal() );
+	}
+
+	@Test
+	void parsesEveryDecimalNotationOfBigDecimal() {
+		assertEquals( new BigDecimal( "12.30" ), ATQRCode.parse( "I7:+12.30" ).subtotal() );
+		assertEquals( new BigDecimal( "1500" ), ATQRCode.parse( "I7:1.5e3" ).subtotal() );
+		assertEquals( new BigDecimal( "-0.50" ), ATQRCode.parse( "I7:-.50" ).subtotal() );
+		assertEquals( new BigDecimal( "12" ), ATQRCode.parse( "I7:12." ).subtotal() );
+		assertEquals( new BigDecimal( "123456789012345678901.25" ), ATQRCode.parse( "I2:123456789012345678900.00*I7:1.25" ).subtotal() );
+		assertEquals( new BigDecimal( "999999999999999999.99" ), ATQRCode.parse( "I7:999999999999999999.99" ).subtotal() );
+	}
+
+	@Test
+	void skipsMalformedTaxableBases() {
+		assertEquals( new BigDecimal( "10.00" ), ATQRCode.parse( "I2:abc*I3:1.2.3*I5:-*I7:10.00*J2:--1*J3:1,50*K2:." ).subtotal() );
+	}
+
+	@Test
+	void skipsTaxableBasesTooLargeToBeAmounts() {
+		// Adding these to 10.00 would expand them to hundreds of millions of digits
+		assertEquals( new BigDecimal( "10.00" ), ATQRCode.parse( "I2:1e999999999*I3:1e-999999999*I7:10.00" ).subtotal() );
+		assertEquals( BigDecimal.TEN.pow( 99 ), ATQRCode.parse( "I7:1e99" ).subtotal() );
+	}
+
+	@Test
+	void ignoresPairsWithoutValueOrWithAColonInTheValue() {
+		ATQRCode qrCode = ATQRCode.parse( "A:500000000*B:*C*D:F:T*E:N::*F:20240315*G::1*:X*H:" );
+
+		assertTrue( qrCode.isInvoice() );
+		assertNull( qrCode.get( ATQRCodeField.B ) );
+		assertNull( qrCode.get( ATQRCodeField.C ) );
+		assertNull( qrCode.get( ATQRCodeField.D ) );
+		assertEquals( "N", qrCode.get( ATQRCodeField.E ) );
+		assertNull( qrCode.get( ATQRCodeField.G ) );
+		assertNull( qrCode.get( ATQRCodeField.H ) );
+		assertFalse( ATQRCode.parse( "A:500000000*F:2024:03:15" ).isInvoice() );
+		assertFalse( ATQRCode.parse( "A:500000000*F:" ).isInvoice() );
+	}
+
+	@Test
+	void keepsTheLastValueOfADuplicateKey() {
+		ATQRCode qrCode = ATQRCode.parse( "A:111111111*F:20240101*A:222222222*I7:1.00*I7:2.50" );
+
+		assertEquals( "222222222", qrCode.get( ATQRCodeField.A ) );
+		assertEquals( new BigDecimal( "2.50" ), qrCode.subtotal() );
+	}
+
+	@Test
+	void detectsInvoices() {
+		assertTrue( ATQRCode.parse( "A:500000000*F:20240315" ).isInvoice() );
+		assertFalse( ATQRCode.parse( "A:500000000*G:FT 1/1" ).isInvoice() );
+		assertFalse( ATQRCode.parse( "https://example.com/invoice?id=1" ).isInvoice() );
+		assertFalse( ATQRCode.parse( "" ).isInvoice() );
+		assertFalse( ATQRCode.parse( null ).isInvoice() );
+	}
+
+	@Test
+	void resolvesOnlyTheKeysOfTheSpecification() {
+		for ( ATQRCodeField field : ATQRCodeField.values() ) {
+			String text = "x" + field.name() + "y";
+			assertEquals( field, ATQRCodeField.fromKey( text, 1, 1 + field.name().length() ) );
+		}
+		for ( String key : new String[] { "", "I", "J", "K", "T", "Z", "@", "[", "a", "i1", "I0", "I9", "J0", "K9", "L1", "H1", "A1", "II", "I10", "ABC" } ) {
+			assertNull( ATQRCodeField.fromKey( key, 0, key.length() ), key );
+		}
+	}
+
+	private static void assertParity( String payload ) {
+		Map<String, String> legacyFields = legacyFields( payload );
+		ATQRCode qrCode = ATQRCode.parse( payload );
+		assertEquals( legacyFields.containsKey( "A" ) && legacyFields.containsKey( "F" ), qrCode.isInvoice(), payload );
+		for ( ATQRCodeField field : ATQRCodeField.values() ) {
+			assertEquals( legacyFields.get( field.name() ), qrCode.get( field ), field + " of " + payload );
+		}
+		assertEquals( legacySubtotal( legacyFields ), qrCode.subtotal(), payload );
+	}
+
+	/**
+	 * The split and HashMap parsing the parser replaced.
+	 */
+	static Map<String, String> legacyFields( String qrCodeText ) {
+		Map<String, String> dataMap = new HashMap<>();
+		for ( String pair : qrCodeText.split( "\\*" ) ) {
+			String[] parts = pair.split( ":" );
+			if ( parts.length == 2 ) {
+				dataMap.put( parts[0], parts[1] );
+			}
+		}
+		return dataMap;
+	}
+
+	/**
+	 * The subtotal loop the parser replaced, over every {@link SubtotalField}.
+	 */
+	static BigDecimal legacySubtotal( Map<String, String> dataMap ) {
+		BigDecimal sum = BigDecimal.ZERO;
+		for ( SubtotalField subtotalField : SubtotalField.values() ) {
+			String value = dataMap.get( subtotalField.name() );
+			if ( value != null ) {
+				try {
+					sum = sum.add( new BigDecimal( value ) );
+				}
+				catch ( NumberFormatException e ) {
+					// Skipped, as the replaced loop did after logging
+				}
+			}
+		}
+		return sum;
+	}
+}
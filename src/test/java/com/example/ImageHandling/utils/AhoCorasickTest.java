@@ -0,0 +1,86 @@
+package com.example.ImageHandling.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AhoCorasickTest {
+
+	@Test
+	void findsOverlappingOccurrences() {
+		AhoCorasick automaton = new AhoCorasick( List.of( "he", "she", "his", "hers" ) );
+
+		int[][] occurrences = automaton.findAll( "ushers and his sheep" );
+
+		assertArrayEquals( new int[] { 2, 16 }, occurrences[0] );
+		assertArrayEquals( new int[] { 1, 15 }, occurrences[1] );
+		assertArrayEquals( new int[] { 11 }, occurrences[2] );
+		assertArrayEquals( new int[] { 2 }, occurrences[3] );
+	}
+
+	@Test
+	void reportsDuplicateKeywordsOncePerIndex() {
+		AhoCorasick automaton = new AhoCorasick( List.of( "NIF", "NIF" ) );
+
+		int[][] occurrences = automaton.findAll( "NIF: 1 NIF: 2" );
+
+		assertArrayEquals( new int[] { 0, 7 }, occurrences[0] );
+		assertArrayEquals( new int[] { 0, 7 }, occurrences[1] );
+	}
+
+	@Test
+	void findsNonAsciiKeywords() {
+		AhoCorasick automaton = new AhoCorasick( List.of( "Nº", "Descrição:", "€" ) );
+
+		int[][] occurrences = automaton.findAll( "Nº 12 Descrição: café 3,50 € Nº" );
+
+		assertArrayEquals( new int[] { 0, 29 }, occurrences[0] );
+		assertArrayEquals( new int[] { 6 }, occurrences[1] );
+		assertArrayEquals( new int[] { 27 }, occurrences[2] );
+	}
+
+	@Test
+	void rejectsEmptyKeywords() {
+		assertThrows( IllegalArgumentException.class, () -> new AhoCorasick( List.of( "Total", "" ) ) );
+	}
+
+	@Test
+	void findsTheSameOccurrencesAsIndexOf() {
+		Random random = new Random( 7 );
+		String alphabet = "abcç ";
+		for ( int iteration = 0; iteration < 500; iteration++ ) {
+			List<String> keywords = new ArrayList<>();
+			for ( int i = random.nextInt( 6 ) + 1; i > 0; i-- ) {
+				keywords.add( randomText( random, alphabet, random.nextInt( 4 ) + 1 ) );
+			}
+			String text = randomText( random, alphabet, random.nextInt( 80 ) );
+
+			int[][] occurrences = new AhoCorasick( keywords ).findAll( text );
+
+			for ( int i = 0; i < keywords.size(); i++ ) {
+				assertArrayEquals( indexesOf( text, keywords.get( i ) ), occurrences[i], "keyword " + keywords.get( i ) + ", text " + text );
+			}
+		}
+	}
+
+	private static String randomText( Random random, String alphabet, int length ) {
+		StringBuilder text = new StringBuilder( length );
+		for ( int i = 0; i < length; i++ ) {
+			text.append( alphabet.charAt( random.nextInt( alphabet.length() ) ) );
+		}
+		return text.toString();
+	}
+
+	private static int[] indexesOf( String text, String keyword ) {
+		List<Integer> indexes = new ArrayList<>();
+		for ( int index = text.indexOf( keyword ); index >= 0; index = text.indexOf( keyword, index + 1 ) ) {
+			indexes.add( index );
+		}
+		return indexes.stream().mapToInt( Integer::intValue ).toArray();
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.ImageHandling.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoundedCacheTest {
+
+	@Test
+	void evictsTheLeastRecentlyUsedEntry() {
+		BoundedCache<String, String> cache = new BoundedCache<>( 2, Duration.ofMinutes( 1 ) );
+		cache.put( "a", "1" );
+		cache.put( "b", "2" );
+		cache.get( "a" );
+
+		cache.put( "c", "3" );
+
+		assertEquals( Optional.of( "1" ), cache.get( "a" ) );
+		assertEquals( Optional.empty(), cache.get( "b" ) );
+		assertEquals( Optional.of( "3" ), cache.get( "c" ) );
+		assertEquals( 2, cache.size() );
+	}
+
+	@Test
+	void replacesTheValueOfAKeyWithoutEvicting() {
+		BoundedCache<String, String> cache = new BoundedCache<>( 2, Duration.ofMinutes( 1 ) );
+		cache.put( "a", "1" );
+		cache.put( "b", "2" );
+
+		cache.put( "a", "3" );
+
+		assertEquals( Optional.of( "3" ), cache.get( "a" ) );
+		assertEquals( Optional.of( "2" ), cache.get( "b" ) );
+	}
+
+	@Test
+	void dropsExpiredEntries() throws InterruptedException {
+		BoundedCache<String, String> cache = new BoundedCache<>( 10, Duration.ofMillis( 50 ) );
+		cache.put( "a", "1" );
+
+		assertEquals( Optional.of( "1" ), cache.get( "a" ) );
+		Thread.sleep( 100 );
+
+		assertEquals( Optional.empty(), cache.get( "a" ) );
+		assertEquals( 0, cache.size() );
+	}
+
+	@Test
+	void expiresAnEntryAfterItsOwnTimeToLive() throws InterruptedException {
+		BoundedCache<String, String> cache = new BoundedCache<>( 10, Duration.ofMillis( 50 ) );
+		cache.put( "short", "1", Duration.ofMillis( 50 ) );
+		cache.put( "long", "2", Duration.ofMinutes( 1 ) );
+
+		Thread.sleep( 100 );
+
+		assertEquals( Optional.empty(), cache.get( "short" ) );
+		assertEquals( Optional.of( "2" ), cache.get( "long" ) );
+	}
+
+	@Test
+	void keepsAnEntryWhoseExpiryOverflowsTheNanoTime() {
+		BoundedCache<String, String> cache = new BoundedCache<>( 10, Duration.ofNanos( Long.MAX_VALUE - 1 ) );
+		cache.put( "a", "1" );
+
+		assertEquals( Optional.of( "1" ), cache.get( "a" ) );
+	}
+
+	@Test
+	void invalidatesAndClearsEntries() {
+		BoundedCache<String, String> cache = new BoundedCache<>( 10, Duration.ofMinutes( 1 ) );
+		cache.put( "a", "1" );
+		cache.put( "b", "2" );
+
+		cache.invalidate( "a" );
+		assertEquals( Optional.empty(), cache.get( "a" ) );
+		assertEquals( 1, cache.size() );
+
+		cache.clear();
+		assertEquals( 0, cache.size() );
+	}
+
+	@Test
+	void rejectsNullValues() {
+		BoundedCache<String, String> cache = new BoundedCache<>( 10, Duration.ofMinutes( 1 ) );
+
+		assertThrows( NullPointerException.class, () -> cache.put( "a", null ) );
+	}
+}
@@ -0,0 +1,117 @@
+package com.example.ImageHandling.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompanyRegistryIndexTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void findsTheWrittenNames() throws IOException {
+		CompanyRegistryIndex.Builder builder = new CompanyRegistryIndex.Builder();
+		assertTrue( builder.add( "509999999", "Último Lda" ) );
+		assertTrue( builder.add( "PT500000000", " Empresa Açoriana, S.A. " ) );
+		assertTrue( builder.add( "100000001", "Café São João 北京" ) );
+
+		assertEquals( 3, builder.write( directory.resolve( "registry.idx" ) ) );
+		CompanyRegistryIndex index = CompanyRegistryIndex.open( directory.resolve( "registry.idx" ) );
+
+		assertEquals( 3, index.size() );
+		assertEquals( "Empresa Açoriana, S.A.", index.find( "500000000" ) );
+		assertEquals( "Empresa Açoriana, S.A.", index.find( "PT500000000" ) );
+		assertEquals( "Último Lda", index.find( "509999999" ) );
+		assertEquals( "Café São João 北京", index.find( "PT100000001" ) );
+		assertNull( index.find( "500000001" ) );
+		assertNull( index.find( "099999999" ) );
+		assertNull( index.find( "ES500000000" ) );
+		assertNull( index.find( "50000000" ) );
+		assertNull( index.find( null ) );
+	}
+
+	@Test
+	void keepsTheLastNameOfADuplicateNif() throws IOException {
+		CompanyRegistryIndex.Builder builder = new CompanyRegistryIndex.Builder();
+		builder.add( "500000000", "Nome Antigo" );
+		builder.add( "600000000", "Outra Empresa" );
+		builder.add( "PT500000000", "Nome Novo" );
+
+		assertEquals( 2, builder.write( directory.resolve( "registry.idx" ) ) );
+		CompanyRegistryIndex index = CompanyRegistryIndex.open( directory.resolve( "registry.idx" ) );
+
+		assertEquals( 2, index.size() );
+		assertEquals( "Nome Novo", index.find( "500000000" ) );
+		assertEquals( "Outra Empresa", index.find( "600000000" ) );
+	}
+
+	@Test
+	void skipsInvalidRows() {
+		CompanyRegistryIndex.Builder builder = new CompanyRegistryIndex.Builder();
+
+		assertFalse( builder.add( "12345678", "Curto" ) );
+		assertFalse( builder.add( "PT12345678X", "Letra" ) );
+		assertFalse( builder.add( "ES123456789", "Espanha" ) );
+		assertFalse( builder.add( "123456789", "  " ) );
+		assertFalse( builder.add( "123456789", null ) );
+		assertEquals( 0, builder.size() );
+	}
+
+	@Test
+	void writesManyNifsInOrder() throws IOException {
+		CompanyRegistryIndex.Builder builder = new CompanyRegistryIndex.Builder();
+		for ( int i = 5000; i > 0; i-- ) {
+			builder.add( String.valueOf( 500000000 + i * 7 ), "Empresa " + i );
+		}
+
+		builder.write( directory.resolve( "registry.idx" ) );
+		CompanyRegistryIndex index = CompanyRegistryIndex.open( directory.resolve( "registry.idx" ) );
+
+		assertEquals( 5000, index.size() );
+		for ( int i = 1; i <= 5000; i++ ) {
+			assertEquals( "Empresa " + i, index.find( String.valueOf( 500000000 + i * 7 ) ) );
+			assertNull( index.find( String.valueOf( 500000000 + i * 7 + 1 ) ) );
+		}
+	}
+
+	@Test
+	void opensAnEmptyIndex() throws IOException {
+		new CompanyRegistryIndex.Builder().write( directory.resolve( "registry.idx" ) );
+
+		CompanyRegistryIndex index = CompanyRegistryIndex.open( directory.resolve( "registry.idx" ) );
+
+		assertEquals( 0, index.size() );
+		assertNull( index.find( "500000000" ) );
+	}
+
+	@Test
+	void rejectsTruncatedAndForeignFiles() throws IOException {
+		CompanyRegistryIndex.Builder builder = new CompanyRegistryIndex.Builder();
+		builder.add( "500000000", "Empresa Açoriana" );
+		builder.add( "600000000", "Outra Empresa" );
+		Path file = directory.resolve( "registry.idx" );
+		builder.write( file );
+		byte[] bytes = Files.readAllBytes( file );
+
+		// Cut in the header, the keys, the offsets and the names
+		for ( int length : new int[] { 0, 10, 20, 28, bytes.length - 1 } ) {
+			Path truncated = directory.resolve( "truncated-" + length + ".idx" );
+			Files.write( truncated, Arrays.copyOf( bytes, length ) );
+			assertThrows( IOException.class, () -> CompanyRegistryIndex.open( truncated ), "length " + length );
+		}
+		Path foreign = directory.resolve( "registry.csv" );
+		Files.writeString( foreign, "nif,name\n500000000,Empresa\n" );
+		assertThrows( IOException.class, () -> CompanyRegistryIndex.open( foreign ) );
+	}
+}
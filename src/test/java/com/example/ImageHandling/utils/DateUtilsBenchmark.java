@@ -0,0 +1,87 @@
+package com.example.ImageHandling.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing an invoice date with the cached formatters of {@link DateUtils} against building a formatter per locale on
+ * every call and catching the exception of each locale that does not match. English dates match the first locale,
+ * Spanish the second and Portuguese the third.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateUtilsBenchmark {
+
+    private static final List<Locale> LOCALES = Arrays.asList(
+        new Locale("en", "UK"),
+        new Locale("es", "ES"),
+        new Locale("pt", "PT"),
+        Locale.ITALIAN
+    );
+
+    @Param({"en", "es", "pt"})
+    String language;
+
+    private String dateStr;
+
+    private String formatDate;
+
+    @Setup
+    public void setUp() {
+        switch (language) {
+            case "en":
+                dateStr = "15 March 2024";
+                formatDate = "d MMMM yyyy";
+                break;
+            case "es":
+                dateStr = "15 de marzo de 2024";
+                formatDate = "d 'de' MMMM 'de' yyyy";
+                break;
+            default:
+                dateStr = "15 de março de 2024";
+                formatDate = "d 'de' MMMM 'de' yyyy";
+        }
+    }
+
+    @Benchmark
+    public LocalDate cachedFormatters() {
+        return DateUtils.toLocalDate(dateStr, formatDate);
+    }
+
+    /**
+     * The parsing DateUtils replaced, without the error log of each locale that does not match.
+     */
+    @Benchmark
+    public LocalDate formatterPerCall() {
+        for (Locale locale : LOCALES) {
+            try {
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(formatDate, locale);
+                return LocalDate.parse(dateStr, formatter);
+            } catch (DateTimeParseException e) {
+                // Tries the next locale
+            }
+        }
+        throw new IllegalArgumentException("Cannot convert the date " + dateStr + " using the date format " + formatDate);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.ImageHandling.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DateUtilsTest {
+
+    private static final LocalDate MARCH_15 = LocalDate.of(2024, 3, 15);
+
+    @Test
+    void parsesTheMonthNamesOfEachLocale() {
+        assertEquals(Optional.of(MARCH_15), DateUtils.parseDate("15 de março de 2024", "d 'de' MMMM 'de' yyyy"));
+        assertEquals(Optional.of(MARCH_15), DateUtils.parseDate("15 de marzo de 2024", "d 'de' MMMM 'de' yyyy"));
+        assertEquals(Optional.of(MARCH_15), DateUtils.parseDate("15 March 2024", "d MMMM yyyy"));
+        assertEquals(Optional.of(LocalDate.of(2023, 12, 1)), DateUtils.parseDate("1 de dezembro de 2023", "d 'de' MMMM 'de' yyyy"));
+        assertEquals(Optional.of(LocalDate.of(2023, 8, 31)), DateUtils.parseDate("31 de agosto de 2023", "d 'de' MMMM 'de' yyyy"));
+        assertEquals(Optional.empty(), DateUtils.parseDate("15 de Mars de 2024", "d 'de' MMMM 'de' yyyy"));
+    }
+
+    @Test
+    void parsesNumericDates() {
+        assertEquals(MARCH_15, DateUtils.toLocalDate("15-03-2024", "dd-MM-yyyy"));
+        assertEquals(MARCH_15, DateUtils.toLocalDate("2024/03/15", "yyyy/MM/dd"));
+        assertEquals(MARCH_15, DateUtils.formatDate2("15.03.2024", "dd.MM.yyyy"));
+        assertEquals("15/03/2024", DateUtils.formatDate("2024-03-15", "yyyy-MM-dd"));
+    }
+
+    @Test
+    void requiresTheWholeTextToMatch() {
+        assertEquals(Optional.empty(), DateUtils.parseDate("15-03-2024 10:30", "dd-MM-yyyy"));
+        assertEquals(Optional.empty(), DateUtils.parseDate("15-03-2024.", "dd-MM-yyyy"));
+        assertEquals(Optional.empty(), DateUtils.parseDate("15 de março de 2024 (Lisboa)", "d 'de' MMMM 'de' yyyy"));
+        assertEquals(Optional.empty(), DateUtils.parseDate("15-03", "dd-MM-yyyy"));
+        assertEquals(Optional.empty(), DateUtils.parseDate("", "dd-MM-yyyy"));
+        assertEquals(Optional.empty(), DateUtils.parseDate(null, "dd-MM-yyyy"));
+    }
+
+    @Test
+    void resolvesDatesSmartly() {
+        // The default SMART resolver moves the day to the end of a shorter month and rejects days past 31
+        assertEquals(LocalDate.of(2024, 4, 30), DateUtils.toLocalDate("31-04-2024", "dd-MM-yyyy"));
+        assertEquals(LocalDate.of(2023, 2, 28), DateUtils.toLocalDate("29-02-2023", "dd-MM-yyyy"));
+        assertEquals(LocalDate.of(2024, 2, 29), DateUtils.toLocalDate("29-02-2024", "dd-MM-yyyy"));
+        assertEquals(Optional.empty(), DateUtils.parseDate("32-01-2024", "dd-MM-yyyy"));
+        assertEquals(Optional.empty(), DateUtils.parseDate("15-13-2024", "dd-MM-yyyy"));
+    }
+
+    @Test
+    void doesNotResolveADateFormatWithoutAYear() {
+        assertEquals(Optional.empty(), DateUtils.parseDate("15-03", "dd-MM"));
+        assertThrows(IllegalArgumentException.class, () -> DateUtils.toLocalDate("15-03", "dd-MM"));
+        assertThrows(IllegalArgumentException.class, () -> DateUtils.formatDate("15-03", "dd-MM"));
+    }
+
+    @Test
+    void rejectsAnInvalidDateFormat() {
+        assertThrows(IllegalArgumentException.class, () -> DateUtils.parseDate("15-03-2024", "dd-MM-yyyy {"));
+        assertThrows(IllegalArgumentException.class, () -> DateUtils.toLocalDate("15-03-2024", "dd-MM-bbbb"));
+        assertThrows(IllegalArgumentException.class, () -> DateUtils.formatDate("15-03-2024", "dd-MM-yyyy '"));
+    }
+
+    @Test
+    void parsesTheDateOfAQRCode() {
+        assertEquals(MARCH_15, DateUtils.formatDate("20240315"));
+        assertEquals(LocalDate.of(2019, 12, 31), DateUtils.formatDate("20191231"));
+        assertNull(DateUtils.formatDate("2024-03-15"));
+        assertNull(DateUtils.formatDate("202403151"));
+        assertNull(DateUtils.formatDate("20241315"));
+        assertNull(DateUtils.formatDate(""));
+        assertNull(DateUtils.formatDate(null));
+    }
+
+    @Test
+    void boundsTheCachedDateFormats() {
+        for (int i = 0; i < DateUtils.MAX_CACHED_DATE_FORMATS + 50; i++) {
+            String formatDate = "dd-MM-yyyy '" + i + "'";
+            assertEquals(MARCH_15, DateUtils.toLocalDate("15-03-2024 " + i, formatDate));
+        }
+
+        assertEquals(DateUtils.MAX_CACHED_DATE_FORMATS, DateUtils.FORMATTERS.size());
+        // Formats past the bound are still parsed, with formatters that are not cached
+        assertTrue(DateUtils.parseDate("15-03-2024 x", "dd-MM-yyyy 'x'").isPresent());
+        assertEquals(DateUtils.MAX_CACHED_DATE_FORMATS, DateUtils.FORMATTERS.size());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.ImageHandling.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The anchored single pass of a 20-field layout against one {@link Matcher#find()} per field, on the text of a
+ * multi-page invoice whose labels are on its last page.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class LayoutFieldMatcherBenchmark {
+
+	private static final String[] LAYOUT_REGEXES = {
+		"NIF:\\s*(\\d{9})", "Total:?\\s*([\\d.,]+)", "Data\\s+(\\d{2}-\\d{2}-\\d{4})", "\\bFatura\\s+(\\S+)", "IVA (\\d+)(?=%)",
+		"Cliente: (\\w+)", "Subtotal\\s+(\\d+)", "Ref\\.? ?(\\d+)", "Nº (\\d+)", "Morada: (.+)\\n", "Desconto:\\s*(\\d+)",
+		"Vencimento\\s+(\\S+)", "Moeda: (\\w+)", "Email: (\\S+@\\S+)", "Telefone: (\\d+)", "Site: (\\S+)", "Código Postal (\\d{4}-\\d{3})",
+		"País: (\\w+)", "Pago em (\\S+)", "Estado: (\\w+)"
+	};
+
+	@Param( { "1", "40" } )
+	int pages;
+
+	private final List<Pattern> patterns = new ArrayList<>();
+
+	private LayoutFieldMatcher layoutFieldMatcher;
+
+	private String text;
+
+	@Setup
+	public void setUp() {
+		for ( String regex : LAYOUT_REGEXES ) {
+			patterns.add( Pattern.compile( regex ) );
+		}
+		layoutFieldMatcher = new LayoutFieldMatcher( patterns, 512 );
+		StringBuilder invoice = new StringBuilder();
+		for ( int page = 0; page < pages; page++ ) {
+			for ( int line = 0; line < 60; line++ ) {
+				invoice.append( "Linha " ).append( page ).append( '.' ).append( line )
+					.append( " artigo qualquer coisa descrição longa do produto 12,50 EUR quantidade 3\n" );
+			}
+		}
+		invoice.append( "NIF: 123456789 Fatura FT2024/77 Data 01-02-2024 Total: 99.10 IVA 23% Cliente: Joao\n" );
+		text = invoice.toString();
+	}
+
+	@Benchmark
+	public void anchoredSinglePass( Blackhole blackhole ) {
+		blackhole.consume( layoutFieldMatcher.findFirstGroups( text, Duration.ofSeconds( 1 ), ( fieldIndex, elapsedNanos, budgetExceeded ) -> {
+		} ) );
+	}
+
+	@Benchmark
+	public void findPerField( Blackhole blackhole ) {
+		for ( Pattern pattern : patterns ) {
+			Matcher matcher = pattern.matcher( text );
+			blackhole.consume( matcher.find() ? matcher.group( 1 ) : null );
+		}
+	}
+}
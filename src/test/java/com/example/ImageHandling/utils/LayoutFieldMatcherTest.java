@@ -0,0 +1,135 @@
+package com.example.ImageHandling.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LayoutFieldMatcherTest {
+
+	private static final String[] REGEXES = {
+		"NIF:\\s*(\\d{9})", "Total:?\\s*([\\d.,]+)", "Data\\s+(\\d{2}-\\d{2}-\\d{4})", "\\bFatura\\s+(\\S+)",
+		"Total (.*)", "Total (.*?)EUR", "IVA (\\d+)(?=%)", "Cliente: ([A-Za-zç ]+)$", "(?m)Cliente: (\\w+)$",
+		"Morada: (.+)\\n", "([A-Z]{2}\\d+)", "Subtotal\\s+(\\d+(?:\\.\\d+)?)", "Tota+l (\\d+)", "Ref\\.? ?(\\d+)",
+		"Total (\\d+)\\b", "Total(?! Geral) (\\d+)", "Nº (\\d+)", "Pagamento: (\\w+)|Pago (\\w+)", "Descrição: (.{1,40})"
+	};
+
+	private static final String[] WORDS = {
+		"NIF:", "NIF: 123456789", "Total", "Total:", "Total Geral", "Data", "12-03-2024", "Fatura", "FT2024/1", "IVA", "23%",
+		"Cliente:", "Açores", "Morada:", "\n", "EUR", "12.50", "Subtotal", "Ref.", "Nº", "Pagamento:", "Pago", "Descrição:", "PT",
+		"x", " ", "Totaal", "999"
+	};
+
+	@Test
+	void literalPrefixStopsAtTheFirstMetacharacter() {
+		assertEquals( "NIF:", literalPrefix( "NIF:\\s*(\\d{9})" ) );
+		assertEquals( "Código Postal ", literalPrefix( "Código Postal (\\d{4}-\\d{3})" ) );
+		assertEquals( "Pago em ", literalPrefix( "Pago em (\\S+)" ) );
+	}
+
+	@Test
+	void literalPrefixUnescapesPunctuation() {
+		assertEquals( "US$ ", literalPrefix( "US\\$ (\\d+)" ) );
+		assertEquals( "Ref. (", literalPrefix( "Ref\\. \\((\\d+)" ) );
+		// Escaped letters are classes, boundaries or quotes
+		assertNull( literalPrefix( "\\d+ EUR" ) );
+		assertEquals( "Total", literalPrefix( "Total\\s+(\\S+)" ) );
+		assertEquals( "Nº ", literalPrefix( "Nº \\Q(\\E(\\d+)" ) );
+	}
+
+	@Test
+	void literalPrefixDropsTheCharacterOfATrailingQuantifier() {
+		assertEquals( "Ref", literalPrefix( "Ref\\.? ?(\\d+)" ) );
+		assertEquals( "Tot", literalPrefix( "Tota+l (\\d+)" ) );
+		assertEquals( "Tota", literalPrefix( "Total* (\\d+)" ) );
+		assertEquals( "Tota", literalPrefix( "Total{0,2} (\\d+)" ) );
+		assertNull( literalPrefix( "IV?A (\\d+)" ) );
+	}
+
+	@Test
+	void literalPrefixSkipsLeadingWordBoundaries() {
+		assertEquals( "Fatura", literalPrefix( "\\bFatura\\s+(\\S+)" ) );
+		assertEquals( "Fatura ", literalPrefix( "\\b\\bFatura (\\S+)" ) );
+		assertNull( literalPrefix( "\\BFatura (\\S+)" ) );
+	}
+
+	@Test
+	void literalPrefixIsNullWhenAMatchMayStartElsewhere() {
+		assertNull( LayoutFieldMatcher.literalPrefix( Pattern.compile( "Total (\\d+)", Pattern.CASE_INSENSITIVE ) ) );
+		assertNull( LayoutFieldMatcher.literalPrefix( Pattern.compile( "Cliente: (\\w+)$", Pattern.MULTILINE ) ) );
+		assertNull( literalPrefix( "(?i)Total (\\d+)" ) );
+		assertNull( literalPrefix( "Pagamento: (\\w+)|Pago (\\w+)" ) );
+		assertNull( literalPrefix( "Total (\\d+)|IVA (\\d+)" ) );
+		assertNull( literalPrefix( "([A-Z]{2}\\d+)" ) );
+		// Too short to narrow the search
+		assertNull( literalPrefix( "T(\\d+)" ) );
+	}
+
+	@Test
+	void anchoredSearchRetriesPastTheWindow() {
+		LayoutFieldMatcher matcher = new LayoutFieldMatcher( List.of(
+			Pattern.compile( "Total (.*)" ),
+			Pattern.compile( "Total (\\d+)" ),
+			Pattern.compile( "NIF:\\s*(\\d{9})" ) ), 8 );
+
+		String[] groups = findFirstGroups( matcher, "NIF: 12 Total 1234567890 NIF: 123456789" );
+
+		assertEquals( 3, matcher.getAnchoredCount() );
+		// The window of 8 characters ends after "Total 12", the matches continue up to the end of the text or number
+		assertArrayEquals( new String[] { "1234567890 NIF: 123456789", "1234567890", "123456789" }, groups );
+	}
+
+	@Test
+	void findsTheSameGroupsAsFind() {
+		Random random = new Random( 42 );
+		List<Pattern> patterns = new ArrayList<>();
+		for ( String regex : REGEXES ) {
+			patterns.add( Pattern.compile( regex ) );
+		}
+		patterns.add( null );
+		for ( int anchorWindow : new int[] { 1, 4, 8, 16, 64, 512 } ) {
+			LayoutFieldMatcher matcher = new LayoutFieldMatcher( patterns, anchorWindow );
+			for ( int iteration = 0; iteration < 2000; iteration++ ) {
+				StringBuilder text = new StringBuilder();
+				int words = random.nextInt( 60 );
+				for ( int i = 0; i < words; i++ ) {
+					text.append( WORDS[random.nextInt( WORDS.length )] );
+					if ( random.nextBoolean() ) {
+						text.append( ' ' );
+					}
+				}
+
+				String[] groups = findFirstGroups( matcher, text );
+
+				for ( int i = 0; i < patterns.size(); i++ ) {
+					assertEquals( find( patterns.get( i ), text ), groups[i], "regex " + patterns.get( i ) + ", window " + anchorWindow + ", text " + text );
+				}
+			}
+		}
+	}
+
+	private static String literalPrefix( String regex ) {
+		return LayoutFieldMatcher.literalPrefix( Pattern.compile( regex ) );
+	}
+
+	private static String[] findFirstGroups( LayoutFieldMatcher matcher, CharSequence text ) {
+		return matcher.findFirstGroups( text, Duration.ofSeconds( 10 ), ( fieldIndex, elapsedNanos, budgetExceeded ) -> {
+		} );
+	}
+
+	private static String find( Pattern pattern, CharSequence text ) {
+		if ( pattern == null ) {
+			return null;
+		}
+		Matcher matcher = pattern.matcher( text );
+		return matcher.find() ? matcher.group( 1 ) : null;
+	}
+}
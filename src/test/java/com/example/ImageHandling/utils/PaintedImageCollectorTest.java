@@ -0,0 +1,100 @@
+package com.example.ImageHandling.utils;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PaintedImageCollectorTest {
+
+	private static final int MIN_IMAGE_SIZE = 20;
+
+	@Test
+	void collectsOnlyImagesPaintedByThePage() throws IOException {
+		try ( PDDocument document = new PDDocument() ) {
+			PDImageXObject painted = image( document, 40, Color.RED );
+			PDImageXObject unused = image( document, 40, Color.GREEN );
+			PDPage page = new PDPage( PDRectangle.A4 );
+			document.addPage( page );
+			page.setResources( new PDResources() );
+			page.getResources().add( unused );
+			try ( PDPageContentStream contentStream = new PDPageContentStream( document, page ) ) {
+				contentStream.drawImage( painted, 10, 10 );
+				contentStream.drawImage( painted, 100, 100 );
+			}
+
+			List<BufferedImage> images = PaintedImageCollector.collect( page, MIN_IMAGE_SIZE );
+
+			assertEquals( 1, images.size() );
+			assertEquals( Color.RED.getRGB(), images.get( 0 ).getRGB( 0, 0 ) );
+		}
+	}
+
+	@Test
+	void collectsImagesPaintedByFormsAndSkipsSmallImages() throws IOException {
+		try ( PDDocument document = new PDDocument() ) {
+			PDFormXObject form = new PDFormXObject( document );
+			form.setBBox( PDRectangle.A4 );
+			form.setResources( new PDResources() );
+			COSName formImage = form.getResources().add( image( document, 40, Color.BLUE ) );
+			COSName logo = form.getResources().add( image( document, 8, Color.BLACK ) );
+			try ( OutputStream output = form.getContentStream().createOutputStream() ) {
+				output.write( ( "q 40 0 0 40 0 0 cm /" + formImage.getName() + " Do Q q 8 0 0 8 0 0 cm /" + logo.getName() + " Do Q" ).getBytes() );
+			}
+			PDPage page = new PDPage( PDRectangle.A4 );
+			document.addPage( page );
+			try ( PDPageContentStream contentStream = new PDPageContentStream( document, page ) ) {
+				contentStream.drawForm( form );
+			}
+
+			List<BufferedImage> images = PaintedImageCollector.collect( page, MIN_IMAGE_SIZE );
+
+			assertEquals( 1, images.size() );
+			assertEquals( Color.BLUE.getRGB(), images.get( 0 ).getRGB( 0, 0 ) );
+		}
+	}
+
+	@Test
+	void ignoresImagesOfResourcesSharedWithAnotherPage() throws IOException {
+		try ( PDDocument document = new PDDocument() ) {
+			PDResources sharedResources = new PDResources();
+			PDImageXObject image = image( document, 40, Color.RED );
+			PDPage paintingPage = new PDPage( PDRectangle.A4 );
+			PDPage emptyPage = new PDPage( PDRectangle.A4 );
+			paintingPage.setResources( sharedResources );
+			emptyPage.setResources( sharedResources );
+			document.addPage( paintingPage );
+			document.addPage( emptyPage );
+			try ( PDPageContentStream contentStream = new PDPageContentStream( document, paintingPage ) ) {
+				contentStream.drawImage( image, 10, 10 );
+			}
+
+			assertEquals( 1, PaintedImageCollector.collect( paintingPage, MIN_IMAGE_SIZE ).size() );
+			assertEquals( 0, PaintedImageCollector.collect( emptyPage, MIN_IMAGE_SIZE ).size() );
+		}
+	}
+
+	private static PDImageXObject image( PDDocument document, int size, Color color ) throws IOException {
+		BufferedImage image = new BufferedImage( size, size, BufferedImage.TYPE_INT_RGB );
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor( color );
+		graphics.fillRect( 0, 0, size, size );
+		graphics.dispose();
+		return LosslessFactory.createFromImage( document, image );
+	}
+}
@@ -0,0 +1,75 @@
+package com.example.ImageHandling.utils;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FillGrayAreas against the per-pixel loop it replaced, on a noisy QR code image of the size of a cropped scan.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class QRCodeRepairUtilBenchmark {
+
+	@Param( { "400", "1200" } )
+	int size;
+
+	private Mat gray;
+
+	private Mat binary;
+
+	@Setup
+	public void setUp() {
+		OpenCV.loadLocally();
+		gray = new Mat( size, size, CvType.CV_8UC1 );
+		gray.put( 0, 0, QRCodeRepairUtilTest.noisyModules( new Random( 42 ), size, size ) );
+		binary = new Mat();
+		Imgproc.adaptiveThreshold( gray, binary, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 15, 3 );
+	}
+
+	@TearDown
+	public void tearDown() {
+		gray.release();
+		binary.release();
+	}
+
+	@Benchmark
+	public long fillGrayAreas() {
+		try ( MatScope scope = MatScope.open() ) {
+			return QRCodeRepairUtil.FillGrayAreas( scope, gray, binary ).dataAddr();
+		}
+	}
+
+	@Benchmark
+	public Mat pixelLoop() {
+		// The loop copied the Mats to Java arrays and the result back, as the replaced code did
+		byte[] grayData = new byte[size * size];
+		byte[] binaryData = new byte[size * size];
+		gray.get( 0, 0, grayData );
+		binary.get( 0, 0, binaryData );
+		Mat result = new Mat( size, size, CvType.CV_8UC1 );
+		result.put( 0, 0, QRCodeRepairUtilTest.fillGrayAreasLoop( grayData, binaryData, size, size ) );
+		result.release();
+		return result;
+	}
+}
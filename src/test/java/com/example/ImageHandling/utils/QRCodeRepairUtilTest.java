@@ -0,0 +1,99 @@
+package com.example.ImageHandling.utils;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class QRCodeRepairUtilTest {
+
+	@BeforeAll
+	static void loadOpenCV() {
+		OpenCV.loadLocally();
+	}
+
+	@Test
+	void fillGrayAreasMatchesThePixelLoopOnANoisyQRCodeImage() {
+		Random random = new Random( 42 );
+		for ( int sample = 0; sample < 10; sample++ ) {
+			int rows = 120 + random.nextInt( 200 );
+			int cols = 120 + random.nextInt( 200 );
+			byte[] grayData = noisyModules( random, rows, cols );
+
+			try ( MatScope scope = MatScope.open() ) {
+				Mat gray = scope.track( new Mat( rows, cols, CvType.CV_8UC1 ) );
+				gray.put( 0, 0, grayData );
+				Mat binary = scope.newMat();
+				Imgproc.adaptiveThreshold( gray, binary, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 15, 3 );
+				byte[] binaryData = new byte[rows * cols];
+				binary.get( 0, 0, binaryData );
+
+				Mat filled = QRCodeRepairUtil.FillGrayAreas( scope, gray, binary );
+				byte[] filledData = new byte[rows * cols];
+				filled.get( 0, 0, filledData );
+
+				byte[] expectedData = fillGrayAreasLoop( grayData, binaryData, rows, cols );
+				assertFalse( Arrays.equals( binaryData, expectedData ), "sample " + sample + " fills no pixel" );
+				assertArrayEquals( expectedData, filledData, "sample " + sample );
+			}
+		}
+	}
+
+	/**
+	 * Dark and light square modules with gray smudges and pixel noise, so every branch of the fill is exercised.
+	 */
+	static byte[] noisyModules( Random random, int rows, int cols ) {
+		int moduleSize = 4 + random.nextInt( 6 );
+		boolean[] darkModules = new boolean[( rows / moduleSize + 1 ) * ( cols / moduleSize + 1 )];
+		for ( int i = 0; i < darkModules.length; i++ ) {
+			darkModules[i] = random.nextBoolean();
+		}
+		byte[] data = new byte[rows * cols];
+		for ( int y = 0; y < rows; y++ ) {
+			for ( int x = 0; x < cols; x++ ) {
+				int value = darkModules[( y / moduleSize ) * ( cols / moduleSize + 1 ) + x / moduleSize] ? 30 : 220;
+				if ( random.nextInt( 4 ) == 0 ) {
+					value = 60 + random.nextInt( 140 );
+				}
+				data[y * cols + x] = (byte) Math.max( 0, Math.min( 255, value + random.nextInt( 21 ) - 10 ) );
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * The per-pixel implementation FillGrayAreas replaced.
+	 */
+	static byte[] fillGrayAreasLoop( byte[] grayData, byte[] binaryData, int rows, int cols ) {
+		byte[] resultData = binaryData.clone();
+		for ( int y = 1; y < rows - 1; y++ ) {
+			for ( int x = 1; x < cols - 1; x++ ) {
+				int idx = y * cols + x;
+				int currentBinary = binaryData[idx] & 0xFF;
+				int currentGray = grayData[idx] & 0xFF;
+				if ( currentBinary > 20 && currentGray < 180 && currentGray > 80 ) {
+					int blackNeighbors = 0;
+					for ( int dy = -1; dy <= 1; dy++ ) {
+						for ( int dx = -1; dx <= 1; dx++ ) {
+							if ( ( dy != 0 || dx != 0 ) && ( binaryData[( y + dy ) * cols + x + dx] & 0xFF ) < 127 ) {
+								blackNeighbors++;
+							}
+						}
+					}
+					if ( blackNeighbors >= 3 ) {
+						resultData[idx] = 0;
+					}
+				}
+			}
+		}
+		return resultData;
+	}
+}
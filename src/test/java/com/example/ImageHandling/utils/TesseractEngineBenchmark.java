@@ -0,0 +1,68 @@
+package com.example.ImageHandling.utils;
+
+import net.sourceforge.tess4j.TesseractException;
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The recognition of a rendered line of invoice text from the Mat pixels against the JPEG and ImageIO round trip it
+ * replaced. Needs the native Tesseract library on the library path, e.g. through {@code LD_LIBRARY_PATH}.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TesseractEngineBenchmark {
+
+	@Param( { "1", "3" } )
+	int channels;
+
+	private TesseractEngine engine;
+
+	private Mat image;
+
+	@Setup
+	public void setUp() throws TesseractException {
+		OpenCV.loadLocally();
+		engine = TesseractEngine.create( Path.of( "src", "main", "resources", "tessdata" ).toString(), "eng", 3, 6 );
+		image = TesseractEngineTest.renderText( 0 );
+		if ( channels == 1 ) {
+			Imgproc.cvtColor( image, image, Imgproc.COLOR_BGR2GRAY );
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		engine.close();
+		image.release();
+	}
+
+	@Benchmark
+	public String matPixels() {
+		return engine.recognize( image );
+	}
+
+	@Benchmark
+	public String jpegRoundTrip() throws IOException {
+		return TesseractEngineTest.recognizeJpegRoundTrip( engine, image );
+	}
+}
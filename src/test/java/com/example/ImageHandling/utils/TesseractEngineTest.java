@@ -0,0 +1,151 @@
+package com.example.ImageHandling.utils;
+
+import net.sourceforge.tess4j.TesseractException;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares the recognition of Mat pixels with the JPEG and ImageIO round trip it replaced. Skipped when the native
+ * Tesseract library cannot be loaded.
+ */
+class TesseractEngineTest {
+
+	static final String TEXT = "FATURA FT 2024/123 TOTAL 1234.56 EUR";
+
+	private static TesseractEngine engine;
+
+	@BeforeAll
+	static void createEngine() {
+		OpenCV.loadLocally();
+		try {
+			engine = TesseractEngine.create( Path.of( "src", "main", "resources", "tessdata" ).toString(), "eng", 3, 6 );
+		}
+		catch ( TesseractException | LinkageError e ) {
+			assumeTrue( false, "Native Tesseract is not available: " + e.getMessage() );
+		}
+	}
+
+	@AfterAll
+	static void closeEngine() {
+		if ( engine != null ) {
+			engine.close();
+		}
+	}
+
+	@Test
+	void recognizesAGrayscaleMat() throws IOException {
+		Mat gray = new Mat();
+		Imgproc.cvtColor( renderText( 0 ), gray, Imgproc.COLOR_BGR2GRAY );
+
+		assertParity( gray );
+	}
+
+	@Test
+	void recognizesABgrMat() throws IOException {
+		assertParity( renderText( 0 ) );
+	}
+
+	@Test
+	void recognizesABgraMat() throws IOException {
+		Mat bgra = new Mat();
+		Imgproc.cvtColor( renderText( 0 ), bgra, Imgproc.COLOR_BGR2BGRA );
+
+		assertParity( bgra );
+	}
+
+	@Test
+	void recognizesARegionOfALargerMat() throws IOException {
+		Mat page = new Mat( 400, 1000, CvType.CV_8UC3, new Scalar( 255, 255, 255 ) );
+		Mat text = renderText( 0 );
+		text.copyTo( page.submat( new Rect( 150, 120, text.cols(), text.rows() ) ) );
+		Mat region = page.submat( new Rect( 150, 120, text.cols(), text.rows() ) );
+		Mat grayPage = new Mat();
+		Imgproc.cvtColor( page, grayPage, Imgproc.COLOR_BGR2GRAY );
+		Mat grayRegion = grayPage.submat( new Rect( 150, 120, text.cols(), text.rows() ) );
+
+		assertFalse( region.isContinuous() );
+		assertFalse( grayRegion.isContinuous() );
+		assertParity( region );
+		assertParity( grayRegion );
+	}
+
+	@Test
+	void recognizesRowsThatAreNotAlignedToFourBytes() throws IOException {
+		// 1 byte and 3 bytes per pixel over an odd width leave rows of a length that is not a multiple of 4
+		Mat text = renderText( 1 );
+		Mat gray = new Mat();
+		Imgproc.cvtColor( text, gray, Imgproc.COLOR_BGR2GRAY );
+
+		assertEquals( 1, text.cols() % 2 );
+		assertParity( text );
+		assertParity( gray );
+	}
+
+	@Test
+	void recognizesAnEmptyMat() {
+		assertEquals( "", engine.recognize( new Mat() ) );
+	}
+
+	private static void assertParity( Mat image ) throws IOException {
+		String text = engine.recognize( image ).trim();
+
+		assertTrue( text.contains( "TOTAL 1234.56" ), text );
+		assertEquals( recognizeJpegRoundTrip( engine, image ).trim(), text );
+	}
+
+	/**
+	 * The recognition of a Mat before it was handed to Tesseract directly: encoded to JPEG and decoded with ImageIO.
+	 */
+	static String recognizeJpegRoundTrip( TesseractEngine engine, Mat image ) throws IOException {
+		MatOfByte matOfByte = new MatOfByte();
+		Imgcodecs.imencode( ".jpg", image, matOfByte );
+		BufferedImage bufferedImage = ImageIO.read( new ByteArrayInputStream( matOfByte.toArray() ) );
+		matOfByte.release();
+		return engine.recognize( bufferedImage );
+	}
+
+	/**
+	 * Renders {@link #TEXT} in black on white into a BGR Mat.
+	 *
+	 * @param extraWidth Pixels added to the width, to vary the row length.
+	 */
+	static Mat renderText( int extraWidth ) {
+		BufferedImage image = new BufferedImage( 760 + extraWidth, 90, BufferedImage.TYPE_3BYTE_BGR );
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor( Color.WHITE );
+		graphics.fillRect( 0, 0, image.getWidth(), image.getHeight() );
+		graphics.setColor( Color.BLACK );
+		graphics.setRenderingHint( RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON );
+		graphics.setFont( new Font( Font.SANS_SERIF, Font.PLAIN, 32 ) );
+		graphics.drawString( TEXT, 20, 58 );
+		graphics.dispose();
+		Mat mat = new Mat( image.getHeight(), image.getWidth(), CvType.CV_8UC3 );
+		mat.put( 0, 0, ( (DataBufferByte) image.getRaster().getDataBuffer() ).getData() );
+		return mat;
+	}
+}